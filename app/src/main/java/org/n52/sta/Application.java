@@ -34,7 +34,6 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 @SpringBootApplication
@@ -42,7 +41,6 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
                        basePackages = {"org.n52.sta.data.repositories"})
 @EnableConfigurationProperties
 @EnableTransactionManagement
-@EnableAsync
 @SuppressWarnings("uncommentedmain")
 public class Application {
 
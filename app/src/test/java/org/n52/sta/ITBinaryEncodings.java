@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+
+/**
+ * Checks that CBOR and Smile responses are written with the STA serializers, for regular as well as for streamed
+ * collections.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+        properties = {"server.feature.binaryEncodings=true", "server.feature.streamingThreshold=2"})
+@Testcontainers
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ITBinaryEncodings extends ConformanceTests implements TestUtil {
+
+    static final String CBOR = "application/cbor";
+    static final String SMILE = "application/x-jackson-smile";
+    static final String THING = "{ \"description\": \"thing 1\", \"name\": \"thing name 1\", \"Locations\": [ { " +
+            "\"description\": \"location 1\", \"name\": \"location name 1\", \"location\": { \"type\": \"Point\", " +
+            "\"coordinates\": [ -117.05, 51.05 ] }, \"encodingType\": \"application/vnd.geo+json\" } ], " +
+            "\"Datastreams\": [ { \"unitOfMeasurement\": { \"name\": \"Lumen\", \"symbol\": \"lm\", \"definition\": " +
+            "\"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\" }, \"description\": \"datastream 1\", " +
+            "\"name\": \"datastream name 1\", \"observationType\": \"http://www.opengis.net/def/observationType/" +
+            "OGC-OM/2.0/OM_Measurement\", \"ObservedProperty\": { \"name\": \"Luminous Flux\", \"definition\": " +
+            "\"http://www.qudt.org/qudt/owl/1.0.0/quantity/Instances.html/LuminousFlux\", \"description\": " +
+            "\"observedProperty 1\" }, \"Sensor\": { \"description\": \"sensor 1\", \"name\": \"sensor name 1\", " +
+            "\"encodingType\": \"application/pdf\", \"metadata\": \"Light flux sensor\" }, \"Observations\": [ { " +
+            "\"phenomenonTime\": \"2015-03-03T00:00:00Z\", \"result\": 3 }, { \"phenomenonTime\": " +
+            "\"2015-03-04T00:00:00Z\", \"result\": 4 } ] } ] }";
+
+    ITBinaryEncodings(@Value("${server.rootUrl}") String rootUrl) throws Exception {
+        super(rootUrl);
+        postEntity(EntityType.THING, THING);
+    }
+
+    @Test
+    public void testCborCollection() throws IOException {
+        JsonNode things = get(rootUrl + "Things", CBOR, new ObjectMapper(new CBORFactory()));
+        Assertions.assertEquals(1, things.get(value).size());
+        Assertions.assertEquals("thing name 1", things.get(value).get(0).get("name").asText());
+        Assertions.assertTrue(things.get(value).get(0).has(selfLinkKey));
+    }
+
+    @Test
+    public void testSmileEntity() throws IOException {
+        JsonNode things = getCollection(EntityType.THING);
+        String id = things.get(value).get(0).get(idKey).asText();
+        JsonNode thing = get(rootUrl + "Things(" + id + ")", SMILE, new ObjectMapper(new SmileFactory()));
+        Assertions.assertEquals(id, thing.get(idKey).asText());
+        Assertions.assertEquals("thing name 1", thing.get("name").asText());
+    }
+
+    @Test
+    public void testCborStreamedCollection() throws IOException {
+        JsonNode observations = get(rootUrl + "Observations?$top=2", CBOR, new ObjectMapper(new CBORFactory()));
+        Assertions.assertEquals(2, observations.get(value).size());
+        Assertions.assertTrue(observations.get(value).get(0).has("result"));
+    }
+
+    @Test
+    public void testJsonIsDefault() throws IOException {
+        JsonNode things = get(rootUrl + "Things", "*/*", mapper);
+        Assertions.assertEquals(1, things.get(value).size());
+    }
+
+    private JsonNode get(String url, String accept, ObjectMapper reader) throws IOException {
+        HttpGet request = new HttpGet(url.replace("$", "%24"));
+        request.setHeader("Accept", accept);
+        HttpResponse response = HttpClientBuilder.create().build().execute(request);
+        Assertions.assertEquals(200, response.getStatusLine().getStatusCode());
+        String expected = "*/*".equals(accept) ? jsonMimeType : accept;
+        Assertions.assertEquals(expected, ContentType.getOrDefault(response.getEntity()).getMimeType());
+        return reader.readTree(response.getEntity().getContent());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+
+/**
+ * Checks that CBOR and Smile are not served if disabled via server.feature.binaryEncodings.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+        properties = {"server.feature.binaryEncodings=false", "server.feature.streamingThreshold=2"})
+@Testcontainers
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ITBinaryEncodingsDisabled extends ConformanceTests implements TestUtil {
+
+    ITBinaryEncodingsDisabled(@Value("${server.rootUrl}") String rootUrl) throws Exception {
+        super(rootUrl);
+        postEntity(EntityType.THING, ITBinaryEncodings.THING);
+    }
+
+    @Test
+    public void testBinaryOnlyIsRejected() throws IOException {
+        Assertions.assertEquals(406, get(rootUrl + "Things", ITBinaryEncodings.CBOR).getStatusLine().getStatusCode());
+        Assertions.assertEquals(406, get(rootUrl + "Things", ITBinaryEncodings.SMILE).getStatusLine().getStatusCode());
+        Assertions.assertEquals(406,
+                                get(rootUrl + "Observations?$top=2", ITBinaryEncodings.CBOR).getStatusLine()
+                                                                                             .getStatusCode());
+    }
+
+    @Test
+    public void testFallbackToJson() throws IOException {
+        String accept = ITBinaryEncodings.CBOR + ", " + jsonMimeType + ";q=0.5";
+        for (String url : new String[] {rootUrl + "Things", rootUrl + "Observations?$top=2"}) {
+            HttpResponse response = get(url, accept);
+            Assertions.assertEquals(200, response.getStatusLine().getStatusCode());
+            Assertions.assertEquals(jsonMimeType, ContentType.getOrDefault(response.getEntity()).getMimeType());
+            Assertions.assertTrue(mapper.readTree(response.getEntity().getContent()).has(value));
+        }
+    }
+
+    private HttpResponse get(String url, String accept) throws IOException {
+        HttpGet request = new HttpGet(url.replace("$", "%24"));
+        request.setHeader("Accept", accept);
+        return HttpClientBuilder.create().build().execute(request);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks the CreateObservations request using the dataArray format (STA Part 1 §10.2). Invalid rows must only fail
+ * themselves and must not prevent the creation of the valid rows of the same request.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+@Testcontainers
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ITCreateObservations extends ConformanceTests implements TestUtil {
+
+    private static final String ERROR = "error";
+
+    private final String datastreamId;
+
+    ITCreateObservations(@Value("${server.rootUrl}") String rootUrl) throws Exception {
+        super(rootUrl);
+
+        // Create required test harness
+        postEntity(EntityType.THING, "{ \"description\": \"thing 1\", \"name\": \"thing name 1\", \"Locations\": [ " +
+                "{ \"description\": \"location 1\", \"name\": \"location name 1\", \"location\": { \"type\": " +
+                "\"Point\", \"coordinates\": [ -117.05, 51.05 ] }, \"encodingType\": \"application/vnd.geo+json\" " +
+                "} ], \"Datastreams\": [ { \"unitOfMeasurement\": { \"name\": \"Lumen\", \"symbol\": \"lm\", " +
+                "\"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\" }, " +
+                "\"description\": \"datastream 1\", \"name\": \"datastream name 1\", \"observationType\": " +
+                "\"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\", \"ObservedProperty\": " +
+                "{ \"name\": \"Luminous Flux\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/" +
+                "Instances.html/LuminousFlux\", \"description\": \"observedProperty 1\" }, \"Sensor\": { " +
+                "\"description\": \"sensor 1\", \"name\": \"sensor name 1\", \"encodingType\": " +
+                "\"application/pdf\", \"metadata\": \"Light flux sensor\" } } ] }");
+        datastreamId = getCollection(EntityType.DATASTREAM).get(value).get(0).get(idKey).asText();
+    }
+
+    @Test
+    public void testMixedValidAndInvalidRows() throws IOException {
+        String body = "[ { \"Datastream\": { \"@iot.id\": \"" + datastreamId + "\" }, " +
+                "\"components\": [ \"phenomenonTime\", \"result\" ], " +
+                "\"dataArray\": [ [ \"2015-03-01T00:00:00Z\", 1 ], [ \"not a time\", 2 ], " +
+                "[ \"2015-03-03T00:00:00Z\", 3 ] ] }, " +
+                "{ \"Datastream\": { \"@iot.id\": \"" + datastreamId + "\" }, " +
+                "\"components\": [ \"phenomenonTime\", \"result\", \"FeatureOfInterest/id\" ], " +
+                "\"dataArray\": [ [ \"2015-03-04T00:00:00Z\", 4, \"unknownFeature\" ] ] }, " +
+                "{ \"Datastream\": { \"@iot.id\": \"unknownDatastream\" }, " +
+                "\"components\": [ \"phenomenonTime\", \"result\" ], " +
+                "\"dataArray\": [ [ \"2015-03-05T00:00:00Z\", 5 ] ] } ]";
+        HttpResponse response = postCreateObservations(body);
+        Assertions.assertEquals(200, response.getStatusLine().getStatusCode());
+
+        JsonNode result = mapper.readTree(response.getEntity().getContent());
+        Assertions.assertEquals(5, result.size());
+        Assertions.assertNotEquals(ERROR, result.get(0).asText());
+        Assertions.assertEquals(ERROR, result.get(1).asText());
+        Assertions.assertNotEquals(ERROR, result.get(2).asText());
+        Assertions.assertEquals(ERROR, result.get(3).asText());
+        Assertions.assertEquals(ERROR, result.get(4).asText());
+
+        // Valid rows are persisted, invalid rows are not
+        JsonNode observations = getCollection(rootUrl + "Datastreams(" + datastreamId + ")/Observations", "");
+        Assertions.assertEquals(2, observations.get(value).size());
+        Set<String> selfLinks = new HashSet<>();
+        observations.get(value).forEach(observation -> selfLinks.add(observation.get(selfLinkKey).asText()));
+        Assertions.assertTrue(selfLinks.contains(result.get(0).asText()));
+        Assertions.assertTrue(selfLinks.contains(result.get(2).asText()));
+    }
+
+    @Test
+    public void testMalformedRequest() throws IOException {
+        HttpResponse response = postCreateObservations("{ \"Datastream\": { \"@iot.id\": \"" + datastreamId + "\" } }");
+        Assertions.assertEquals(400, response.getStatusLine().getStatusCode());
+
+        response = postCreateObservations("[ { \"Datastream\": { \"@iot.id\": \"" + datastreamId + "\" } } ]");
+        Assertions.assertEquals(400, response.getStatusLine().getStatusCode());
+    }
+
+    private HttpResponse postCreateObservations(String body) throws IOException {
+        HttpPost request = new HttpPost(rootUrl + "CreateObservations");
+        request.setEntity(new StringEntity(body));
+        request.setHeader("Content-Type", "application/json");
+        return HttpClientBuilder.create().build().execute(request);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Checks keyset pagination of Observations via $skiptoken and the limit of $top by the maximum page size.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+    properties = {"server.feature.keysetPagination=true", "server.feature.maxTop=3"})
+@Testcontainers
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ITKeysetPagination extends ConformanceTests implements TestUtil {
+
+    private static final String NEXT_LINK = "@iot.nextLink";
+    private static final String SKIPTOKEN = "$skiptoken=";
+    private static final String PHENOMENON_TIME = "phenomenonTime";
+
+    // Includes duplicates and times differing only in fractions of a millisecond
+    private static final String[] TIMES = new String[] {
+        "2020-01-01T00:00:00.000Z",
+        "2020-01-01T00:00:00.000Z",
+        "2020-01-01T00:00:00.000Z",
+        "2020-01-01T00:00:00.000001Z",
+        "2020-01-01T00:00:00.000002Z",
+        "2019-12-31T23:59:59.999Z",
+        "2020-01-02T00:00:00.000Z"
+    };
+
+    ITKeysetPagination(@Value("${server.rootUrl}") String rootUrl) throws Exception {
+        super(rootUrl);
+
+        // Create required test harness
+        postEntity(EntityType.THING, "{ \"description\": \"thing 1\", \"name\": \"thing name 1\", \"Locations\": [ " +
+                "{ \"description\": \"location 1\", \"name\": \"location name 1\", \"location\": { \"type\": " +
+                "\"Point\", \"coordinates\": [ -117.05, 51.05 ] }, \"encodingType\": \"application/vnd.geo+json\" " +
+                "} ], \"Datastreams\": [ { \"unitOfMeasurement\": { \"name\": \"Lumen\", \"symbol\": \"lm\", " +
+                "\"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\" }, " +
+                "\"description\": \"datastream 1\", \"name\": \"datastream name 1\", \"observationType\": " +
+                "\"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\", \"ObservedProperty\": " +
+                "{ \"name\": \"Luminous Flux\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0.0/quantity/" +
+                "Instances.html/LuminousFlux\", \"description\": \"observedProperty 1\" }, \"Sensor\": { " +
+                "\"description\": \"sensor 1\", \"name\": \"sensor name 1\", \"encodingType\": " +
+                "\"application/pdf\", \"metadata\": \"Light flux sensor\" } } ] }");
+        String datastreamId = getCollection(EntityType.DATASTREAM).get(value).get(0).get(idKey).asText();
+        for (int i = 0; i < TIMES.length; i++) {
+            postEntity(EntityType.OBSERVATION, "{ \"phenomenonTime\": \"" + TIMES[i] + "\", \"result\": " + i
+                    + ", \"Datastream\": { \"@iot.id\": \"" + datastreamId + "\" } }");
+        }
+    }
+
+    @Test
+    public void testDefaultOrder() throws IOException {
+        List<JsonNode> observations = getAllPages(rootUrl + "Observations?$top=2");
+        assertComplete(observations);
+        for (int i = 1; i < observations.size(); i++) {
+            Assertions.assertTrue(observations.get(i - 1).get(idKey).asText()
+                                              .compareTo(observations.get(i).get(idKey).asText()) < 0);
+        }
+    }
+
+    @Test
+    public void testOrderByPhenomenonTime() throws IOException {
+        assertOrderedByTime(getAllPages(rootUrl + "Observations?$top=2&$orderby=phenomenonTime"), false);
+        assertOrderedByTime(getAllPages(rootUrl + "Observations?$top=2&$orderby=phenomenonTime%20desc"), true);
+    }
+
+    @Test
+    public void testTopIsLimited() throws IOException {
+        JsonNode page = getPage(rootUrl + "Observations?$top=100&$orderby=phenomenonTime");
+        Assertions.assertEquals(3, page.get(value).size());
+        Assertions.assertTrue(page.has(NEXT_LINK));
+        assertComplete(getAllPages(rootUrl + "Observations?$top=100&$orderby=phenomenonTime"));
+
+        // Collections using $skip continue after the limited page
+        for (int i = 0; i < 4; i++) {
+            postEntity(EntityType.SENSOR, "{ \"name\": \"sensor " + i + "\", \"description\": \"sensor\", " +
+                    "\"encodingType\": \"application/pdf\", \"metadata\": \"metadata\" }");
+        }
+        page = getPage(rootUrl + "Sensors?$top=100");
+        Assertions.assertEquals(3, page.get(value).size());
+        Assertions.assertTrue(page.get(NEXT_LINK).asText().contains("$skip=3"));
+        Assertions.assertEquals(5, getAllPages(rootUrl + "Sensors?$top=100").size());
+    }
+
+    @Test
+    public void testInvalidToken() throws IOException {
+        String url = rootUrl + "Observations?$orderby=phenomenonTime&$skiptoken=";
+        assertBadRequest(url + "not*base64");
+        assertBadRequest(url + encode("garbage"));
+        assertBadRequest(url + encode("samplingTimeEnd\nasc\n1\nnot a time"));
+        assertBadRequest(url + encode("samplingTimeEnd\nasc\nabc\n2020-01-01T00:00:00Z"));
+        assertBadRequest(url + encode("samplingTimeEnd\nsideways\n1\n2020-01-01T00:00:00Z"));
+        assertBadRequest(url + encode("samplingTimeEnd\nasc\n\n2020-01-01T00:00:00Z"));
+
+        // Token must match the order of the request
+        String nextLink = getPage(rootUrl + "Observations?$top=2").get(NEXT_LINK).asText();
+        String token = nextLink.substring(nextLink.indexOf(SKIPTOKEN) + SKIPTOKEN.length());
+        assertBadRequest(url + token);
+        nextLink = getPage(rootUrl + "Observations?$top=2&$orderby=phenomenonTime").get(NEXT_LINK).asText();
+        token = nextLink.substring(nextLink.indexOf(SKIPTOKEN) + SKIPTOKEN.length());
+        assertBadRequest(rootUrl + "Observations?$orderby=phenomenonTime%20desc&$skiptoken=" + token);
+    }
+
+    private void assertOrderedByTime(List<JsonNode> observations, boolean descending) {
+        assertComplete(observations);
+        for (int i = 1; i < observations.size(); i++) {
+            int comparison = observations.get(i - 1).get(PHENOMENON_TIME).asText()
+                                         .compareTo(observations.get(i).get(PHENOMENON_TIME).asText());
+            Assertions.assertTrue(descending ? comparison >= 0 : comparison <= 0);
+        }
+    }
+
+    private void assertComplete(List<JsonNode> observations) {
+        HashSet<String> ids = new HashSet<>();
+        observations.forEach(observation -> ids.add(observation.get(idKey).asText()));
+        Assertions.assertEquals(TIMES.length, observations.size());
+        Assertions.assertEquals(TIMES.length, ids.size());
+    }
+
+    private List<JsonNode> getAllPages(String url) throws IOException {
+        List<JsonNode> entities = new ArrayList<>();
+        String next = url;
+        while (next != null) {
+            JsonNode page = getPage(next);
+            page.get(value).forEach(entities::add);
+            next = page.has(NEXT_LINK) ? page.get(NEXT_LINK).asText() : null;
+        }
+        return entities;
+    }
+
+    private JsonNode getPage(String url) throws IOException {
+        HttpResponse response = get(url);
+        Assertions.assertEquals(200, response.getStatusLine().getStatusCode(), url);
+        return mapper.readTree(response.getEntity().getContent());
+    }
+
+    private void assertBadRequest(String url) throws IOException {
+        Assertions.assertEquals(400, get(url).getStatusLine().getStatusCode(), url);
+    }
+
+    private HttpResponse get(String url) throws IOException {
+        return HttpClientBuilder.create().build().execute(new HttpGet(url.replace(" ", "%20")));
+    }
+
+    private String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.DatasetEntity;
+import org.n52.series.db.beans.sta.DatastreamEntity;
+import org.n52.series.db.beans.sta.ObservationEntity;
+import org.n52.sta.data.query.ObservationQuerySpecifications;
+import org.n52.sta.data.repositories.DatastreamRepository;
+import org.n52.sta.data.repositories.EntityGraphRepository;
+import org.n52.sta.data.repositories.ObservationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the nested IN-subquery previously used to filter Observations by Datastream (e.g. for
+ * /Datastreams(x)/Observations) with the EXISTS semi-join and the filter by pre-resolved Dataset ids used by
+ * {@link ObservationQuerySpecifications}.
+ * Seeds a PostGIS container with {@value #DATASTREAMS} Datastreams having {@value #OBSERVATIONS} Observations each.
+ * <p>
+ * Not run as part of the build. Run manually via -Dtest=ObservationFilterBenchmark
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+@Testcontainers
+public class ObservationFilterBenchmark extends ConformanceTests implements TestUtil {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObservationFilterBenchmark.class);
+
+    private static final int DATASTREAMS = 20;
+    private static final int OBSERVATIONS = 500;
+    private static final int WARMUP = 20;
+    private static final int RUNS = 100;
+
+    private final ObservationQuerySpecifications oQS = new ObservationQuerySpecifications();
+    private final Pageable page = PageRequest.of(0, 100);
+
+    @Autowired
+    private ObservationRepository<ObservationEntity<?>> repository;
+
+    @Autowired
+    private DatastreamRepository datastreamRepository;
+
+    ObservationFilterBenchmark(@Value("${server.rootUrl}") String rootUrl) throws Exception {
+        super(rootUrl);
+        for (int i = 0; i < DATASTREAMS; i++) {
+            postEntity(EntityType.THING, createThing(i));
+        }
+    }
+
+    @Test
+    public void compareDatastreamFilter() throws IOException {
+        JsonNode datastreams = getCollection(EntityType.DATASTREAM);
+        String datastreamId = datastreams.get(value).get(DATASTREAMS / 2).get(idKey).asText();
+
+        Specification<ObservationEntity<?>> inSubquery = withDatastreamInSubquery(datastreamId);
+        Specification<ObservationEntity<?>> exists = oQS.withDatastreamStaIdentifier(datastreamId);
+        Assertions.assertEquals(OBSERVATIONS, repository.count(inSubquery));
+        Assertions.assertEquals(OBSERVATIONS, repository.count(exists));
+
+        List<Long> datasetIds = datastreamRepository
+                .findByStaIdentifier(datastreamId, EntityGraphRepository.FetchGraph.FETCHGRAPH_DATASETS)
+                .get()
+                .getDatasets()
+                .stream()
+                .map(DatasetEntity::getId)
+                .collect(Collectors.toList());
+        Specification<ObservationEntity<?>> byDatasetIds = oQS.withDatasetIds(datasetIds);
+        Assertions.assertEquals(OBSERVATIONS, repository.count(byDatasetIds));
+
+        long inSubqueryNanos = measure(inSubquery);
+        long existsNanos = measure(exists);
+        long byDatasetIdsNanos = measure(byDatasetIds);
+        LOGGER.info("IN-subquery: {} µs/request, EXISTS: {} µs/request, Dataset ids: {} µs/request",
+                    inSubqueryNanos / 1000,
+                    existsNanos / 1000,
+                    byDatasetIdsNanos / 1000);
+    }
+
+    private long measure(Specification<ObservationEntity<?>> spec) {
+        for (int i = 0; i < WARMUP; i++) {
+            repository.findAll(spec, page);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            repository.findAll(spec, page);
+            repository.count(spec);
+        }
+        return (System.nanoTime() - start) / RUNS;
+    }
+
+    private Specification<ObservationEntity<?>> withDatastreamInSubquery(String datastreamIdentifier) {
+        return (root, query, builder) -> {
+            Subquery<DatasetEntity> sq = query.subquery(DatasetEntity.class);
+            Root<DatastreamEntity> datastream = sq.from(DatastreamEntity.class);
+            Join<DatastreamEntity, DatasetEntity> join = datastream.join(DatastreamEntity.PROPERTY_DATASETS);
+            sq.select(join.get(DatasetEntity.PROPERTY_ID)).where(
+                    builder.equal(datastream.get(DatastreamEntity.PROPERTY_STA_IDENTIFIER), datastreamIdentifier));
+            return builder.in(root.get(ObservationEntity.PROPERTY_DATASET)).value(sq);
+        };
+    }
+
+    private String createThing(int index) {
+        StringBuilder observations = new StringBuilder();
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            if (i > 0) {
+                observations.append(",");
+            }
+            observations.append("{ \"phenomenonTime\": \"2015-03-03T00:00:")
+                        .append(String.format("%02d", i % 60))
+                        .append("Z\", \"result\": ")
+                        .append(i)
+                        .append(" }");
+        }
+        return "{ \"name\": \"thing " + index + "\", \"description\": \"benchmark thing\", \"Datastreams\": [ { " +
+                "\"unitOfMeasurement\": { \"name\": \"Lumen\", \"symbol\": \"lm\", \"definition\": " +
+                "\"http://www.qudt.org/qudt/owl/1.0.0/unit/Instances.html/Lumen\" }, \"name\": \"datastream " + index +
+                "\", \"description\": \"benchmark datastream\", \"observationType\": " +
+                "\"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\", \"ObservedProperty\": { " +
+                "\"name\": \"Luminous Flux " + index + "\", \"definition\": \"http://www.qudt.org/qudt/owl/1.0" +
+                ".0/quantity/Instances.html/LuminousFlux\", \"description\": \"observedProperty\" }, \"Sensor\": { " +
+                "\"name\": \"sensor " + index + "\", \"description\": \"sensor\", \"encodingType\": " +
+                "\"application/pdf\", \"metadata\": \"Light flux sensor\" }, \"Observations\": [ " + observations +
+                " ] } ] }";
+    }
+}
@@ -45,6 +45,7 @@ import org.n52.series.db.beans.sta.ObservationEntity;
 import org.n52.series.db.beans.sta.SensorEntity;
 import org.n52.sta.data.service.util.CollectionWrapper;
 import org.n52.sta.serdes.CollectionSer;
+import org.n52.sta.serdes.DataArraySerDes;
 import org.n52.sta.serdes.DatastreamSerDes;
 import org.n52.sta.serdes.FeatureOfInterestSerDes;
 import org.n52.sta.serdes.HistoricalLocationSerDes;
@@ -56,9 +57,12 @@ import org.n52.sta.serdes.ThingSerDes;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 
 import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
 public class JacksonConfig {
@@ -67,6 +71,41 @@ public class JacksonConfig {
     public ObjectMapper customMapper(@Value("${server.rootUrl}") String rootUrl,
                                      @Value("${server.feature.variableEncodingType:false}")
                                              boolean variableSensorEncodingTypeEnabled) {
+        return Jackson2ObjectMapperBuilder.json()
+                                          .modules(createModules(rootUrl, variableSensorEncodingTypeEnabled))
+                                          .build();
+    }
+
+    /**
+     * Writes responses as CBOR if requested via Accept: application/cbor. Uses the same serializers as JSON.
+     * Always registered so that it replaces the default converter of Spring MVC, which would serialize the response
+     * without these serializers. Disabled requests are rejected by BinaryEncodingFilter.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborConverter(
+            @Value("${server.rootUrl}") String rootUrl,
+            @Value("${server.feature.variableEncodingType:false}") boolean variableSensorEncodingTypeEnabled) {
+        return new MappingJackson2CborHttpMessageConverter(
+                Jackson2ObjectMapperBuilder.cbor()
+                                          .modules(createModules(rootUrl, variableSensorEncodingTypeEnabled))
+                                          .build());
+    }
+
+    /**
+     * Writes responses as Smile if requested via Accept: application/x-jackson-smile. Uses the same serializers as
+     * JSON.
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileConverter(
+            @Value("${server.rootUrl}") String rootUrl,
+            @Value("${server.feature.variableEncodingType:false}") boolean variableSensorEncodingTypeEnabled) {
+        return new MappingJackson2SmileHttpMessageConverter(
+                Jackson2ObjectMapperBuilder.smile()
+                                          .modules(createModules(rootUrl, variableSensorEncodingTypeEnabled))
+                                          .build());
+    }
+
+    private List<Module> createModules(String rootUrl, boolean variableSensorEncodingTypeEnabled) {
         ArrayList<Module> modules = new ArrayList<>();
 
         SimpleModule module = new SimpleModule();
@@ -101,6 +140,9 @@ public class JacksonConfig {
         deserializers.addDeserializer(DatastreamEntity.class,
                                       new DatastreamSerDes.DatastreamDeserializer());
 
+        deserializers.addDeserializer(DataArraySerDes.DataArray.class,
+                                      new DataArraySerDes.DataArrayDeserializer());
+
         deserializers.addDeserializer(ThingSerDes.PlatformEntityPatch.class,
                                       new ThingSerDes.ThingPatchDeserializer());
         deserializers.addDeserializer(LocationSerDes.LocationEntityPatch.class,
@@ -122,8 +164,6 @@ public class JacksonConfig {
         module.setDeserializers(deserializers);
         modules.add(module);
         modules.add(new AfterburnerModule());
-        return Jackson2ObjectMapperBuilder.json()
-                                          .modules(modules)
-                                          .build();
+        return modules;
     }
 }
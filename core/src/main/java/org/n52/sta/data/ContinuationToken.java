@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.data;
+
+import org.n52.janmayen.http.HTTPStatus;
+import org.n52.shetland.ogc.sta.exception.STACRUDException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque token used for keyset pagination. Encodes the sort property and direction of the request together with the
+ * sort value and id of the last entity of the previous page, so the next page can be queried with
+ * {@code WHERE (sortValue, id) > (lastSortValue, lastId)} instead of skipping all previous rows.
+ * Time values are encoded as ISO-8601 instants with full precision, including the nanoseconds of {@link Timestamp}s.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class ContinuationToken {
+
+    private static final String SEPARATOR = "\n";
+    private static final String ASC = "asc";
+    private static final String DESC = "desc";
+    private static final String INVALID_TOKEN = "Invalid $skiptoken: ";
+
+    private final String sortProperty;
+    private final boolean descending;
+    private final String value;
+    private final Long id;
+    private final Timestamp time;
+
+    /**
+     * @param sortProperty name of the property the collection is sorted by
+     * @param descending   whether the collection is sorted descending
+     * @param value        value of the sort property of the last entity of the previous page
+     * @param id           id of the last entity of the previous page. May be null if sortProperty is unique.
+     */
+    public ContinuationToken(String sortProperty, boolean descending, String value, Long id) {
+        this(sortProperty, descending, value, id, null);
+    }
+
+    /**
+     * @param sortProperty name of the time property the collection is sorted by
+     * @param descending   whether the collection is sorted descending
+     * @param time         value of the sort property of the last entity of the previous page
+     * @param id           id of the last entity of the previous page
+     */
+    public ContinuationToken(String sortProperty, boolean descending, Date time, long id) {
+        this(sortProperty, descending, time.toInstant().toString(), id, null);
+    }
+
+    private ContinuationToken(String sortProperty, boolean descending, String value, Long id, Timestamp time) {
+        this.sortProperty = sortProperty;
+        this.descending = descending;
+        this.value = value;
+        this.id = id;
+        this.time = time;
+    }
+
+    /**
+     * Decodes the given token. The value of tokens with an id is parsed as time.
+     *
+     * @param token encoded token
+     * @return decoded token
+     * @throws STACRUDException if the token is malformed
+     */
+    public static ContinuationToken decode(String token) throws STACRUDException {
+        String[] split;
+        try {
+            split = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, 4);
+        } catch (IllegalArgumentException e) {
+            throw new STACRUDException(INVALID_TOKEN + token, HTTPStatus.BAD_REQUEST);
+        }
+        if (split.length != 4 || split[0].isEmpty() || !(ASC.equals(split[1]) || DESC.equals(split[1]))) {
+            throw new STACRUDException(INVALID_TOKEN + token, HTTPStatus.BAD_REQUEST);
+        }
+        try {
+            Long id = split[2].isEmpty() ? null : Long.valueOf(split[2]);
+            Timestamp time = (id != null) ? Timestamp.from(Instant.parse(split[3])) : null;
+            return new ContinuationToken(split[0], DESC.equals(split[1]), split[3], id, time);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new STACRUDException(INVALID_TOKEN + token, HTTPStatus.BAD_REQUEST);
+        }
+    }
+
+    public String encode() {
+        String raw = sortProperty + SEPARATOR
+                + (descending ? DESC : ASC) + SEPARATOR
+                + (id == null ? "" : id.toString()) + SEPARATOR
+                // value is last as it may contain the separator
+                + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks that this token was created for a request with the same sort order.
+     *
+     * @param property   name of the property the collection is sorted by
+     * @param descending whether the collection is sorted descending
+     * @param unique     whether the property is unique. Otherwise the token must contain an id as tiebreaker
+     * @throws STACRUDException if the sort order does not match
+     */
+    public void checkSort(String property, boolean descending, boolean unique) throws STACRUDException {
+        if (!sortProperty.equals(property) || this.descending != descending || unique != (id == null)) {
+            throw new STACRUDException(INVALID_TOKEN + "Token does not match $orderby of the request.",
+                                       HTTPStatus.BAD_REQUEST);
+        }
+    }
+
+    public String getSortProperty() {
+        return sortProperty;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * @return value as time if the token was decoded with an id. null otherwise
+     */
+    public Timestamp getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU-Cache holding the ids of the Datasets belonging to a Datastream. Keyed by staIdentifier of the
+ * Datastream. Used to filter Observations of a Datastream by plain Dataset ids instead of joining the Datastream.
+ * Additionally holds the staIdentifier of the Datastream by Dataset id, which is used to get the related Collections
+ * of Observations for mqtt handling. Both are invalidated together.
+ * Entries are invalidated by {@link org.n52.sta.data.repositories.MessageBusRepository} when the Datasets of a
+ * Datastream changed and when an Entity is deleted.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+public class DatastreamDatasetCache {
+
+    // Number of Datasets for which the Datastream is cached per cached Datastream
+    private static final int DATASETS_PER_DATASTREAM = 10;
+
+    private final int capacity;
+    private final Map<String, List<Long>> cache;
+    private final Map<Long, String> datastreamByDataset;
+    private final AtomicLong version = new AtomicLong();
+
+    public DatastreamDatasetCache(@Value("${server.feature.datasetIdCacheSize:1000}") int capacity) {
+        this.capacity = capacity;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, List<Long>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 7613820913394570731L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<String, List<Long>> eldest) {
+                return size() > DatastreamDatasetCache.this.capacity;
+            }
+        });
+        this.datastreamByDataset = Collections.synchronizedMap(new LinkedHashMap<Long, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = -2186319574629830416L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > DatastreamDatasetCache.this.capacity * DATASETS_PER_DATASTREAM;
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Gets the current version of the cache. Must be obtained before the database is queried, so that changes
+     * happening concurrently prevent the result from being cached.
+     *
+     * @return current version
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Gets the cached Dataset ids of given Datastream.
+     *
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     * @return ids of the Datasets or null if none are cached
+     */
+    public List<Long> get(String datastreamIdentifier) {
+        return isEnabled() ? cache.get(datastreamIdentifier) : null;
+    }
+
+    /**
+     * Stores the Dataset ids of given Datastream if the cache was not invalidated in the meantime.
+     *
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     * @param datasetIds           ids of the Datasets
+     * @param version              version obtained before the ids were read from the database
+     */
+    public void put(String datastreamIdentifier, Collection<Long> datasetIds, long version) {
+        if (isEnabled()) {
+            List<Long> ids = Collections.unmodifiableList(new ArrayList<>(datasetIds));
+            synchronized (cache) {
+                if (this.version.get() == version) {
+                    cache.put(datastreamIdentifier, ids);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the cached staIdentifier of the Datastream given Dataset belongs to.
+     *
+     * @param datasetId id of the Dataset
+     * @return staIdentifier of the Datastream or null if none is cached
+     */
+    public String getDatastream(Long datasetId) {
+        return isEnabled() ? datastreamByDataset.get(datasetId) : null;
+    }
+
+    /**
+     * Stores the staIdentifier of the Datastream given Dataset belongs to if the cache was not invalidated in the
+     * meantime.
+     *
+     * @param datasetId            id of the Dataset
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     * @param version              version obtained before the Datastream was read from the database
+     */
+    public void putDatastream(Long datasetId, String datastreamIdentifier, long version) {
+        if (isEnabled()) {
+            synchronized (cache) {
+                if (this.version.get() == version) {
+                    datastreamByDataset.put(datasetId, datastreamIdentifier);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry of given Datastream unless the cached ids match the current Datasets. Is repeated after
+     * the current transaction completed, so that ids read concurrently before the commit are not kept.
+     *
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     * @param datasetIds           ids of the current Datasets of the Datastream. null if unknown
+     */
+    public void invalidate(String datastreamIdentifier, Collection<Long> datasetIds) {
+        if (isEnabled() && datastreamIdentifier != null) {
+            List<Long> cached = cache.get(datastreamIdentifier);
+            if (cached == null
+                    || datasetIds == null
+                    || !new HashSet<>(cached).equals(new HashSet<>(datasetIds))) {
+                Runnable action = () -> {
+                    synchronized (cache) {
+                        version.incrementAndGet();
+                        cache.remove(datastreamIdentifier);
+                        synchronized (datastreamByDataset) {
+                            datastreamByDataset.values().removeIf(datastreamIdentifier::equals);
+                        }
+                    }
+                };
+                action.run();
+                afterCompletion(action);
+            }
+        }
+    }
+
+    /**
+     * Removes all entries. Used when Entities are deleted, as deletion may cascade to Datasets. Dataset ids are not
+     * reused, but a Datastream may be re-created with the staIdentifier of a deleted one.
+     */
+    public void invalidateAll() {
+        if (isEnabled()) {
+            Runnable action = () -> {
+                synchronized (cache) {
+                    version.incrementAndGet();
+                    cache.clear();
+                    datastreamByDataset.clear();
+                }
+            };
+            action.run();
+            afterCompletion(action);
+        }
+    }
+
+    private void afterCompletion(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+}
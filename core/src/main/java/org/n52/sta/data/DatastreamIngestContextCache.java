@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded LRU-Cache holding the entities resolved during insertion of an Observation into a Datastream
+ * (Category, Offering, Dataset per FeatureOfInterest). Keyed by staIdentifier of the Datastream.
+ * Entries are invalidated by {@link org.n52.sta.data.repositories.MessageBusRepository} when a Datastream, Sensor,
+ * Thing or Location is saved.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+public class DatastreamIngestContextCache {
+
+    /**
+     * Key used for Observations without explicit FeatureOfInterest (FeatureOfInterest is derived from the
+     * Location of the Thing)
+     */
+    public static final String DERIVED_FEATURE = "";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatastreamIngestContextCache.class);
+
+    // Maximum number of distinct FeaturesOfInterest cached per Datastream
+    private static final int MAX_FEATURES_PER_DATASTREAM = 128;
+
+    private final int capacity;
+    private final Map<String, IngestContext> cache;
+
+    public DatastreamIngestContextCache(@Value("${server.feature.ingestCacheSize:1000}") int capacity) {
+        this.capacity = capacity;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, IngestContext>(16, 0.75f, true) {
+            private static final long serialVersionUID = -3829364815296318514L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<String, IngestContext> eldest) {
+                return size() > DatastreamIngestContextCache.this.capacity;
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Gets the cached context for given Datastream.
+     *
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     * @return cached context or null if none is present
+     */
+    public IngestContext get(String datastreamIdentifier) {
+        return isEnabled() ? cache.get(datastreamIdentifier) : null;
+    }
+
+    /**
+     * Stores the Dataset resolved for given Datastream and FeatureOfInterest.
+     *
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     * @param datastreamId         id of the Datastream
+     * @param categoryId           id of the Category
+     * @param offeringId           id of the Offering
+     * @param featureIdentifier    staIdentifier of the FeatureOfInterest or {@link #DERIVED_FEATURE}
+     * @param datasetId            id of the Dataset
+     */
+    public void put(String datastreamIdentifier,
+                    Long datastreamId,
+                    Long categoryId,
+                    Long offeringId,
+                    String featureIdentifier,
+                    Long datasetId) {
+        if (isEnabled()) {
+            IngestContext context = cache.compute(datastreamIdentifier, (k, v) ->
+                    (v == null || !v.getDatastreamId().equals(datastreamId))
+                            ? new IngestContext(datastreamId, categoryId, offeringId) : v);
+            context.putDataset(featureIdentifier, datasetId);
+        }
+    }
+
+    /**
+     * Removes the context of given Datastream.
+     *
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     */
+    public void invalidate(String datastreamIdentifier) {
+        if (isEnabled() && datastreamIdentifier != null && cache.remove(datastreamIdentifier) != null) {
+            LOGGER.debug("Invalidated ingest context of Datastream {}", datastreamIdentifier);
+        }
+    }
+
+    /**
+     * Removes all contexts. Used when an Entity changed that may be referenced by multiple Datastreams.
+     */
+    public void invalidateAll() {
+        if (isEnabled()) {
+            cache.clear();
+        }
+    }
+
+
+    /**
+     * Ids of all Entities resolved when inserting an Observation into a Datastream.
+     */
+    public static final class IngestContext {
+
+        private final Long datastreamId;
+        private final Long categoryId;
+        private final Long offeringId;
+        private final Map<String, Long> datasets = new ConcurrentHashMap<>();
+
+        IngestContext(Long datastreamId, Long categoryId, Long offeringId) {
+            this.datastreamId = datastreamId;
+            this.categoryId = categoryId;
+            this.offeringId = offeringId;
+        }
+
+        public Long getDatastreamId() {
+            return datastreamId;
+        }
+
+        public Long getCategoryId() {
+            return categoryId;
+        }
+
+        public Long getOfferingId() {
+            return offeringId;
+        }
+
+        /**
+         * @param featureIdentifier staIdentifier of the FeatureOfInterest or {@link #DERIVED_FEATURE}
+         * @return id of the Dataset or null if not cached
+         */
+        public Long getDatasetId(String featureIdentifier) {
+            return datasets.get(featureIdentifier);
+        }
+
+        void putDataset(String featureIdentifier, Long datasetId) {
+            if (datasets.size() >= MAX_FEATURES_PER_DATASTREAM) {
+                datasets.clear();
+            }
+            datasets.put(featureIdentifier, datasetId);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.data;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.n52.series.db.beans.AbstractFeatureEntity;
+import org.n52.series.db.beans.DescribableEntity;
+import org.n52.series.db.beans.PhenomenonEntity;
+import org.n52.series.db.beans.PlatformEntity;
+import org.n52.series.db.beans.ProcedureEntity;
+import org.n52.series.db.beans.sta.DatastreamEntity;
+import org.n52.series.db.beans.sta.HistoricalLocationEntity;
+import org.n52.series.db.beans.sta.LocationEntity;
+import org.n52.series.db.beans.sta.ObservationEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks on startup whether the indexes backing the most common access patterns are present, as the schema is
+ * usually created by hbm2ddl, which only creates primary and foreign keys:
+ * <ul>
+ *     <li>Observations of a Dataset ordered by phenomenonTime (dataset, samplingTimeEnd, id)</li>
+ *     <li>lookups and default ordering by staIdentifier (unique per table)</li>
+ *     <li>spatial filters on Locations and FeaturesOfInterest (GIST)</li>
+ * </ul>
+ * Table and column names are resolved from the Hibernate mapping. The DDL for missing indexes is logged and
+ * optionally executed.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+public class IndexAdvisor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexAdvisor.class);
+
+    // Maximum length of identifiers in PostgreSQL
+    private static final int MAX_NAME_LENGTH = 63;
+    private static final String ID = "id";
+
+    private static final List<RecommendedIndex> RECOMMENDED_INDEXES = Arrays.asList(
+            new RecommendedIndex(ObservationEntity.class,
+                                 IndexType.DEFAULT,
+                                 ObservationEntity.PROPERTY_DATASET,
+                                 ObservationEntity.PROPERTY_SAMPLING_TIME_END,
+                                 ID),
+            new RecommendedIndex(ObservationEntity.class, IndexType.UNIQUE, DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(DatastreamEntity.class, IndexType.UNIQUE, DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(PlatformEntity.class, IndexType.UNIQUE, DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(LocationEntity.class, IndexType.UNIQUE, DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(HistoricalLocationEntity.class,
+                                 IndexType.UNIQUE,
+                                 DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(ProcedureEntity.class, IndexType.UNIQUE, DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(PhenomenonEntity.class, IndexType.UNIQUE, DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(AbstractFeatureEntity.class,
+                                 IndexType.UNIQUE,
+                                 DescribableEntity.PROPERTY_STA_IDENTIFIER),
+            new RecommendedIndex(LocationEntity.class, IndexType.SPATIAL, LocationEntity.PROPERTY_GEOMETRY_ENTITY),
+            new RecommendedIndex(AbstractFeatureEntity.class,
+                                 IndexType.SPATIAL,
+                                 AbstractFeatureEntity.PROPERTY_GEOMETRY_ENTITY)
+    );
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final boolean checkIndexes;
+    private final boolean createIndexes;
+    private final AtomicBoolean checked = new AtomicBoolean();
+
+    public IndexAdvisor(EntityManagerFactory entityManagerFactory,
+                        DataSource dataSource,
+                        @Value("${server.feature.checkIndexes:true}") boolean checkIndexes,
+                        @Value("${server.feature.createIndexes:false}") boolean createIndexes) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSource = dataSource;
+        this.checkIndexes = checkIndexes;
+        this.createIndexes = createIndexes;
+    }
+
+    @EventListener({ContextRefreshedEvent.class})
+    public void checkIndexes() {
+        if (!(checkIndexes || createIndexes) || !checked.compareAndSet(false, true)) {
+            return;
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            List<String> missing = getMissingIndexes(connection);
+            if (missing.isEmpty()) {
+                LOGGER.debug("All recommended indexes are present.");
+            } else if (createIndexes) {
+                createIndexes(connection, missing);
+            } else {
+                LOGGER.warn("{} recommended indexes are missing. Queries may fall back to sequential scans. " +
+                                    "Create them manually or set server.feature.createIndexes=true:{}{}",
+                            missing.size(),
+                            System.lineSeparator(),
+                            String.join(System.lineSeparator(), missing));
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.warn("Could not check recommended indexes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the DDL statements creating all recommended indexes that are not present in the database.
+     *
+     * @param connection connection to the database
+     * @return DDL statements of missing indexes
+     * @throws SQLException if the database metadata could not be read
+     */
+    List<String> getMissingIndexes(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        Map<String, TableIndexes> existing = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (RecommendedIndex index : RECOMMENDED_INDEXES) {
+            AbstractEntityPersister persister = getPersister(sessionFactory, index.entityClass);
+            if (persister == null) {
+                LOGGER.debug("Skipping index check for unmapped entity {}", index.entityClass.getSimpleName());
+                continue;
+            }
+            String table = persister.getTableName();
+            List<String> columns = new ArrayList<>();
+            for (String property : index.properties) {
+                columns.addAll(Arrays.asList(getColumnNames(persister, property)));
+            }
+            TableIndexes indexes = existing.computeIfAbsent(table, t -> readIndexes(metaData, t));
+            if (!indexes.covers(columns, index.type == IndexType.UNIQUE)) {
+                missing.add(createStatement(table, columns, index.type));
+            }
+        }
+        return missing;
+    }
+
+    private void createIndexes(Connection connection, List<String> statements) {
+        for (String statement : statements) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(statement);
+                LOGGER.info("Created recommended index: {}", statement);
+            } catch (SQLException e) {
+                LOGGER.warn("Could not create recommended index '{}': {}", statement, e.getMessage());
+            }
+        }
+    }
+
+    private AbstractEntityPersister getPersister(SessionFactoryImplementor sessionFactory, Class<?> entityClass) {
+        try {
+            EntityPersister persister = sessionFactory.getMetamodel().entityPersister(entityClass);
+            return (persister instanceof AbstractEntityPersister) ? (AbstractEntityPersister) persister : null;
+        } catch (MappingException e) {
+            return null;
+        }
+    }
+
+    private String[] getColumnNames(AbstractEntityPersister persister, String property) {
+        if (ID.equals(property) || property.equals(persister.getIdentifierPropertyName())) {
+            return persister.getIdentifierColumnNames();
+        }
+        return persister.getPropertyColumnNames(property);
+    }
+
+    private TableIndexes readIndexes(DatabaseMetaData metaData, String qualifiedTable) {
+        int separator = qualifiedTable.lastIndexOf('.');
+        String schema = separator > 0 ? qualifiedTable.substring(0, separator) : null;
+        String table = qualifiedTable.substring(separator + 1);
+        Map<String, TreeMap<Short, String>> columns = new HashMap<>();
+        Map<String, Boolean> unique = new HashMap<>();
+        try (ResultSet rs = metaData.getIndexInfo(null, schema, table.toLowerCase(Locale.ROOT), false, true)) {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (name == null || column == null) {
+                    continue;
+                }
+                columns.computeIfAbsent(name, k -> new TreeMap<>())
+                       .put(rs.getShort("ORDINAL_POSITION"), column.toLowerCase(Locale.ROOT));
+                unique.put(name, !rs.getBoolean("NON_UNIQUE"));
+            }
+        } catch (SQLException e) {
+            LOGGER.debug("Could not read indexes of table {}: {}", qualifiedTable, e.getMessage());
+        }
+        List<Index> indexes = new ArrayList<>();
+        columns.forEach((name, cols) -> indexes.add(new Index(new ArrayList<>(cols.values()), unique.get(name))));
+        return new TableIndexes(indexes);
+    }
+
+    private String createStatement(String table, List<String> columns, IndexType type) {
+        String name = ("idx_" + table.substring(table.lastIndexOf('.') + 1) + "_" + String.join("_", columns))
+                .toLowerCase(Locale.ROOT);
+        if (name.length() > MAX_NAME_LENGTH) {
+            name = name.substring(0, MAX_NAME_LENGTH);
+        }
+        switch (type) {
+        case UNIQUE:
+            return String.format("CREATE UNIQUE INDEX IF NOT EXISTS %s ON %s (%s);",
+                                 name, table, String.join(", ", columns));
+        case SPATIAL:
+            return String.format("CREATE INDEX IF NOT EXISTS %s ON %s USING GIST (%s);",
+                                 name, table, String.join(", ", columns));
+        default:
+            return String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s);",
+                                 name, table, String.join(", ", columns));
+        }
+    }
+
+    private enum IndexType {
+        DEFAULT,
+        UNIQUE,
+        SPATIAL
+    }
+
+    private static final class RecommendedIndex {
+
+        private final Class<?> entityClass;
+        private final IndexType type;
+        private final List<String> properties;
+
+        RecommendedIndex(Class<?> entityClass, IndexType type, String... properties) {
+            this.entityClass = entityClass;
+            this.type = type;
+            this.properties = Collections.unmodifiableList(Arrays.asList(properties));
+        }
+    }
+
+    private static final class Index {
+
+        private final List<String> columns;
+        private final boolean unique;
+
+        Index(List<String> columns, boolean unique) {
+            this.columns = columns;
+            this.unique = unique;
+        }
+    }
+
+    /**
+     * Indexes present on a single table.
+     */
+    private static final class TableIndexes {
+
+        private final List<Index> indexes;
+
+        TableIndexes(List<Index> indexes) {
+            this.indexes = indexes;
+        }
+
+        /**
+         * Checks whether an index starts with the given columns. Unique indexes must match exactly, as uniqueness
+         * of a superset of columns does not imply uniqueness of the given columns.
+         */
+        boolean covers(List<String> columns, boolean unique) {
+            List<String> expected = new ArrayList<>();
+            columns.forEach(c -> expected.add(c.toLowerCase(Locale.ROOT)));
+            for (Index index : indexes) {
+                if (unique) {
+                    if (index.unique && index.columns.equals(expected)) {
+                        return true;
+                    }
+                } else if (index.columns.size() >= expected.size()
+                        && index.columns.subList(0, expected.size()).equals(expected)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
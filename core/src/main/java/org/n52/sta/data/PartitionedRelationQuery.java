@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.data;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.n52.series.db.beans.DescribableEntity;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the entities related to multiple parent entities with a single query, limiting the related entities per
+ * parent (e.g. /Datastreams?$expand=Observations($top=10)). As neither JPQL nor the Criteria API of Hibernate 5.4
+ * support window functions, a native query using ROW_NUMBER() OVER (PARTITION BY parent) is built from the
+ * Hibernate mapping. Related entities are ordered by staIdentifier, which is the default order of all collections.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+public class PartitionedRelationQuery {
+
+    private static final String QUERY = "SELECT w.parent, w.id FROM ("
+            + "SELECT p.%1$s AS parent, t.%2$s AS id, ROW_NUMBER() OVER (PARTITION BY p.%1$s ORDER BY t.%3$s) AS rn "
+            + "FROM %4$s t INNER JOIN %5$s p ON t.%6$s = p.%7$s WHERE p.%1$s IN (:parents)) w "
+            + "WHERE w.rn > :skip AND w.rn <= :last ORDER BY w.parent, w.rn";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager em;
+    private final Map<Relation, String> queries = new ConcurrentHashMap<>();
+
+    public PartitionedRelationQuery(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.em = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+    }
+
+    /**
+     * Returns the ids of the entities related to each of the given parents. The relation is given by a collection
+     * of the parent mapped via a join table and the property of the related entity referenced by that join table.
+     * E.g. Observations of Datastreams are related via Datastream.datasets and Observation.dataset.
+     *
+     * @param parentClass        class of the parent entities
+     * @param collectionProperty collection of the parent mapped via a join table
+     * @param targetClass        class of the related entities
+     * @param targetProperty     property of the related entity referenced by the join table
+     * @param parentIds          ids of the parent entities
+     * @param skip               number of related entities skipped per parent
+     * @param top                maximum number of related entities per parent
+     * @return ids of the related entities ordered by staIdentifier by id of the parent
+     */
+    public Map<Long, List<Long>> findIdsByParent(Class<?> parentClass,
+                                                 String collectionProperty,
+                                                 Class<?> targetClass,
+                                                 String targetProperty,
+                                                 Collection<Long> parentIds,
+                                                 int skip,
+                                                 int top) {
+        if (parentIds.isEmpty() || top <= 0) {
+            return Collections.emptyMap();
+        }
+        String query = queries.computeIfAbsent(
+                new Relation(parentClass, collectionProperty, targetClass, targetProperty), this::createQuery);
+        List<?> rows = em.createNativeQuery(query)
+                         .setParameter("parents", parentIds)
+                         .setParameter("skip", skip)
+                         .setParameter("last", (long) skip + top)
+                         .getResultList();
+        Map<Long, List<Long>> ids = new LinkedHashMap<>();
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            Long parent = ((Number) columns[0]).longValue();
+            ids.computeIfAbsent(parent, k -> new ArrayList<>()).add(((Number) columns[1]).longValue());
+        }
+        return ids;
+    }
+
+    private String createQuery(Relation relation) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        AbstractEntityPersister parent = (AbstractEntityPersister) sessionFactory.getMetamodel()
+                                                                                 .entityPersister(relation.parentClass);
+        AbstractEntityPersister target = (AbstractEntityPersister) sessionFactory.getMetamodel()
+                                                                                 .entityPersister(relation.targetClass);
+        AbstractCollectionPersister collection = (AbstractCollectionPersister) sessionFactory
+                .getMetamodel()
+                .collectionPersister(parent.getEntityName() + "." + relation.collectionProperty);
+        String targetColumn = relation.targetProperty.equals(target.getIdentifierPropertyName())
+                ? target.getIdentifierColumnNames()[0]
+                : target.getPropertyColumnNames(relation.targetProperty)[0];
+        return String.format(QUERY,
+                             collection.getKeyColumnNames()[0],
+                             target.getIdentifierColumnNames()[0],
+                             target.getPropertyColumnNames(DescribableEntity.PROPERTY_STA_IDENTIFIER)[0],
+                             target.getTableName(),
+                             collection.getTableName(),
+                             targetColumn,
+                             collection.getElementColumnNames()[0]);
+    }
+
+
+    private static final class Relation {
+
+        private final Class<?> parentClass;
+        private final String collectionProperty;
+        private final Class<?> targetClass;
+        private final String targetProperty;
+
+        Relation(Class<?> parentClass, String collectionProperty, Class<?> targetClass, String targetProperty) {
+            this.parentClass = parentClass;
+            this.collectionProperty = collectionProperty;
+            this.targetClass = targetClass;
+            this.targetProperty = targetProperty;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Relation relation = (Relation) o;
+            return parentClass.equals(relation.parentClass)
+                    && collectionProperty.equals(relation.collectionProperty)
+                    && targetClass.equals(relation.targetClass)
+                    && targetProperty.equals(relation.targetProperty);
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(parentClass, collectionProperty, targetClass, targetProperty);
+        }
+    }
+}
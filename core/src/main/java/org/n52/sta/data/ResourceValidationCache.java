@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.data;
+
+import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU-Cache holding the results of the semantic validation of request URLs, e.g. whether an Entity exists
+ * or which Entity is related to another Entity. Only positive results are cached.
+ * Each entry is stamped with the versions of the Entity types involved. Versions are incremented by
+ * {@link org.n52.sta.data.repositories.MessageBusRepository} when an Entity of a type is saved and for all types
+ * when an Entity is deleted, which invalidates all entries involving the type.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+public class ResourceValidationCache {
+
+    private static final Map<String, String> COLLECTION_NAMES = new HashMap<>();
+
+    static {
+        COLLECTION_NAMES.put(STAEntityDefinition.THING, STAEntityDefinition.THINGS);
+        COLLECTION_NAMES.put(STAEntityDefinition.LOCATION, STAEntityDefinition.LOCATIONS);
+        COLLECTION_NAMES.put(STAEntityDefinition.HISTORICAL_LOCATION, STAEntityDefinition.HISTORICAL_LOCATIONS);
+        COLLECTION_NAMES.put(STAEntityDefinition.SENSOR, STAEntityDefinition.SENSORS);
+        COLLECTION_NAMES.put(STAEntityDefinition.DATASTREAM, STAEntityDefinition.DATASTREAMS);
+        COLLECTION_NAMES.put(STAEntityDefinition.OBSERVATION, STAEntityDefinition.OBSERVATIONS);
+        COLLECTION_NAMES.put(STAEntityDefinition.OBSERVED_PROPERTY, STAEntityDefinition.OBSERVED_PROPERTIES);
+        COLLECTION_NAMES.put(STAEntityDefinition.FEATURE_OF_INTEREST, STAEntityDefinition.FEATURES_OF_INTEREST);
+    }
+
+    private final int capacity;
+    private final Map<String, CachedResult> cache;
+    private final Map<String, AtomicLong> typeVersions = new ConcurrentHashMap<>();
+    private final AtomicLong deleteVersion = new AtomicLong();
+
+    public ResourceValidationCache(@Value("${server.feature.validationCacheSize:10000}") int capacity) {
+        this.capacity = capacity;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 4386193841573524612L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > ResourceValidationCache.this.capacity;
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Gets the current versions of the given types. Must be obtained before the database is queried, so that
+     * changes happening concurrently invalidate the result.
+     *
+     * @param sourceType type of the source Entity. Either singular or plural (collection) name
+     * @param targetType type of the target Entity. Either singular or plural (collection) name
+     * @return current versions
+     */
+    public Stamp stamp(String sourceType, String targetType) {
+        return new Stamp(getVersion(sourceType).get(), getVersion(targetType).get(), deleteVersion.get());
+    }
+
+    /**
+     * Gets the cached result.
+     *
+     * @param key        key of the validated resource
+     * @param sourceType type of the source Entity
+     * @param targetType type of the target Entity
+     * @return id of the target Entity. null if nothing is cached or the cached result is outdated
+     */
+    public String get(String key, String sourceType, String targetType) {
+        if (!isEnabled()) {
+            return null;
+        }
+        CachedResult entry = cache.get(key);
+        return (entry != null && entry.stamp.equals(stamp(sourceType, targetType))) ? entry.targetId : null;
+    }
+
+    /**
+     * Stores the result of a successful validation.
+     *
+     * @param key      key of the validated resource
+     * @param targetId id of the target Entity
+     * @param stamp    versions obtained before the validation was started
+     */
+    public void put(String key, String targetId, Stamp stamp) {
+        if (isEnabled()) {
+            cache.put(key, new CachedResult(targetId, stamp));
+        }
+    }
+
+    /**
+     * Invalidates all entries involving the given type. Is repeated after the current transaction completed, so that
+     * results read concurrently before the commit are not kept.
+     *
+     * @param entityType type of the saved Entity. Either singular or plural (collection) name
+     */
+    public void invalidate(String entityType) {
+        if (isEnabled() && entityType != null) {
+            AtomicLong version = getVersion(entityType);
+            version.incrementAndGet();
+            afterCompletion(version::incrementAndGet);
+        }
+    }
+
+    /**
+     * Invalidates all entries. Used when Entities are deleted, as deletion may cascade to other types.
+     */
+    public void invalidateAll() {
+        if (isEnabled()) {
+            deleteVersion.incrementAndGet();
+            afterCompletion(deleteVersion::incrementAndGet);
+        }
+    }
+
+    private void afterCompletion(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private AtomicLong getVersion(String entityType) {
+        return typeVersions.computeIfAbsent(COLLECTION_NAMES.getOrDefault(entityType, entityType),
+                                            k -> new AtomicLong());
+    }
+
+    /**
+     * Versions of the Entity types involved in a validation.
+     */
+    public static final class Stamp {
+
+        private final long sourceVersion;
+        private final long targetVersion;
+        private final long deleteVersion;
+
+        Stamp(long sourceVersion, long targetVersion, long deleteVersion) {
+            this.sourceVersion = sourceVersion;
+            this.targetVersion = targetVersion;
+            this.deleteVersion = deleteVersion;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp stamp = (Stamp) o;
+            return sourceVersion == stamp.sourceVersion
+                    && targetVersion == stamp.targetVersion
+                    && deleteVersion == stamp.deleteVersion;
+        }
+
+        @Override public int hashCode() {
+            return Long.hashCode(sourceVersion) * 31 * 31
+                    + Long.hashCode(targetVersion) * 31
+                    + Long.hashCode(deleteVersion);
+        }
+    }
+
+    private static final class CachedResult {
+
+        private final String targetId;
+        private final Stamp stamp;
+
+        CachedResult(String targetId, Stamp stamp) {
+            this.targetId = targetId;
+            this.stamp = stamp;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.data;
+
+import org.n52.series.db.beans.HibernateRelations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor dispatching Create/Update Events to the {@link STAEventHandler}. Decouples the notification of
+ * subscribers from the transaction that saved the entity.
+ * If coalescing is enabled, Events for an Entity that is still waiting in the queue are merged into the queued Event
+ * instead of being queued again.
+ * Metrics are logged every metricsInterval seconds while Events are submitted and are exposed via JMX if enabled.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+@ManagedResource(objectName = "org.n52.sta:type=STAEventExecutor")
+public class STAEventExecutor implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(STAEventExecutor.class);
+
+    private final STAEventHandler handler;
+    private final ThreadPoolExecutor executor;
+    private final boolean coalesce;
+
+    // Events waiting for execution by Entity. Only used if coalescing is enabled
+    private final Map<String, Event> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+
+    private final ScheduledExecutorService reporter;
+    private long lastReportedSubmitted;
+
+    public STAEventExecutor(STAEventHandler handler,
+                            @Value("${mqtt.notification.threads:2}") int threads,
+                            @Value("${mqtt.notification.queueSize:10000}") int queueSize,
+                            @Value("${mqtt.notification.rejectionPolicy:DROP}") RejectionPolicy rejectionPolicy,
+                            @Value("${mqtt.notification.coalesce:false}") boolean coalesce,
+                            @Value("${mqtt.notification.metricsInterval:60}") long metricsInterval) {
+        this.handler = handler;
+        this.coalesce = coalesce;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(Math.max(1, threads),
+                                               Math.max(1, threads),
+                                               0L,
+                                               TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                                               r -> {
+                                                   Thread thread = new Thread(r, "sta-event-"
+                                                           + threadCount.incrementAndGet());
+                                                   thread.setDaemon(true);
+                                                   return thread;
+                                               },
+                                               createRejectionHandler(rejectionPolicy));
+        if (metricsInterval > 0) {
+            this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "sta-event-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.reporter.scheduleAtFixedRate(this::logMetrics, metricsInterval, metricsInterval, TimeUnit.SECONDS);
+        } else {
+            this.reporter = null;
+        }
+        LOGGER.info("Initialized STAEventExecutor with threads: {}, queueSize: {}, rejectionPolicy: {}, coalesce: {}",
+                    threads, queueSize, rejectionPolicy, coalesce);
+    }
+
+    /**
+     * Queues a Create/Update Event for the {@link STAEventHandler}.
+     *
+     * @param entity             base entity
+     * @param entityType         sta type of entity
+     * @param differenceMap      names of properties that changed. null if all properties changed (e.g. new entity)
+     * @param relatedCollections Map with EntityType-ID pairs for the related entities
+     */
+    public void submit(Object entity,
+                       String entityType,
+                       Set<String> differenceMap,
+                       Map<String, Set<String>> relatedCollections) {
+        submitted.incrementAndGet();
+        if (coalesce && entity instanceof HibernateRelations.HasStaIdentifier) {
+            String key = entityType + ((HibernateRelations.HasStaIdentifier) entity).getStaIdentifier();
+            Event[] created = new Event[1];
+            pending.compute(key, (k, queued) -> {
+                if (queued == null) {
+                    created[0] = new Event(key, entity, entityType, differenceMap, relatedCollections);
+                    return created[0];
+                } else {
+                    coalesced.incrementAndGet();
+                    queued.merge(entity, differenceMap, relatedCollections);
+                    return queued;
+                }
+            });
+            if (created[0] != null) {
+                executor.execute(created[0]);
+            }
+        } else {
+            executor.execute(new Event(null, entity, entityType, differenceMap, relatedCollections));
+        }
+    }
+
+    private RejectedExecutionHandler createRejectionHandler(RejectionPolicy rejectionPolicy) {
+        switch (rejectionPolicy) {
+        case CALLER_RUNS:
+            return (r, pool) -> {
+                if (!pool.isShutdown()) {
+                    r.run();
+                }
+            };
+        case DROP:
+        default:
+            return (r, pool) -> {
+                Event event = (Event) r;
+                if (event.key != null) {
+                    pending.remove(event.key, event);
+                }
+                dropped.incrementAndGet();
+                LOGGER.warn("STAEventExecutor queue is full. Dropped Event for EntityType {}", event.entityType);
+            };
+        }
+    }
+
+    /**
+     * Logs the metrics of the executor. Skipped while the executor is idle, i.e. no Events were submitted since the
+     * last report and the queue is empty.
+     */
+    private void logMetrics() {
+        long currentSubmitted = submitted.get();
+        int queued = getQueuedCount();
+        if (currentSubmitted != lastReportedSubmitted || queued > 0) {
+            lastReportedSubmitted = currentSubmitted;
+            LOGGER.info("STAEventExecutor queued: {}, submitted: {}, coalesced: {}, dropped: {}, processed: {}",
+                        queued, currentSubmitted, getCoalescedCount(), getDroppedCount(), getProcessedCount());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        executor.shutdownNow();
+    }
+
+    @ManagedAttribute(description = "Number of Events waiting for execution")
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    @ManagedAttribute(description = "Number of Events submitted")
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    @ManagedAttribute(description = "Number of Events merged into an already queued Event")
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    @ManagedAttribute(description = "Number of Events dropped because the queue was full")
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @ManagedAttribute(description = "Number of Events handled")
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+
+    /**
+     * Behaviour when an Event is submitted while the queue is full.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Discard the Event
+         */
+        DROP,
+        /**
+         * Handle the Event in the submitting thread (backpressure to the writer)
+         */
+        CALLER_RUNS
+    }
+
+
+    private final class Event implements Runnable {
+
+        private final String key;
+        private final String entityType;
+        private Object entity;
+        private Set<String> differenceMap;
+        private Map<String, Set<String>> relatedCollections;
+
+        private Event(String key,
+                      Object entity,
+                      String entityType,
+                      Set<String> differenceMap,
+                      Map<String, Set<String>> relatedCollections) {
+            this.key = key;
+            this.entity = entity;
+            this.entityType = entityType;
+            this.differenceMap = differenceMap;
+            this.relatedCollections = relatedCollections;
+        }
+
+        /**
+         * Merges a newer Event for the same Entity into this Event. Only called while this Event is pending.
+         */
+        private void merge(Object newEntity, Set<String> newDifferenceMap, Map<String, Set<String>> newRelated) {
+            this.entity = newEntity;
+            if (this.differenceMap != null && newDifferenceMap != null) {
+                Set<String> merged = new HashSet<>(this.differenceMap);
+                merged.addAll(newDifferenceMap);
+                this.differenceMap = merged;
+            } else {
+                // null means that all properties changed
+                this.differenceMap = null;
+            }
+            this.relatedCollections = newRelated;
+        }
+
+        @Override
+        public void run() {
+            if (key != null) {
+                // Remove from pending so that later Events are queued again. Synchronizes with merge()
+                pending.remove(key, this);
+            }
+            try {
+                handler.handleEvent(entity, entityType, differenceMap, relatedCollections);
+                processed.incrementAndGet();
+            } catch (RuntimeException e) {
+                LOGGER.error("Error while handling Event for EntityType {}: {}", entityType, e.getMessage());
+            }
+        }
+    }
+}
@@ -29,8 +29,6 @@
 
 package org.n52.sta.data;
 
-import org.springframework.scheduling.annotation.Async;
-
 import java.util.Map;
 import java.util.Set;
 
@@ -42,13 +40,12 @@ import java.util.Set;
 public interface STAEventHandler {
 
     /**
-     * Handles a Create/Update Event emitted by the Database.
+     * Handles a Create/Update Event emitted by the Database. Called asynchronously by {@link STAEventExecutor}.
      *
      * @param entity        base entity
      * @param entityType    java class name of entity
      * @param differenceMap names of properties that changed. null if all properties changed (e.g. new entity)
      */
-    @Async
     void handleEvent(Object entity,
                      String entityType,
                      Set<String> differenceMap,
@@ -112,6 +112,10 @@ public abstract class EntityQuerySpecifications<T> {
                                                 .value(identifiers);
     }
 
+    public Specification<T> withIds(final List<Long> ids) {
+        return (root, query, builder) -> builder.in(root.get(DescribableEntity.PROPERTY_ID)).value(ids);
+    }
+
     // Wrapper
     @SuppressWarnings("unchecked")
     protected Predicate handleDirectStringPropertyFilter(Path<String> stringPath,
@@ -36,14 +36,18 @@ import org.n52.series.db.beans.sta.DatastreamEntity;
 import org.n52.series.db.beans.sta.ObservationEntity;
 import org.n52.shetland.ogc.filter.FilterConstants;
 import org.n52.shetland.ogc.sta.exception.STAInvalidFilterExpressionException;
+import org.n52.sta.data.ContinuationToken;
 import org.springframework.data.jpa.domain.Specification;
 
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Subquery;
+import java.util.Collection;
+import java.util.Date;
 
 /**
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
@@ -52,26 +56,41 @@ public class ObservationQuerySpecifications extends EntityQuerySpecifications<Ob
 
     public Specification<ObservationEntity<?>> withFeatureOfInterestStaIdentifier(final String featureIdentifier) {
         return (root, query, builder) -> {
-            Subquery<DatasetEntity> sq = query.subquery(DatasetEntity.class);
+            Subquery<Long> sq = query.subquery(Long.class);
             Root<DatasetEntity> dataset = sq.from(DatasetEntity.class);
-            Subquery<FeatureEntity> subquery = query.subquery(FeatureEntity.class);
-            Root<FeatureEntity> feature = subquery.from(FeatureEntity.class);
-            subquery.select(feature.get(FeatureEntity.PROPERTY_ID))
-                    .where(builder.equal(feature.get(FeatureEntity.PROPERTY_STA_IDENTIFIER), featureIdentifier));
+            Join<DatasetEntity, FeatureEntity> feature = dataset.join(DatasetEntity.PROPERTY_FEATURE);
             sq.select(dataset.get(DatasetEntity.PROPERTY_ID))
-              .where(builder.equal(dataset.get(DatasetEntity.PROPERTY_FEATURE), subquery));
-            return builder.in(root.get(ObservationEntity.PROPERTY_DATASET)).value(sq);
+              .where(builder.equal(feature.get(FeatureEntity.PROPERTY_STA_IDENTIFIER), featureIdentifier),
+                     correlateDataset(root, dataset.get(DatasetEntity.PROPERTY_ID), builder));
+            return builder.exists(sq);
         };
     }
 
     public Specification<ObservationEntity<?>> withDatastreamStaIdentifier(final String datastreamIdentifier) {
         return (root, query, builder) -> {
-            Subquery<DatasetEntity> sq = query.subquery(DatasetEntity.class);
+            Subquery<Long> sq = query.subquery(Long.class);
             Root<DatastreamEntity> datastream = sq.from(DatastreamEntity.class);
             Join<DatastreamEntity, DatasetEntity> join = datastream.join(DatastreamEntity.PROPERTY_DATASETS);
-            sq.select(join.get(DatasetEntity.PROPERTY_ID)).where(
-                    builder.equal(datastream.get(DatastreamEntity.PROPERTY_STA_IDENTIFIER), datastreamIdentifier));
-            return builder.in(root.get(ObservationEntity.PROPERTY_DATASET)).value(sq);
+            sq.select(join.get(DatasetEntity.PROPERTY_ID))
+              .where(builder.equal(datastream.get(DatastreamEntity.PROPERTY_STA_IDENTIFIER), datastreamIdentifier),
+                     correlateDataset(root, join.get(DatasetEntity.PROPERTY_ID), builder));
+            return builder.exists(sq);
+        };
+    }
+
+    /**
+     * Matches Observations belonging to one of the given Datasets. Compares the foreign key directly, so no join is
+     * needed.
+     *
+     * @param datasetIds ids of the Datasets
+     * @return a specification
+     */
+    public Specification<ObservationEntity<?>> withDatasetIds(final Collection<Long> datasetIds) {
+        return (root, query, builder) -> {
+            if (datasetIds.isEmpty()) {
+                return builder.disjunction();
+            }
+            return root.get(ObservationEntity.PROPERTY_DATASET).get(DescribableEntity.PROPERTY_ID).in(datasetIds);
         };
     }
 
@@ -83,29 +102,59 @@ public class ObservationQuerySpecifications extends EntityQuerySpecifications<Ob
         };
     }
 
+    /**
+     * Restricts Observations to those after the last Observation of the previous page (keyset pagination).
+     *
+     * @param token token describing the last Observation of the previous page
+     * @return Specification
+     */
+    public Specification<ObservationEntity<?>> withKeysetAfter(final ContinuationToken token) {
+        return (root, query, builder) -> {
+            if (ObservationEntity.PROPERTY_STA_IDENTIFIER.equals(token.getSortProperty())) {
+                // staIdentifier is unique so no tiebreaker is needed
+                Expression<String> staIdentifier = root.get(ObservationEntity.PROPERTY_STA_IDENTIFIER);
+                return token.isDescending()
+                        ? builder.lessThan(staIdentifier, token.getValue())
+                        : builder.greaterThan(staIdentifier, token.getValue());
+            } else {
+                Expression<Date> time = root.get(token.getSortProperty());
+                Expression<Long> id = root.get(ObservationEntity.PROPERTY_ID);
+                Date lastTime = token.getTime();
+                return token.isDescending()
+                        ? builder.or(builder.lessThan(time, lastTime),
+                                     builder.and(builder.equal(time, lastTime),
+                                                 builder.lessThan(id, token.getId())))
+                        : builder.or(builder.greaterThan(time, lastTime),
+                                     builder.and(builder.equal(time, lastTime),
+                                                 builder.greaterThan(id, token.getId())));
+            }
+        };
+    }
+
     @Override protected Specification<ObservationEntity<?>> handleRelatedPropertyFilter(
             String propertyName,
             Specification<?> propertyValue) {
         return (root, query, builder) -> {
             try {
                 if (DATASTREAM.equals(propertyName)) {
-                    Subquery<DatasetEntity> sq = query.subquery(DatasetEntity.class);
+                    Subquery<Long> sq = query.subquery(Long.class);
                     Root<DatastreamEntity> datastream = sq.from(DatastreamEntity.class);
                     Join<DatastreamEntity, DatasetEntity> join = datastream.join(DatastreamEntity.PROPERTY_DATASETS);
-                    sq.select(join).where(
-                            ((Specification<DatastreamEntity>) propertyValue).toPredicate(datastream, query, builder));
-                    return builder.in(root.get(ObservationEntity.PROPERTY_DATASET)).value(sq);
+                    sq.select(join.get(DatasetEntity.PROPERTY_ID)).where(
+                            ((Specification<DatastreamEntity>) propertyValue).toPredicate(datastream, query, builder),
+                            correlateDataset(root, join.get(DatasetEntity.PROPERTY_ID), builder));
+                    return builder.exists(sq);
 
                 } else if (FEATUREOFINTEREST.equals(propertyName)) {
-                    Subquery<DatasetEntity> sq = query.subquery(DatasetEntity.class);
+                    // Specification on the feature requires a Root, so the feature is joined via where-clause
+                    Subquery<Long> sq = query.subquery(Long.class);
                     Root<DatasetEntity> dataset = sq.from(DatasetEntity.class);
-                    Subquery<FeatureEntity> subquery = query.subquery(FeatureEntity.class);
-                    Root<FeatureEntity> feature = subquery.from(FeatureEntity.class);
-                    subquery.select(feature).where(
-                            ((Specification<FeatureEntity>) propertyValue).toPredicate(feature, query, builder));
-                    sq.select(dataset.get(DatasetEntity.PROPERTY_ID))
-                      .where(builder.equal(dataset.get(DatasetEntity.PROPERTY_FEATURE), subquery));
-                    return builder.in(root.get(ObservationEntity.PROPERTY_DATASET)).value(sq);
+                    Root<FeatureEntity> feature = sq.from(FeatureEntity.class);
+                    sq.select(dataset.get(DatasetEntity.PROPERTY_ID)).where(
+                            builder.equal(dataset.get(DatasetEntity.PROPERTY_FEATURE), feature),
+                            ((Specification<FeatureEntity>) propertyValue).toPredicate(feature, query, builder),
+                            correlateDataset(root, dataset.get(DatasetEntity.PROPERTY_ID), builder));
+                    return builder.exists(sq);
                 } else {
                     throw new STAInvalidFilterExpressionException("Could not find related property: " + propertyName);
                 }
@@ -115,6 +164,23 @@ public class ObservationQuerySpecifications extends EntityQuerySpecifications<Ob
         };
     }
 
+    /**
+     * Correlates a subquery with the Observation of the outer query via its dataset. Used to express filters on
+     * related Entities as semi-join (EXISTS) instead of nested IN-subqueries, which PostgreSQL tends to plan poorly
+     * on large Observation tables.
+     *
+     * @param root      Observation of the outer query
+     * @param datasetId id of the dataset in the subquery
+     * @param builder   CriteriaBuilder
+     * @return Predicate correlating subquery and outer query
+     */
+    private Predicate correlateDataset(Root<ObservationEntity<?>> root,
+                                       Expression<Long> datasetId,
+                                       CriteriaBuilder builder) {
+        return builder.equal(datasetId,
+                             root.get(ObservationEntity.PROPERTY_DATASET).get(DescribableEntity.PROPERTY_ID));
+    }
+
     @Override
     protected Specification<ObservationEntity<?>> handleDirectPropertyFilter(
             String propertyName,
@@ -30,6 +30,7 @@ package org.n52.sta.data.repositories;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -106,6 +107,26 @@ public interface EntityGraphRepository<T, I> extends JpaSpecificationExecutor<T>
      */
     List<T> findAll(@Nullable Specification<T> spec, Sort sort, FetchGraph... fetchGraphs);
 
+    /**
+     * Returns a {@link Slice} of entities matching the given {@link Specification}. In contrast to
+     * {@link #findAll(Specification, Pageable, FetchGraph...)} no count query is executed. Instead one additional
+     * entity is fetched to determine whether there is a next slice.
+     * Additionally fetches all related entities given by the provided EntityGraph. All provided Graphs are merged
+     * internally.
+     *
+     * @param spec     can be {@literal null}.
+     * @param pageable must not be {@literal null}.
+     * @param fetchGraphs string representation of EntityGraph.
+     * @return never {@literal null}.
+     */
+    Slice<T> findSlice(@Nullable Specification<T> spec, Pageable pageable, FetchGraph... fetchGraphs);
+
+    /**
+     * Detaches all managed entities from the current persistence context. Used to keep memory usage constant when
+     * reading large results in chunks inside a single read-only transaction. Pending changes are not flushed!
+     */
+    void clearPersistenceContext();
+
     //TODO: expand if necessary
     enum FetchGraph {
         FETCHGRAPH_DEFAULT("identifier"),
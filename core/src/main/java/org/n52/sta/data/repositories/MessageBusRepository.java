@@ -30,7 +30,9 @@
 package org.n52.sta.data.repositories;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +40,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.persistence.EntityGraph;
@@ -50,6 +53,7 @@ import javax.persistence.criteria.ParameterExpression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import org.hibernate.Hibernate;
 import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.graph.EntityGraphs;
 import org.hibernate.graph.GraphParser;
@@ -69,6 +73,10 @@ import org.n52.series.db.beans.sta.SensorEntity;
 import org.n52.shetland.ogc.sta.StaConstants;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
 import org.n52.sta.SpringApplicationContext;
+import org.n52.sta.data.DatastreamDatasetCache;
+import org.n52.sta.data.DatastreamIngestContextCache;
+import org.n52.sta.data.ResourceValidationCache;
+import org.n52.sta.data.STAEventExecutor;
 import org.n52.sta.data.STAEventHandler;
 import org.n52.sta.data.query.DatastreamQuerySpecifications;
 import org.slf4j.Logger;
@@ -76,6 +84,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.query.QueryUtils;
@@ -98,6 +108,10 @@ public class MessageBusRepository<T, I extends Serializable>
 
     private final JpaEntityInformation entityInformation;
     private final STAEventHandler mqttHandler;
+    private final STAEventExecutor eventExecutor;
+    private final DatastreamIngestContextCache ingestContextCache;
+    private final ResourceValidationCache validationCache;
+    private final DatastreamDatasetCache datasetIdCache;
     private final EntityManager em;
     private final Class<T> entityClass;
     private final CriteriaBuilder criteriaBuilder;
@@ -106,6 +120,10 @@ public class MessageBusRepository<T, I extends Serializable>
     private DatastreamRepository datastreamRepository;
     private DatastreamQuerySpecifications dQs = new DatastreamQuerySpecifications();
 
+    // Merged EntityGraphs by combination of FetchGraphs
+    private final Map<Set<EntityGraphRepository.FetchGraph>, EntityGraph<T>> entityGraphCache =
+            new ConcurrentHashMap<>();
+
     @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
     MessageBusRepository(JpaEntityInformation<T, Long> entityInformation,
                          EntityManager entityManager) {
@@ -119,6 +137,21 @@ public class MessageBusRepository<T, I extends Serializable>
         this.mqttHandler = (STAEventHandler) SpringApplicationContext.getBean(STAEventHandler.class);
         Assert.notNull(this.mqttHandler, "Could not autowire Mqtt handler!");
 
+        this.eventExecutor = (STAEventExecutor) SpringApplicationContext.getBean(STAEventExecutor.class);
+        Assert.notNull(this.eventExecutor, "Could not autowire STAEventExecutor!");
+
+        this.ingestContextCache =
+                (DatastreamIngestContextCache) SpringApplicationContext.getBean(DatastreamIngestContextCache.class);
+        Assert.notNull(this.ingestContextCache, "Could not autowire DatastreamIngestContextCache!");
+
+        this.validationCache =
+                (ResourceValidationCache) SpringApplicationContext.getBean(ResourceValidationCache.class);
+        Assert.notNull(this.validationCache, "Could not autowire ResourceValidationCache!");
+
+        this.datasetIdCache =
+                (DatastreamDatasetCache) SpringApplicationContext.getBean(DatastreamDatasetCache.class);
+        Assert.notNull(this.datasetIdCache, "Could not autowire DatastreamDatasetCache!");
+
         if (this.entityClass.equals(ObservationEntity.class)
                 || this.entityClass.equals(ProcedureEntity.class)
                 || this.entityClass.equals(PhenomenonEntity.class)) {
@@ -250,12 +283,14 @@ public class MessageBusRepository<T, I extends Serializable>
         String entityType = entityTypeToStaType.get(entityInformation.getEntityName());
         boolean intercept =
                 mqttHandler.getWatchedEntityTypes().contains(entityType);
+        invalidateIngestContext(newEntity);
+        validationCache.invalidate(entityType);
 
         if (entityInformation.isNew(newEntity)) {
             em.persist(newEntity);
             em.flush();
             if (intercept) {
-                this.mqttHandler.handleEvent(newEntity, entityType, null, getRelatedCollections(newEntity));
+                this.eventExecutor.submit(newEntity, entityType, null, getRelatedCollections(newEntity));
             }
         } else {
             if (intercept) {
@@ -263,10 +298,10 @@ public class MessageBusRepository<T, I extends Serializable>
                 Map<String, Object> oldProperties = getPropertyMap(oldEntity);
                 S entity = em.merge(newEntity);
                 em.flush();
-                this.mqttHandler.handleEvent(newEntity,
-                                             entityType,
-                                             computeDifference(oldProperties, getPropertyMap(newEntity)),
-                                             getRelatedCollections(entity));
+                this.eventExecutor.submit(newEntity,
+                                          entityType,
+                                          computeDifference(oldProperties, getPropertyMap(newEntity)),
+                                          getRelatedCollections(entity));
                 // Entity was saved multiple times without changes. As reference is the same
                 if (oldEntity == entity) {
                     return entity;
@@ -279,6 +314,120 @@ public class MessageBusRepository<T, I extends Serializable>
         return newEntity;
     }
 
+    /**
+     * Saves all given entities. New entities are persisted with a single flush at the end so that inserts may be
+     * grouped into JDBC batches (see hibernate.jdbc.batch_size). Mqtt subscriptions are notified after the flush.
+     *
+     * @param entities Entities to be saved
+     * @param <S>      raw entity type
+     * @return saved entities
+     */
+    @Transactional
+    @Override
+    public <S extends T> List<S> saveAll(Iterable<S> entities) {
+        Assert.notNull(entities, "Entities must not be null!");
+        String entityType = entityTypeToStaType.get(entityInformation.getEntityName());
+        boolean intercept =
+                mqttHandler.getWatchedEntityTypes().contains(entityType);
+        validationCache.invalidate(entityType);
+
+        List<S> result = new ArrayList<>();
+        List<S> persisted = new ArrayList<>();
+        for (S entity : entities) {
+            if (entityInformation.isNew(entity)) {
+                em.persist(entity);
+                persisted.add(entity);
+                result.add(entity);
+            } else {
+                result.add(save(entity));
+            }
+        }
+        em.flush();
+        if (intercept) {
+            for (S entity : persisted) {
+                this.eventExecutor.submit(entity, entityType, null, getRelatedCollections(entity));
+            }
+        }
+        return result;
+    }
+
+    @Transactional
+    @Override
+    public void delete(T entity) {
+        validationCache.invalidateAll();
+        datasetIdCache.invalidateAll();
+        super.delete(entity);
+    }
+
+    /**
+     * Deletes all entities with given staIdentifier. Implemented here instead of being derived by Spring Data, so
+     * that deletion goes through {@link #delete(Object)}.
+     *
+     * @param identifier staIdentifier of the entity
+     */
+    @Transactional
+    public void deleteByStaIdentifier(String identifier) {
+        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(entityClass);
+        Root<T> root = criteriaQuery.from(entityClass);
+        criteriaQuery.where(criteriaBuilder.equal(root.get(STAIDENTIFIER), identifier));
+        em.createQuery(criteriaQuery).getResultList().forEach(this::delete);
+    }
+
+    /**
+     * Invalidates cached ingest contexts that may depend on the given entity.
+     *
+     * @param entity entity that is saved
+     */
+    private <S extends T> void invalidateIngestContext(S entity) {
+        if (entity instanceof DatastreamEntity) {
+            DatastreamEntity datastream = (DatastreamEntity) entity;
+            ingestContextCache.invalidate(datastream.getStaIdentifier());
+            invalidateDatasetIds(datastream);
+        } else if (entity instanceof ProcedureEntity
+                || entity instanceof PlatformEntity
+                || entity instanceof LocationEntity) {
+            // May be referenced by multiple Datastreams
+            ingestContextCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Invalidates the cached Dataset ids of the given Datastream. Kept if the Datasets are loaded and did not change,
+     * as Datastreams are saved on every Observation insertion to update the phenomenonTime.
+     *
+     * @param datastream Datastream that is saved
+     */
+    private void invalidateDatasetIds(DatastreamEntity datastream) {
+        Set<Long> datasetIds = null;
+        if (datastream.getDatasets() != null && Hibernate.isInitialized(datastream.getDatasets())) {
+            datasetIds = datastream.getDatasets().stream().map(IdEntity::getId).collect(Collectors.toSet());
+        }
+        datasetIdCache.invalidate(datastream.getStaIdentifier(), datasetIds);
+    }
+
+    /**
+     * Gets the staIdentifier of the Datastream the given Observation belongs to. It is cached by Dataset id in the
+     * {@link DatastreamDatasetCache}, so that only the first Observation of each Dataset needs to query it.
+     *
+     * @param observation Observation
+     * @return staIdentifier of the Datastream. Optional.empty() if there is none
+     */
+    private Optional<String> getDatastreamIdentifier(ObservationEntity<?> observation) {
+        if (observation.getDataset() == null || observation.getDataset().getId() == null) {
+            return datastreamRepository.identifier(dQs.withObservationStaIdentifier(observation.getStaIdentifier()),
+                                                   STAIDENTIFIER);
+        }
+        Long datasetId = observation.getDataset().getId();
+        String cached = datasetIdCache.getDatastream(datasetId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long version = datasetIdCache.version();
+        Optional<String> datastreamId = datastreamRepository.identifier(dQs.withDatasetId(datasetId), STAIDENTIFIER);
+        datastreamId.ifPresent(id -> datasetIdCache.putDatastream(datasetId, id, version));
+        return datastreamId;
+    }
+
     private <S extends T> Map<String, Set<String>> getRelatedCollections(S rawObject) {
         Map<String, Set<String>> collections = new HashMap<>();
         if (rawObject instanceof ProcedureEntity) {
@@ -294,12 +443,10 @@ public class MessageBusRepository<T, I extends Serializable>
             } else {
                 ProcedureEntity entity = (ProcedureEntity) rawObject;
                 collections.put(STAEntityDefinition.DATASTREAM,
-                                datastreamRepository
-                                        .findAll(dQs.withSensorStaIdentifier(entity.getStaIdentifier()))
-                                        .stream()
-                                        .map(DatastreamEntity::getStaIdentifier)
-                                        .collect(Collectors.toSet())
-                );
+                                new HashSet<>(datastreamRepository.identifierList(
+                                        dQs.withSensorStaIdentifier(entity.getStaIdentifier()),
+                                        Pageable.unpaged(),
+                                        STAIDENTIFIER)));
             }
         } else if (rawObject instanceof LocationEntity) {
             LocationEntity entity = (LocationEntity) rawObject;
@@ -385,11 +532,9 @@ public class MessageBusRepository<T, I extends Serializable>
                                 Collections.singleton(entity.getDataset().getFeature().getStaIdentifier()));
             }
 
-            Optional<DatastreamEntity> datastreamEntity =
-                    datastreamRepository.findOne(dQs.withObservationStaIdentifier(entity.getStaIdentifier()));
-            if (datastreamEntity.isPresent()) {
-                collections.put(STAEntityDefinition.DATASTREAMS,
-                                Collections.singleton(datastreamEntity.get().getStaIdentifier()));
+            Optional<String> datastreamId = getDatastreamIdentifier(entity);
+            if (datastreamId.isPresent()) {
+                collections.put(STAEntityDefinition.DATASTREAMS, Collections.singleton(datastreamId.get()));
             } else {
                 LOGGER.debug("No Datastream associated with this Entity {}", entity.getStaIdentifier());
             }
@@ -398,14 +543,12 @@ public class MessageBusRepository<T, I extends Serializable>
         } else if (rawObject instanceof PhenomenonEntity) {
             PhenomenonEntity entity = (PhenomenonEntity) rawObject;
 
-            List<DatastreamEntity> observations = datastreamRepository
-                    .findAll(dQs.withObservedPropertyStaIdentifier(entity.getStaIdentifier()));
             collections.put(
                     STAEntityDefinition.DATASTREAMS,
-                    observations
-                            .stream()
-                            .map(DatastreamEntity::getStaIdentifier)
-                            .collect(Collectors.toSet()));
+                    new HashSet<>(datastreamRepository.identifierList(
+                            dQs.withObservedPropertyStaIdentifier(entity.getStaIdentifier()),
+                            Pageable.unpaged(),
+                            STAIDENTIFIER)));
         } else {
             LOGGER.error("Error while computing related Collections: Could not identify Entity Type");
         }
@@ -485,23 +628,41 @@ public class MessageBusRepository<T, I extends Serializable>
         return result;
     }
 
+    /**
+     * Returns the merged EntityGraph for the given FetchGraphs. Graphs only depend on the entity class and the
+     * combination of FetchGraphs, so they are parsed and merged once per combination and shared between sessions.
+     *
+     * @param fetchGraphs FetchGraphs to be merged
+     * @return merged EntityGraph. null if no FetchGraphs are given
+     */
     private EntityGraph<T> createEntityGraph(EntityGraphRepository.FetchGraph... fetchGraphs) {
         if (fetchGraphs != null && fetchGraphs.length != 0) {
-            Set<RootGraph<T>> roots = new HashSet<>();
-            for (EntityGraphRepository.FetchGraph entityGraph : fetchGraphs) {
-                roots.add(GraphParser.parse(entityClass,
-                                            entityGraph.value(),
-                                            (SessionImplementor) em.getDelegate()));
+            EnumSet<EntityGraphRepository.FetchGraph> key = EnumSet.noneOf(EntityGraphRepository.FetchGraph.class);
+            Collections.addAll(key, fetchGraphs);
+            EntityGraph<T> graph = entityGraphCache.get(key);
+            if (graph == null) {
+                graph = mergeEntityGraphs(key);
+                entityGraphCache.putIfAbsent(key, graph);
             }
-            return EntityGraphs.merge(
-                    (EntityManager) em.getDelegate(),
-                    entityClass,
-                    roots.toArray(new RootGraph[] {}));
+            return graph;
         } else {
             return null;
         }
     }
 
+    private EntityGraph<T> mergeEntityGraphs(Set<EntityGraphRepository.FetchGraph> fetchGraphs) {
+        Set<RootGraph<T>> roots = new HashSet<>();
+        for (EntityGraphRepository.FetchGraph entityGraph : fetchGraphs) {
+            roots.add(GraphParser.parse(entityClass,
+                                        entityGraph.value(),
+                                        (SessionImplementor) em.getDelegate()));
+        }
+        return EntityGraphs.merge(
+                (EntityManager) em.getDelegate(),
+                entityClass,
+                roots.toArray(new RootGraph[] {}));
+    }
+
     public Optional<T> findOne(Specification<T> spec, EntityGraphRepository.FetchGraph... fetchGraphs) {
         try {
             return Optional.of(getQuery(spec, Sort.unsorted(), createEntityGraph(fetchGraphs)).getSingleResult());
@@ -524,6 +685,24 @@ public class MessageBusRepository<T, I extends Serializable>
         return getQuery(spec, sort, createEntityGraph(fetchGraphs)).getResultList();
     }
 
+    public Slice<T> findSlice(Specification<T> spec,
+                              Pageable pageable,
+                              EntityGraphRepository.FetchGraph... fetchGraphs) {
+        TypedQuery<T> query = getQuery(spec, pageable, createEntityGraph(fetchGraphs));
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.getResultList());
+        }
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+        List<T> content = query.getResultList();
+        boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    public void clearPersistenceContext() {
+        em.clear();
+    }
+
     protected TypedQuery<T> getQuery(@Nullable Specification<T> spec,
                                      Pageable pageable,
                                      EntityGraph<T> entityGraph) {
@@ -584,6 +763,10 @@ public class MessageBusRepository<T, I extends Serializable>
      */
     @Transactional
     public <S extends T> S intermediateSave(S entity) {
+        validationCache.invalidate(entityTypeToStaType.get(entityInformation.getEntityName()));
+        if (entity instanceof DatastreamEntity) {
+            invalidateDatasetIds((DatastreamEntity) entity);
+        }
         if (entityInformation.isNew(entity)) {
             em.persist(entity);
             return entity;
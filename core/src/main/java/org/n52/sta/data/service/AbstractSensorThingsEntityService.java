@@ -45,6 +45,9 @@ import org.springframework.transaction.annotation.Transactional;
 public interface AbstractSensorThingsEntityService<T extends IdentifierRepository<S, Long>,
         S extends HibernateRelations.HasId,
         E extends S> {
+
+    String SKIPTOKEN_NOT_SUPPORTED = "$skiptoken is not supported for this collection!";
+
     /**
      * Checks if an Entity with given id exists
      *
@@ -78,6 +81,26 @@ public interface AbstractSensorThingsEntityService<T extends IdentifierRepositor
      */
     CollectionWrapper getEntityCollection(QueryOptions queryOptions) throws STACRUDException;
 
+    /**
+     * Requests the EntityCollection continuing after the page described by the given $skiptoken. Only supported by
+     * Services implementing keyset pagination.
+     *
+     * @param queryOptions
+     *            {@link QueryOptions}
+     * @param skipToken
+     *            continuation token of the previous page. May be null
+     * @return the EntityCollection
+     * @throws STACRUDException
+     *             if the queryOptions or the skipToken are invalid
+     */
+    default CollectionWrapper getEntityCollection(QueryOptions queryOptions, String skipToken)
+            throws STACRUDException {
+        if (skipToken != null) {
+            throw new STACRUDException(SKIPTOKEN_NOT_SUPPORTED);
+        }
+        return getEntityCollection(queryOptions);
+    }
+
     /**
      * Requests the Entity with given ownId that is related to a single Entity with given relatedId and
      * relatedType
@@ -113,6 +136,70 @@ public interface AbstractSensorThingsEntityService<T extends IdentifierRepositor
     CollectionWrapper getEntityCollectionByRelatedEntity(String relatedId, String relatedType,
             QueryOptions queryOptions) throws STACRUDException;
 
+    /**
+     * Requests the EntityCollection that is related to a single Entity with the given ID and type, continuing after
+     * the page described by the given $skiptoken. Only supported by Services implementing keyset pagination.
+     *
+     * @param relatedId
+     *            the ID of the Entity the EntityCollection is related to
+     * @param relatedType
+     *            EntityType of the related Entity
+     * @param queryOptions
+     *            {@link QueryOptions}
+     * @param skipToken
+     *            continuation token of the previous page. May be null
+     * @return List of Entities that match
+     * @throws STACRUDException
+     *             if the queryOptions or the skipToken are invalid
+     */
+    default CollectionWrapper getEntityCollectionByRelatedEntity(String relatedId, String relatedType,
+            QueryOptions queryOptions, String skipToken) throws STACRUDException {
+        if (skipToken != null) {
+            throw new STACRUDException(SKIPTOKEN_NOT_SUPPORTED);
+        }
+        return getEntityCollectionByRelatedEntity(relatedId, relatedType, queryOptions);
+    }
+
+    /**
+     * Requests the EntityCollection with entities being loaded lazily while the collection is serialized. Must be
+     * called and serialized inside a single transaction. Services not supporting this return the materialized
+     * collection.
+     *
+     * @param queryOptions
+     *            {@link QueryOptions}
+     * @param skipToken
+     *            continuation token of the previous page. May be null
+     * @return the EntityCollection
+     * @throws STACRUDException
+     *             if the queryOptions or the skipToken are invalid
+     */
+    default CollectionWrapper getEntityCollectionStream(QueryOptions queryOptions, String skipToken)
+            throws STACRUDException {
+        return getEntityCollection(queryOptions, skipToken);
+    }
+
+    /**
+     * Requests the EntityCollection that is related to a single Entity with the given ID and type with entities
+     * being loaded lazily while the collection is serialized. Must be called and serialized inside a single
+     * transaction. Services not supporting this return the materialized collection.
+     *
+     * @param relatedId
+     *            the ID of the Entity the EntityCollection is related to
+     * @param relatedType
+     *            EntityType of the related Entity
+     * @param queryOptions
+     *            {@link QueryOptions}
+     * @param skipToken
+     *            continuation token of the previous page. May be null
+     * @return List of Entities that match
+     * @throws STACRUDException
+     *             if the queryOptions or the skipToken are invalid
+     */
+    default CollectionWrapper getEntityCollectionByRelatedEntityStream(String relatedId, String relatedType,
+            QueryOptions queryOptions, String skipToken) throws STACRUDException {
+        return getEntityCollectionByRelatedEntity(relatedId, relatedType, queryOptions, skipToken);
+    }
+
     /**
      * Gets the Id on an Entity that is related to a single Entity with given relatedId and relatedType. May
      * be overwritten by classes that use a different field for storing the identifier.
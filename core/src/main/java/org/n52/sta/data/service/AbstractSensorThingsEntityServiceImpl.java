@@ -55,6 +55,7 @@ import org.n52.shetland.ogc.sta.exception.STACRUDException;
 import org.n52.shetland.ogc.sta.exception.STAInvalidQueryException;
 import org.n52.sta.data.MutexFactory;
 import org.n52.sta.data.OffsetLimitBasedPageRequest;
+import org.n52.sta.data.PartitionedRelationQuery;
 import org.n52.sta.data.repositories.EntityGraphRepository;
 import org.n52.sta.data.repositories.StaIdentifierRepository;
 import org.n52.sta.data.service.EntityServiceRepository.EntityTypes;
@@ -66,16 +67,27 @@ import org.n52.svalbard.odata.core.expr.Expr;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpMethod;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * Interface for requesting Sensor Things entities
@@ -101,6 +113,33 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
     @Autowired
     private MutexFactory lock;
 
+    @Autowired
+    private PartitionedRelationQuery relationQuery;
+
+    /**
+     * Whether @iot.count is calculated for every collection request. If false, count is only calculated if
+     * explicitly requested via $count=true.
+     */
+    @Value("${server.feature.implicitCount:true}")
+    private boolean implicitCount;
+
+    /**
+     * Time in seconds the count of an unfiltered root collection is cached. 0 disables caching.
+     */
+    @Value("${server.feature.countCacheTtl:0}")
+    private long countCacheTtl;
+
+    /**
+     * Maximum number of entities returned per page. Larger $top values are reduced to this value. 0 disables the
+     * limit.
+     */
+    @Value("${server.feature.maxTop:0}")
+    private int maxTop;
+
+    private volatile CachedCount cachedCount;
+
+    private volatile HibernateSpatialCriteriaBuilderImpl spatialCriteriaBuilder;
+
     private final Class<S> entityClass;
     private final EntityGraphRepository.FetchGraph[] defaultFetchGraphs;
 
@@ -165,36 +204,70 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
 
     @Override public CollectionWrapper getEntityCollection(QueryOptions queryOptions) throws STACRUDException {
         try {
-            Page<S> pages = getRepository().findAll(getFilterPredicate(entityClass, queryOptions),
-                                                    createPageableRequest(queryOptions),
-                                                    defaultFetchGraphs);
-            return getCollectionWrapper(queryOptions, pages);
+            Specification<S> spec = getFilterPredicate(entityClass, queryOptions);
+            Slice<S> slice = getRepository().findSlice(spec,
+                                                       createPageableRequest(queryOptions),
+                                                       defaultFetchGraphs);
+            return getCollectionWrapper(queryOptions, slice, getTotalCount(queryOptions, spec, true));
         } catch (RuntimeException e) {
             throw new STACRUDException(e.getMessage(), e);
         }
     }
 
-    protected CollectionWrapper getCollectionWrapper(QueryOptions queryOptions, Page<S> pages) {
+    protected CollectionWrapper getCollectionWrapper(QueryOptions queryOptions, Slice<S> slice, long count) {
         if (queryOptions.hasExpandFilter()) {
-            Page expanded = pages.map(e -> {
-                try {
-                    return fetchExpandEntities(e, queryOptions.getExpandFilter());
-                } catch (STACRUDException | STAInvalidQueryException ex) {
-                    throw new RuntimeException(ex);
-                }
-            });
-            return new CollectionWrapper(expanded.getTotalElements(),
-                                         expanded.map(e -> createWrapper(e, queryOptions))
-                                                 .getContent(),
-                                         expanded.hasNext());
+            List<E> expanded;
+            try {
+                expanded = fetchExpandEntities(slice.getContent(), queryOptions.getExpandFilter());
+            } catch (STACRUDException | STAInvalidQueryException ex) {
+                throw new RuntimeException(ex);
+            }
+            return new CollectionWrapper(count,
+                                         expanded.stream()
+                                                 .map(e -> createWrapper(e, queryOptions))
+                                                 .collect(Collectors.toList()),
+                                         slice.hasNext());
         } else {
-            return new CollectionWrapper(pages.getTotalElements(),
-                                         pages.map(e -> createWrapper(e, queryOptions))
+            return new CollectionWrapper(count,
+                                         slice.map(e -> createWrapper(e, queryOptions))
                                               .getContent(),
-                                         pages.hasNext());
+                                         slice.hasNext());
         }
     }
 
+    /**
+     * Calculates the total number of entities matching the given specification if it is needed for the response.
+     * The count of unfiltered root collections is cached if server.feature.countCacheTtl is set.
+     *
+     * @param queryOptions   query options of the request
+     * @param spec           specification of the request
+     * @param rootCollection whether the request is on a root collection (e.g. /Things)
+     * @return number of matching entities. -1 if count was not requested
+     */
+    protected long getTotalCount(QueryOptions queryOptions, Specification<S> spec, boolean rootCollection) {
+        if (!isCountRequested(queryOptions)) {
+            return -1;
+        }
+        if (rootCollection && countCacheTtl > 0 && !queryOptions.hasFilterFilter()) {
+            long now = System.currentTimeMillis();
+            CachedCount cached = cachedCount;
+            if (cached != null && now - cached.timestamp < countCacheTtl * 1000) {
+                return cached.count;
+            }
+            long count = getRepository().count(spec);
+            cachedCount = new CachedCount(count, now);
+            return count;
+        }
+        return getRepository().count(spec);
+    }
+
+    private boolean isCountRequested(QueryOptions queryOptions) {
+        if (queryOptions.hasCountFilter()) {
+            return Boolean.TRUE.equals(queryOptions.getCountFilter().getValue());
+        }
+        return implicitCount;
+    }
+
     @Override public ElementWithQueryOptions<?> getEntityByRelatedEntity(String relatedId,
                                                                          String relatedType,
                                                                          String ownId,
@@ -237,8 +310,17 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
                                                                           String relatedType,
                                                                           QueryOptions queryOptions)
             throws STACRUDException {
-        return getCollectionWrapper(queryOptions,
-                                    getEntityCollectionByRelatedEntityRaw(relatedId, relatedType, queryOptions));
+        try {
+            Specification<S> spec = byRelatedEntityFilter(relatedId, relatedType, null)
+                    .and(getFilterPredicate(entityClass, queryOptions));
+            return getCollectionWrapper(queryOptions,
+                                        getRepository().findSlice(spec,
+                                                                  createPageableRequest(queryOptions),
+                                                                  defaultFetchGraphs),
+                                        getTotalCount(queryOptions, spec, false));
+        } catch (RuntimeException e) {
+            throw new STACRUDException(e.getMessage(), e);
+        }
     }
 
     /**
@@ -248,35 +330,113 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
      * @param relatedId    the ID of the Entity the EntityCollection is related to
      * @param relatedType  EntityType of the related Entity
      * @param queryOptions {@link QueryOptions}
-     * @return List of Entities that match
+     * @return Slice of Entities that match
      * @throws STACRUDException if the queryOptions are invalid
      */
-    protected Page getEntityCollectionByRelatedEntityRaw(String relatedId,
-                                                         String relatedType,
-                                                         QueryOptions queryOptions)
+    protected Slice getEntityCollectionByRelatedEntityRaw(String relatedId,
+                                                          String relatedType,
+                                                          QueryOptions queryOptions)
             throws STACRUDException {
         try {
-            Page<S> pages = getRepository()
-                    .findAll(byRelatedEntityFilter(relatedId, relatedType, null)
-                                     .and(getFilterPredicate(entityClass, queryOptions)),
-                             createPageableRequest(queryOptions),
-                             defaultFetchGraphs);
+            Slice<S> pages = getRepository()
+                    .findSlice(byRelatedEntityFilter(relatedId, relatedType, null)
+                                       .and(getFilterPredicate(entityClass, queryOptions)),
+                               createPageableRequest(queryOptions),
+                               defaultFetchGraphs);
             if (queryOptions.hasExpandFilter()) {
-                return pages.map(e -> {
-                    try {
-                        return fetchExpandEntities(e, queryOptions.getExpandFilter());
-                    } catch (STACRUDException | STAInvalidQueryException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                });
+                return new SliceImpl<>(fetchExpandEntities(pages.getContent(), queryOptions.getExpandFilter()),
+                                       pages.getPageable(),
+                                       pages.hasNext());
             } else {
                 return pages;
             }
-        } catch (RuntimeException e) {
+        } catch (RuntimeException | STAInvalidQueryException e) {
+            throw new STACRUDException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Requests the Entities with the given database ids using a single query. Expands all Entities together if
+     * requested.
+     *
+     * @param ids          database ids of the Entities
+     * @param queryOptions {@link QueryOptions}
+     * @return Entities mapped by their database id
+     * @throws STACRUDException if the queryOptions are invalid
+     */
+    public Map<Long, S> getEntitiesByIdRaw(Collection<Long> ids, QueryOptions queryOptions)
+            throws STACRUDException {
+        try {
+            Specification<S> byIds = (root, query, builder) -> root.get(DescribableEntity.PROPERTY_ID).in(ids);
+            List<? extends S> entities = getRepository().findAll(byIds, defaultFetchGraphs);
+            if (queryOptions.hasExpandFilter()) {
+                entities = fetchExpandEntities(new ArrayList<>(entities), queryOptions.getExpandFilter());
+            }
+            Map<Long, S> result = new HashMap<>();
+            for (S entity : entities) {
+                result.put(entity.getId(), entity);
+            }
+            return result;
+        } catch (RuntimeException | STAInvalidQueryException e) {
             throw new STACRUDException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Requests the Entities related to multiple parent Entities using a single windowed query instead of one query
+     * per parent. $skip and $top are applied per parent. Only possible if the queryOptions contain neither $filter
+     * nor $orderby, as these can only be evaluated via the Criteria API.
+     *
+     * @param parentClass        class of the parent Entities
+     * @param collectionProperty collection of the parent mapped via a join table
+     * @param targetProperty     property of this Entity referenced by the join table
+     * @param parentIds          database ids of the parent Entities
+     * @param queryOptions       {@link QueryOptions}
+     * @return Entities ordered by staIdentifier mapped by the database id of their parent
+     * @throws STACRUDException if the queryOptions are invalid
+     * @see #isPartitionable(QueryOptions)
+     */
+    public Map<Long, List<S>> getEntitiesByParentIdsRaw(Class<?> parentClass,
+                                                         String collectionProperty,
+                                                         String targetProperty,
+                                                         Collection<Long> parentIds,
+                                                         QueryOptions queryOptions)
+            throws STACRUDException {
+        int skip = queryOptions.hasSkipFilter() ? queryOptions.getSkipFilter().getValue().intValue() : 0;
+        Map<Long, List<Long>> ids = relationQuery.findIdsByParent(parentClass,
+                                                                  collectionProperty,
+                                                                  entityClass,
+                                                                  targetProperty,
+                                                                  parentIds,
+                                                                  skip,
+                                                                  getTop(queryOptions));
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, S> entities = getEntitiesByIdRaw(ids.values()
+                                                      .stream()
+                                                      .flatMap(List::stream)
+                                                      .collect(Collectors.toSet()),
+                                                   queryOptions);
+        Map<Long, List<S>> result = new HashMap<>();
+        ids.forEach((parent, related) -> result.put(parent, related.stream()
+                                                                   .map(entities::get)
+                                                                   .filter(Objects::nonNull)
+                                                                   .collect(Collectors.toList())));
+        return result;
+    }
+
+    /**
+     * Checks whether related Entities requested with the given queryOptions can be loaded for multiple parents at
+     * once via {@link #getEntitiesByParentIdsRaw(Class, String, String, Collection, QueryOptions)}.
+     *
+     * @param queryOptions {@link QueryOptions} of the expanded collection
+     * @return true if neither $filter nor $orderby are given
+     */
+    protected static boolean isPartitionable(QueryOptions queryOptions) {
+        return !queryOptions.hasFilterFilter() && !queryOptions.hasOrderByFilter();
+    }
+
     @Override public String getEntityIdByRelatedEntity(String relatedId, String relatedType) {
         Optional<String> entity = getRepository().identifier(
                 this.byRelatedEntityFilter(relatedId, relatedType, null),
@@ -293,6 +453,25 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
     protected abstract E fetchExpandEntities(S entity, ExpandFilter expandOption)
             throws STACRUDException, STAInvalidQueryException;
 
+    /**
+     * Expands all given Entities. Services override this to load navigation properties of all Entities together
+     * instead of issuing queries per Entity.
+     *
+     * @param entities     entities to be expanded
+     * @param expandOption expand option
+     * @return expanded entities in the same order
+     * @throws STACRUDException         if an error occurred
+     * @throws STAInvalidQueryException if the expandOption is invalid
+     */
+    protected List<E> fetchExpandEntities(List<S> entities, ExpandFilter expandOption)
+            throws STACRUDException, STAInvalidQueryException {
+        List<E> expanded = new ArrayList<>(entities.size());
+        for (S entity : entities) {
+            expanded.add(fetchExpandEntities(entity, expandOption));
+        }
+        return expanded;
+    }
+
     /**
      * Wraps the raw Entity into a Wrapper object to associate with QueryOptions used for this request
      *
@@ -413,9 +592,18 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
         } else {
             sort = Sort.by(Sort.Direction.ASC, STAIDENTIFIER);
         }
-        return new OffsetLimitBasedPageRequest((int) offset,
-                                               queryOptions.getTopFilter().getValue().intValue(),
-                                               sort);
+        return new OffsetLimitBasedPageRequest((int) offset, getTop(queryOptions), sort);
+    }
+
+    /**
+     * Returns the page size of the request, i.e. $top limited by the configured maximum.
+     *
+     * @param queryOptions {@link QueryOptions} of the request
+     * @return page size
+     */
+    int getTop(QueryOptions queryOptions) {
+        long top = queryOptions.getTopFilter().getValue();
+        return (int) (maxTop > 0 ? Math.min(top, maxTop) : Math.min(top, Integer.MAX_VALUE));
     }
 
     /**
@@ -449,9 +637,9 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
                 FilterFilter filterOption = queryOptions.getFilterFilter();
                 Expr filter = (Expr) filterOption.getFilter();
                 try {
-                    HibernateSpatialCriteriaBuilderImpl staBuilder =
-                            new HibernateSpatialCriteriaBuilderImpl((CriteriaBuilderImpl) builder);
-                    return (Predicate) filter.accept(new FilterExprVisitor<S>(root, query, staBuilder));
+                    return (Predicate) filter.accept(new FilterExprVisitor<S>(root,
+                                                                              query,
+                                                                              getSpatialCriteriaBuilder(builder)));
                 } catch (STAInvalidQueryException e) {
                     throw new RuntimeException(e);
                 }
@@ -459,6 +647,24 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
         };
     }
 
+    /**
+     * Gets the spatial extension of the given CriteriaBuilder. The extension is stateless apart from the
+     * EntityManagerFactory, so it is only created once instead of for every query.
+     *
+     * @param builder CriteriaBuilder of the current query
+     * @return CriteriaBuilder supporting spatial functions
+     */
+    private HibernateSpatialCriteriaBuilderImpl getSpatialCriteriaBuilder(CriteriaBuilder builder) {
+        HibernateSpatialCriteriaBuilderImpl staBuilder = spatialCriteriaBuilder;
+        CriteriaBuilderImpl hibernateBuilder = (CriteriaBuilderImpl) builder;
+        if (staBuilder == null
+                || staBuilder.getEntityManagerFactory() != hibernateBuilder.getEntityManagerFactory()) {
+            staBuilder = new HibernateSpatialCriteriaBuilderImpl(hibernateBuilder);
+            spatialCriteriaBuilder = staBuilder;
+        }
+        return staBuilder;
+    }
+
     /**
      * Translate STA property name to Database property name
      *
@@ -560,4 +766,15 @@ public abstract class AbstractSensorThingsEntityServiceImpl<T extends StaIdentif
                 getEntityService(EntityTypes.Observation);
 
     }
+
+    private static final class CachedCount {
+
+        private final long count;
+        private final long timestamp;
+
+        CachedCount(long count, long timestamp) {
+            this.count = count;
+            this.timestamp = timestamp;
+        }
+    }
 }
@@ -32,6 +32,9 @@ package org.n52.sta.data.service;
 import org.n52.janmayen.http.HTTPStatus;
 import org.n52.series.db.beans.DatasetEntity;
 import org.n52.series.db.beans.FormatEntity;
+import org.n52.series.db.beans.PhenomenonEntity;
+import org.n52.series.db.beans.PlatformEntity;
+import org.n52.series.db.beans.ProcedureEntity;
 import org.n52.series.db.beans.UnitEntity;
 import org.n52.series.db.beans.sta.AbstractObservationEntity;
 import org.n52.series.db.beans.sta.DatastreamEntity;
@@ -55,14 +58,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -110,31 +116,59 @@ public class DatastreamService
 
     @Override protected DatastreamEntity fetchExpandEntities(DatastreamEntity entity, ExpandFilter expandOption)
             throws STACRUDException, STAInvalidQueryException {
+        return fetchExpandEntities(Collections.singletonList(entity), expandOption).get(0);
+    }
+
+    @Override protected List<DatastreamEntity> fetchExpandEntities(List<DatastreamEntity> entities,
+                                                                   ExpandFilter expandOption)
+            throws STACRUDException, STAInvalidQueryException {
         for (ExpandItem expandItem : expandOption.getItems()) {
             String expandProperty = expandItem.getPath();
             if (DatastreamEntityDefinition.NAVIGATION_PROPERTIES.contains(expandProperty)) {
                 switch (expandProperty) {
                 case STAEntityDefinition.SENSOR:
-                    entity.setProcedure(getSensorService()
-                            .getEntityByIdRaw(entity.getProcedure().getId(), expandItem.getQueryOptions())
-                    );
+                    Map<Long, ProcedureEntity> sensors = getSensorService().getEntitiesByIdRaw(
+                            entities.stream().map(e -> e.getProcedure().getId()).collect(Collectors.toSet()),
+                            expandItem.getQueryOptions());
+                    entities.forEach(e -> e.setProcedure(sensors.get(e.getProcedure().getId())));
                     break;
                 case STAEntityDefinition.THING:
-                    entity.setThing(getThingService()
-                            .getEntityByIdRaw(entity.getThing().getId(), expandItem.getQueryOptions())
-                    );
+                    Map<Long, PlatformEntity> things = getThingService().getEntitiesByIdRaw(
+                            entities.stream().map(e -> e.getThing().getId()).collect(Collectors.toSet()),
+                            expandItem.getQueryOptions());
+                    entities.forEach(e -> e.setThing(things.get(e.getThing().getId())));
                     break;
                 case STAEntityDefinition.OBSERVED_PROPERTY:
-                    entity.setObservableProperty(getObservedPropertyService()
-                            .getEntityByIdRaw(entity.getObservableProperty().getId(), expandItem.getQueryOptions())
-                    );
+                    Map<Long, PhenomenonEntity> observedProperties = getObservedPropertyService().getEntitiesByIdRaw(
+                            entities.stream().map(e -> e.getObservableProperty().getId()).collect(Collectors.toSet()),
+                            expandItem.getQueryOptions());
+                    entities.forEach(e -> e.setObservableProperty(
+                            observedProperties.get(e.getObservableProperty().getId())));
                     break;
                 case STAEntityDefinition.OBSERVATIONS:
-                    Page<ObservationEntity<?>> observations = getObservationService()
-                            .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
-                                                                   STAEntityDefinition.DATASTREAMS,
-                                                                   expandItem.getQueryOptions());
-                    entity.setObservations(observations.get().collect(Collectors.toSet()));
+                    if (isPartitionable(expandItem.getQueryOptions())) {
+                        // $top and $skip apply per Datastream, so all Observations are loaded with a windowed query
+                        Map<Long, List<AbstractObservationEntity<?>>> observations = getObservationService()
+                                .getEntitiesByParentIdsRaw(DatastreamEntity.class,
+                                                           DatastreamEntity.PROPERTY_DATASETS,
+                                                           ObservationEntity.PROPERTY_DATASET,
+                                                           entities.stream()
+                                                                   .map(DatastreamEntity::getId)
+                                                                   .collect(Collectors.toSet()),
+                                                           expandItem.getQueryOptions());
+                        entities.forEach(e -> e.setObservations(new LinkedHashSet<>(
+                                observations.getOrDefault(e.getId(), Collections.emptyList()))));
+                    } else {
+                        // Nested $filter and $orderby are evaluated via FilterExprVisitor, so each Datastream is
+                        // queried separately
+                        for (DatastreamEntity entity : entities) {
+                            Slice<ObservationEntity<?>> observations = getObservationService()
+                                    .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
+                                                                           STAEntityDefinition.DATASTREAMS,
+                                                                           expandItem.getQueryOptions());
+                            entity.setObservations(observations.get().collect(Collectors.toSet()));
+                        }
+                    }
                     break;
                 default:
                     logger.error("Trying to expand unrelated Entity!");
@@ -145,7 +179,7 @@ public class DatastreamService
                                                            " on Entity of type 'Datastream'");
             }
         }
-        return entity;
+        return entities;
     }
 
     @Override
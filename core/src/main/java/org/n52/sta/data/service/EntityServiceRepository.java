@@ -31,6 +31,8 @@ package org.n52.sta.data.service;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.n52.sta.data.ResourceValidationCache;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
@@ -43,6 +45,9 @@ public class EntityServiceRepository {
 
     private Map<EntityTypes, AbstractSensorThingsEntityService<?, ?, ?>> entityServices = new LinkedHashMap<>();
 
+    @Autowired
+    private ResourceValidationCache validationCache;
+
     public EntityServiceRepository() {
 
     }
@@ -73,6 +78,15 @@ public class EntityServiceRepository {
         return entityServices.get(entityTypeName);
     }
 
+    /**
+     * Provides the cache for results of the semantic validation of request URLs
+     *
+     * @return the cache. null if not available
+     */
+    public ResourceValidationCache getValidationCache() {
+        return validationCache;
+    }
+
     public enum EntityTypes {
         Thing, Location, HistoricalLocation, Sensor, Datastream, Observation, ObservedProperty, FeatureOfInterest,
         Things, Locations, HistoricalLocations, Sensors, Datastreams, Observations, ObservedProperties,
@@ -30,6 +30,7 @@
 package org.n52.sta.data.service;
 
 import org.n52.janmayen.http.HTTPStatus;
+import org.n52.series.db.beans.DescribableEntity;
 import org.n52.series.db.beans.PlatformEntity;
 import org.n52.series.db.beans.sta.HistoricalLocationEntity;
 import org.n52.series.db.beans.sta.LocationEntity;
@@ -48,13 +49,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.DependsOn;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -91,20 +95,48 @@ public class HistoricalLocationService
     protected HistoricalLocationEntity fetchExpandEntities(HistoricalLocationEntity entity,
                                                            ExpandFilter expandOption)
             throws STACRUDException, STAInvalidQueryException {
+        return fetchExpandEntities(Collections.singletonList(entity), expandOption).get(0);
+    }
+
+    @Override
+    protected List<HistoricalLocationEntity> fetchExpandEntities(List<HistoricalLocationEntity> entities,
+                                                                 ExpandFilter expandOption)
+            throws STACRUDException, STAInvalidQueryException {
         for (ExpandItem expandItem : expandOption.getItems()) {
             String expandProperty = expandItem.getPath();
             if (HistoricalLocationEntityDefinition.NAVIGATION_PROPERTIES.contains(expandProperty)) {
                 switch (expandProperty) {
                 case STAEntityDefinition.LOCATIONS:
-                    Page<LocationEntity> locations = getLocationService()
-                            .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
-                                                                   STAEntityDefinition.HISTORICAL_LOCATIONS,
-                                                                   expandItem.getQueryOptions());
-                    entity.setLocations(locations.get().collect(Collectors.toSet()));
+                    if (isPartitionable(expandItem.getQueryOptions())) {
+                        // $top and $skip apply per HistoricalLocation, so all Locations are loaded with a windowed
+                        // query
+                        Map<Long, List<LocationEntity>> locations = getLocationService()
+                                .getEntitiesByParentIdsRaw(HistoricalLocationEntity.class,
+                                                           HistoricalLocationEntity.PROPERTY_LOCATIONS,
+                                                           DescribableEntity.PROPERTY_ID,
+                                                           entities.stream()
+                                                                   .map(HistoricalLocationEntity::getId)
+                                                                   .collect(Collectors.toSet()),
+                                                           expandItem.getQueryOptions());
+                        entities.forEach(e -> e.setLocations(new LinkedHashSet<>(
+                                locations.getOrDefault(e.getId(), Collections.emptyList()))));
+                    } else {
+                        // Nested $filter and $orderby are evaluated via FilterExprVisitor, so each HistoricalLocation
+                        // is queried separately
+                        for (HistoricalLocationEntity entity : entities) {
+                            Slice<LocationEntity> locations = getLocationService()
+                                    .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
+                                                                           STAEntityDefinition.HISTORICAL_LOCATIONS,
+                                                                           expandItem.getQueryOptions());
+                            entity.setLocations(locations.get().collect(Collectors.toSet()));
+                        }
+                    }
                     break;
                 case STAEntityDefinition.THING:
-                    entity.setThing(getThingService()
-                                            .getEntityByIdRaw(entity.getThing().getId(), expandItem.getQueryOptions()));
+                    Map<Long, PlatformEntity> things = getThingService().getEntitiesByIdRaw(
+                            entities.stream().map(e -> e.getThing().getId()).collect(Collectors.toSet()),
+                            expandItem.getQueryOptions());
+                    entities.forEach(e -> e.setThing(things.get(e.getThing().getId())));
                     break;
                 default:
                     throw new RuntimeException("This can never happen!");
@@ -114,7 +146,7 @@ public class HistoricalLocationService
                                                            " on Entity of type 'HistoricalLocation'");
             }
         }
-        return entity;
+        return entities;
     }
 
     @Override
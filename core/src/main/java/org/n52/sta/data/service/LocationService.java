@@ -52,7 +52,7 @@ import org.springframework.context.annotation.DependsOn;
 import org.springframework.data.domain.Example;
 import org.springframework.data.domain.ExampleMatcher;
 import org.springframework.data.domain.ExampleMatcher.GenericPropertyMatchers;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
@@ -108,14 +108,14 @@ public class LocationService
             if (LocationEntityDefinition.NAVIGATION_PROPERTIES.contains(expandProperty)) {
                 switch (expandProperty) {
                 case STAEntityDefinition.HISTORICAL_LOCATIONS:
-                    Page<HistoricalLocationEntity> hLocs = getHistoricalLocationService()
+                    Slice<HistoricalLocationEntity> hLocs = getHistoricalLocationService()
                             .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
                                                                    STAEntityDefinition.LOCATIONS,
                                                                    expandItem.getQueryOptions());
                     entity.setHistoricalLocations(hLocs.get().collect(Collectors.toSet()));
                     break;
                 case STAEntityDefinition.THINGS:
-                    Page<PlatformEntity> things =
+                    Slice<PlatformEntity> things =
                             getThingService().getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
                                                                                     STAEntityDefinition.LOCATIONS,
                                                                                     expandItem.getQueryOptions());
@@ -51,12 +51,17 @@ import org.n52.series.db.beans.sta.QuantityObservationEntity;
 import org.n52.series.db.beans.sta.TextObservationEntity;
 import org.n52.shetland.filter.ExpandFilter;
 import org.n52.shetland.filter.ExpandItem;
+import org.n52.shetland.filter.OrderProperty;
 import org.n52.shetland.oasis.odata.query.option.QueryOptions;
+import org.n52.shetland.ogc.filter.FilterConstants;
 import org.n52.shetland.ogc.om.OmConstants;
 import org.n52.shetland.ogc.sta.exception.STACRUDException;
 import org.n52.shetland.ogc.sta.exception.STAInvalidQueryException;
 import org.n52.shetland.ogc.sta.model.ObservationEntityDefinition;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
+import org.n52.sta.data.ContinuationToken;
+import org.n52.sta.data.DatastreamDatasetCache;
+import org.n52.sta.data.DatastreamIngestContextCache;
 import org.n52.sta.data.OffsetLimitBasedPageRequest;
 import org.n52.sta.data.query.DatasetQuerySpecifications;
 import org.n52.sta.data.query.DatastreamQuerySpecifications;
@@ -71,26 +76,39 @@ import org.n52.sta.data.repositories.OfferingRepository;
 import org.n52.sta.data.repositories.ParameterRepository;
 import org.n52.sta.data.service.EntityServiceRepository.EntityTypes;
 import org.n52.sta.data.service.util.CollectionWrapper;
+import org.n52.sta.serdes.util.ElementWithQueryOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.DependsOn;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
@@ -109,6 +127,8 @@ public class ObservationService extends
     private static final DatastreamQuerySpecifications dsQS = new DatastreamQuerySpecifications();
 
     private static final String STA = "STA";
+    private static final String PHENOMENON_TIME = "phenomenonTime";
+    private static final int STREAMING_CHUNK_SIZE = 100;
 
     private final boolean isMobileFeatureEnabled;
     private final DataRepository<DataEntity<?>> dataRepository;
@@ -117,6 +137,9 @@ public class ObservationService extends
     private final DatastreamRepository datastreamRepository;
     private final DatasetRepository datasetRepository;
     private final ParameterRepository parameterRepository;
+    private final DatastreamIngestContextCache ingestContextCache;
+    private final DatastreamDatasetCache datasetIdCache;
+    private final boolean keysetPagination;
     private final Pattern isMobilePattern = Pattern.compile(".*\"isMobile\":true.*");
 
     @Autowired
@@ -127,7 +150,10 @@ public class ObservationService extends
                               DatastreamRepository datastreamRepository,
                               DatasetRepository datasetRepository,
                               ParameterRepository parameterRepository,
-                              @Value("${server.feature.isMobile:false}") boolean isMobileFeatureEnabled) {
+                              DatastreamIngestContextCache ingestContextCache,
+                              DatastreamDatasetCache datasetIdCache,
+                              @Value("${server.feature.isMobile:false}") boolean isMobileFeatureEnabled,
+                              @Value("${server.feature.keysetPagination:false}") boolean keysetPagination) {
         super(repository,
               ObservationEntity.class,
               EntityGraphRepository.FetchGraph.FETCHGRAPH_PARAMETERS,
@@ -138,7 +164,10 @@ public class ObservationService extends
         this.datastreamRepository = datastreamRepository;
         this.datasetRepository = datasetRepository;
         this.parameterRepository = parameterRepository;
+        this.ingestContextCache = ingestContextCache;
+        this.datasetIdCache = datasetIdCache;
         this.isMobileFeatureEnabled = isMobileFeatureEnabled;
+        this.keysetPagination = keysetPagination;
     }
 
     @Override
@@ -148,18 +177,15 @@ public class ObservationService extends
 
     @Override
     public CollectionWrapper getEntityCollection(QueryOptions queryOptions) throws STACRUDException {
+        return getEntityCollection(queryOptions, null);
+    }
+
+    @Override
+    public CollectionWrapper getEntityCollection(QueryOptions queryOptions, String skipToken)
+            throws STACRUDException {
         try {
-            OffsetLimitBasedPageRequest pageableRequest = createPageableRequest(queryOptions);
             Specification<ObservationEntity<?>> spec = getFilterPredicate(ObservationEntity.class, queryOptions);
-            List<String> identifierList = getRepository()
-                    .identifierList(spec,
-                                    pageableRequest,
-                                    STAIDENTIFIER);
-            if (identifierList.isEmpty()) {
-                return new CollectionWrapper(0, Collections.emptyList(), false);
-            } else {
-                return getEntityCollectionWrapperByIdentifierList(identifierList, pageableRequest, queryOptions, spec);
-            }
+            return getCollectionWrapper(spec, queryOptions, skipToken, true);
         } catch (RuntimeException e) {
             throw new STACRUDException(e.getMessage(), e);
         }
@@ -169,84 +195,252 @@ public class ObservationService extends
                                                                           String relatedType,
                                                                           QueryOptions queryOptions)
             throws STACRUDException {
+        return getEntityCollectionByRelatedEntity(relatedId, relatedType, queryOptions, null);
+    }
 
+    @Override public CollectionWrapper getEntityCollectionByRelatedEntity(String relatedId,
+                                                                          String relatedType,
+                                                                          QueryOptions queryOptions,
+                                                                          String skipToken)
+            throws STACRUDException {
         try {
-            OffsetLimitBasedPageRequest pageableRequest = createPageableRequest(queryOptions);
             Specification<ObservationEntity<?>> spec =
                     byRelatedEntityFilter(relatedId, relatedType, null)
                             .and(getFilterPredicate(ObservationEntity.class, queryOptions));
+            return getCollectionWrapper(spec, queryOptions, skipToken, false);
+        } catch (RuntimeException e) {
+            throw new STACRUDException(e.getMessage(), e);
+        }
+    }
 
-            List<String> identifierList = getRepository().identifierList(spec,
-                                                                         createPageableRequest(queryOptions),
-                                                                         STAIDENTIFIER);
-            if (identifierList.isEmpty()) {
-                return new CollectionWrapper(0, Collections.emptyList(), false);
-            } else {
-                return getEntityCollectionWrapperByIdentifierList(identifierList, pageableRequest, queryOptions, spec);
-            }
+    @Override
+    public CollectionWrapper getEntityCollectionStream(QueryOptions queryOptions, String skipToken)
+            throws STACRUDException {
+        if (!isStreamable(queryOptions, skipToken)) {
+            return getEntityCollection(queryOptions, skipToken);
+        }
+        try {
+            Specification<ObservationEntity<?>> spec = getFilterPredicate(ObservationEntity.class, queryOptions);
+            return getStreamingCollectionWrapper(spec, queryOptions, true);
         } catch (RuntimeException e) {
             throw new STACRUDException(e.getMessage(), e);
         }
     }
 
-    private CollectionWrapper getEntityCollectionWrapperByIdentifierList(List<String> identifierList,
-                                                                         OffsetLimitBasedPageRequest pageableRequest,
-                                                                         QueryOptions queryOptions,
-                                                                         Specification<ObservationEntity<?>> spec) {
-        Page<ObservationEntity<?>> pages = getRepository().findAll(
-                oQS.withStaIdentifier(identifierList),
-                new OffsetLimitBasedPageRequest(0,
-                                                pageableRequest.getPageSize(),
-                                                pageableRequest.getSort()),
-                EntityGraphRepository.FetchGraph.FETCHGRAPH_PARAMETERS);
+    @Override
+    public CollectionWrapper getEntityCollectionByRelatedEntityStream(String relatedId,
+                                                                      String relatedType,
+                                                                      QueryOptions queryOptions,
+                                                                      String skipToken)
+            throws STACRUDException {
+        if (!isStreamable(queryOptions, skipToken)) {
+            return getEntityCollectionByRelatedEntity(relatedId, relatedType, queryOptions, skipToken);
+        }
+        try {
+            Specification<ObservationEntity<?>> spec =
+                    byRelatedEntityFilter(relatedId, relatedType, null)
+                            .and(getFilterPredicate(ObservationEntity.class, queryOptions));
+            return getStreamingCollectionWrapper(spec, queryOptions, false);
+        } catch (RuntimeException e) {
+            throw new STACRUDException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Streaming is used for offset pagination without $expand. Expanded pages are loaded as a whole to batch the
+     * loading of navigation properties.
+     */
+    private boolean isStreamable(QueryOptions queryOptions, String skipToken) {
+        return skipToken == null && !keysetPagination && !queryOptions.hasExpandFilter();
+    }
+
+    /**
+     * Creates a Collection whose Observations are loaded in chunks while they are serialized. Only the identifiers
+     * of the page are read upfront. After each chunk the persistence context is cleared, so memory usage does not
+     * depend on the page size.
+     */
+    private CollectionWrapper getStreamingCollectionWrapper(Specification<ObservationEntity<?>> spec,
+                                                            QueryOptions queryOptions,
+                                                            boolean rootCollection) {
+        OffsetLimitBasedPageRequest pageableRequest = createPageableRequest(queryOptions);
+        int top = pageableRequest.getPageSize();
+        List<String> identifierList = getRepository().identifierList(spec,
+                                                                     new OffsetLimitBasedPageRequest(
+                                                                             (int) pageableRequest.getOffset(),
+                                                                             top + 1,
+                                                                             pageableRequest.getSort()),
+                                                                     STAIDENTIFIER);
+        if (identifierList.isEmpty()) {
+            return new CollectionWrapper(0, Collections.emptyList(), false);
+        }
+        boolean hasNextPage = identifierList.size() > top;
+        List<String> identifiers = hasNextPage ? identifierList.subList(0, top) : identifierList;
+        int chunks = (identifiers.size() + STREAMING_CHUNK_SIZE - 1) / STREAMING_CHUNK_SIZE;
+        Stream<ElementWithQueryOptions> entities = IntStream.range(0, chunks)
+                .mapToObj(i -> identifiers.subList(i * STREAMING_CHUNK_SIZE,
+                                                   Math.min(identifiers.size(), (i + 1) * STREAMING_CHUNK_SIZE)))
+                .flatMap(chunk -> {
+                    // Previous chunk is already serialized
+                    getRepository().clearPersistenceContext();
+                    return getRepository().findAll(oQS.withStaIdentifier(chunk),
+                                                   pageableRequest.getSort(),
+                                                   EntityGraphRepository.FetchGraph.FETCHGRAPH_PARAMETERS)
+                                          .stream();
+                })
+                .map(e -> createWrapper(e, queryOptions));
+        return new CollectionWrapper(getTotalCount(queryOptions, spec, rootCollection),
+                                     entities,
+                                     identifiers.size(),
+                                     hasNextPage,
+                                     queryOptions);
+    }
 
-        CollectionWrapper wrapper = getCollectionWrapper(queryOptions, pages);
-        // Create Page manually as we used Database Pagination and are not sure how many Entities there are in
-        // the Database
-        if (pages.isEmpty()) {
-            return wrapper;
+    private CollectionWrapper getCollectionWrapper(Specification<ObservationEntity<?>> spec,
+                                                   QueryOptions queryOptions,
+                                                   String skipToken,
+                                                   boolean rootCollection) throws STACRUDException {
+        ContinuationToken token = (skipToken != null) ? ContinuationToken.decode(skipToken) : null;
+        if (token != null || keysetPagination) {
+            Sort.Order order = getKeysetOrder(queryOptions);
+            if (order != null) {
+                if (token != null) {
+                    token.checkSort(order.getProperty(),
+                                    order.isDescending(),
+                                    STAIDENTIFIER.equals(order.getProperty()));
+                }
+                return getKeysetCollectionWrapper(spec, queryOptions, token, order, rootCollection);
+            } else if (token != null) {
+                throw new STACRUDException("$skiptoken is only supported when ordering by phenomenonTime!");
+            }
+        }
+
+        OffsetLimitBasedPageRequest pageableRequest = createPageableRequest(queryOptions);
+        Slice<ObservationEntity<?>> slice = findSliceWithParameters(spec, pageableRequest);
+        if (slice.isEmpty()) {
+            return new CollectionWrapper(0, Collections.emptyList(), false);
         } else {
-            long count = getRepository().count(spec);
-            return new CollectionWrapper(count, wrapper.getEntities(),
-                                         identifierList.size() + pageableRequest.getOffset() < count);
+            return getCollectionWrapper(queryOptions, slice, getTotalCount(queryOptions, spec, rootCollection));
+        }
+    }
+
+    /**
+     * Loads a slice by selecting the requested page directly and then fetching the parameters of all its entities
+     * with a second query by primary key. Parameters are not fetched with the page itself, as fetching a collection
+     * would force Hibernate to paginate in memory. One additional entity is fetched to check whether there is a next
+     * page, so no count query is needed.
+     *
+     * @param spec            specification of the request
+     * @param pageableRequest requested page
+     * @return slice of matching entities
+     */
+    private Slice<ObservationEntity<?>> findSliceWithParameters(Specification<ObservationEntity<?>> spec,
+                                                                Pageable pageableRequest) {
+        Slice<ObservationEntity<?>> slice =
+                getRepository().findSlice(spec, pageableRequest, EntityGraphRepository.FetchGraph.FETCHGRAPH_DATASET);
+        fetchParameters(slice.getContent());
+        return slice;
+    }
+
+    /**
+     * Initializes the parameters of the given managed entities with a single query by their ids. As the entities
+     * are already part of the persistence context, the same instances are returned and only their parameters are
+     * filled in.
+     *
+     * @param entities managed entities
+     */
+    private void fetchParameters(List<ObservationEntity<?>> entities) {
+        if (!entities.isEmpty()) {
+            getRepository().findAll(oQS.withIds(entities.stream()
+                                                        .map(ObservationEntity::getId)
+                                                        .collect(Collectors.toList())),
+                                    EntityGraphRepository.FetchGraph.FETCHGRAPH_PARAMETERS);
+        }
+    }
+
+    /**
+     * Returns the order used for keyset pagination. Keyset pagination is possible for the default order
+     * (staIdentifier, which is unique) and for ordering by phenomenonTime (using id as tiebreaker).
+     *
+     * @param queryOptions query options
+     * @return order of the request. null if keyset pagination is not possible for this order
+     */
+    private Sort.Order getKeysetOrder(QueryOptions queryOptions) {
+        if (!queryOptions.hasOrderByFilter()) {
+            return Sort.Order.asc(STAIDENTIFIER);
+        }
+        if (queryOptions.getOrderByFilter().getSortProperties().size() != 1) {
+            return null;
+        }
+        OrderProperty sortProperty = queryOptions.getOrderByFilter().getSortProperties().iterator().next();
+        if (PHENOMENON_TIME.equals(sortProperty.getValueReference())) {
+            Sort.Direction direction = sortProperty.isSetSortOrder()
+                    && sortProperty.getSortOrder().equals(FilterConstants.SortOrder.DESC)
+                    ? Sort.Direction.DESC : Sort.Direction.ASC;
+            return new Sort.Order(direction, checkPropertyName(PHENOMENON_TIME));
         }
+        return null;
+    }
+
+    /**
+     * Loads a page using keyset pagination. Instead of skipping all rows of previous pages, rows are restricted to
+     * those after the last row of the previous page given by the token. top+1 rows are fetched to check whether
+     * there is a next page.
+     */
+    private CollectionWrapper getKeysetCollectionWrapper(Specification<ObservationEntity<?>> spec,
+                                                         QueryOptions queryOptions,
+                                                         ContinuationToken token,
+                                                         Sort.Order order,
+                                                         boolean rootCollection) {
+        int top = getTop(queryOptions);
+        Sort sort = Sort.by(order);
+        if (!STAIDENTIFIER.equals(order.getProperty())) {
+            sort = sort.and(Sort.by(order.getDirection(), ObservationEntity.PROPERTY_ID));
+        }
+        // $skip is only applied to the first page
+        int offset = (token == null && queryOptions.hasSkipFilter())
+                ? queryOptions.getSkipFilter().getValue().intValue() : 0;
+        Specification<ObservationEntity<?>> pageSpec = (token != null) ? spec.and(oQS.withKeysetAfter(token)) : spec;
+
+        Slice<ObservationEntity<?>> slice =
+                findSliceWithParameters(pageSpec, new OffsetLimitBasedPageRequest(offset, top, sort));
+        if (slice.isEmpty()) {
+            return new CollectionWrapper(0, Collections.emptyList(), false);
+        }
+        List<ObservationEntity<?>> entities = slice.getContent();
+        boolean hasNextPage = slice.hasNext();
+        CollectionWrapper result = getCollectionWrapper(queryOptions,
+                                                        slice,
+                                                        getTotalCount(queryOptions, spec, rootCollection));
+        if (hasNextPage) {
+            ObservationEntity<?> last = entities.get(entities.size() - 1);
+            ContinuationToken next = STAIDENTIFIER.equals(order.getProperty())
+                    ? new ContinuationToken(order.getProperty(), order.isDescending(), last.getStaIdentifier(), null)
+                    : new ContinuationToken(order.getProperty(),
+                                            order.isDescending(),
+                                            last.getSamplingTimeEnd(),
+                                            last.getId());
+            result.setNextSkipToken(next.encode());
+        }
+        return result;
     }
 
-    protected Page getEntityCollectionByRelatedEntityRaw(String relatedId,
-                                                         String relatedType,
-                                                         QueryOptions queryOptions)
+    protected Slice getEntityCollectionByRelatedEntityRaw(String relatedId,
+                                                          String relatedType,
+                                                          QueryOptions queryOptions)
             throws STACRUDException {
         try {
-            OffsetLimitBasedPageRequest pageableRequest = createPageableRequest(queryOptions);
             Specification<ObservationEntity<?>> spec =
                     byRelatedEntityFilter(relatedId, relatedType, null)
                             .and(getFilterPredicate(ObservationEntity.class, queryOptions));
-
-            List<String> identifierList = getRepository().identifierList(spec,
-                                                                         createPageableRequest(queryOptions),
-                                                                         STAIDENTIFIER);
-            if (identifierList.isEmpty()) {
-                return Page.empty();
+            Slice<ObservationEntity<?>> slice = findSliceWithParameters(spec, createPageableRequest(queryOptions));
+            if (queryOptions.hasExpandFilter()) {
+                return new SliceImpl<>(fetchExpandEntities(slice.getContent(), queryOptions.getExpandFilter()),
+                                       slice.getPageable(),
+                                       slice.hasNext());
             } else {
-                Page<ObservationEntity<?>> pages = getRepository().findAll(
-                        oQS.withStaIdentifier(identifierList),
-                        new OffsetLimitBasedPageRequest(0,
-                                                        pageableRequest.getPageSize(),
-                                                        pageableRequest.getSort()),
-                        EntityGraphRepository.FetchGraph.FETCHGRAPH_PARAMETERS);
-                if (queryOptions.hasExpandFilter()) {
-                    return pages.map(e -> {
-                        try {
-                            return fetchExpandEntities(e, queryOptions.getExpandFilter());
-                        } catch (STACRUDException | STAInvalidQueryException ex) {
-                            throw new RuntimeException(ex);
-                        }
-                    });
-                } else {
-                    return pages;
-                }
+                return slice;
             }
-        } catch (RuntimeException e) {
+        } catch (RuntimeException | STAInvalidQueryException e) {
             throw new STACRUDException(e.getMessage(), e);
         }
     }
@@ -255,24 +449,48 @@ public class ObservationService extends
     protected ObservationEntity<?> fetchExpandEntities(ObservationEntity<?> returned,
                                                        ExpandFilter expandOption)
             throws STACRUDException, STAInvalidQueryException {
-        // ObservationEntity<?> returned = new ObservationEntity(entity);
+        return fetchExpandEntities(Collections.singletonList(returned), expandOption).get(0);
+    }
+
+    /**
+     * Expands all Observations of a page. As Observations of a page usually belong to only a few Datasets, the
+     * Datastream and FeatureOfInterest are only requested once per Dataset.
+     */
+    @Override
+    protected List<ObservationEntity<?>> fetchExpandEntities(List<ObservationEntity<?>> entities,
+                                                             ExpandFilter expandOption)
+            throws STACRUDException, STAInvalidQueryException {
         for (ExpandItem expandItem : expandOption.getItems()) {
             String expandProperty = expandItem.getPath();
             if (ObservationEntityDefinition.NAVIGATION_PROPERTIES.contains(expandProperty)) {
                 switch (expandProperty) {
                 case STAEntityDefinition.DATASTREAM:
-                    DatastreamEntity datastream = getDatastreamService()
-                            .getEntityByRelatedEntityRaw(returned.getStaIdentifier(),
-                                                         STAEntityDefinition.OBSERVATIONS,
-                                                         null,
-                                                         expandItem.getQueryOptions());
-                    returned.setDatastream(datastream);
+                    Map<Long, DatastreamEntity> datastreams = new HashMap<>();
+                    for (ObservationEntity<?> returned : entities) {
+                        Long datasetId = returned.getDataset().getId();
+                        // null is a valid result, e.g. if the Datastream does not match the nested $filter
+                        if (!datastreams.containsKey(datasetId)) {
+                            datastreams.put(datasetId,
+                                            getDatastreamService()
+                                                    .getEntityByRelatedEntityRaw(returned.getStaIdentifier(),
+                                                                                 STAEntityDefinition.OBSERVATIONS,
+                                                                                 null,
+                                                                                 expandItem.getQueryOptions()));
+                        }
+                        returned.setDatastream(datastreams.get(datasetId));
+                    }
                     break;
                 case STAEntityDefinition.FEATURE_OF_INTEREST:
-                    AbstractFeatureEntity<?> foi = ((FeatureOfInterestService)
-                            getFeatureOfInterestService()).getEntityByDatasetIdRaw(returned.getDataset().getId(),
-                                                                                   expandItem.getQueryOptions());
-                    returned.setFeature(foi);
+                    Map<Long, AbstractFeatureEntity<?>> features = new HashMap<>();
+                    for (ObservationEntity<?> returned : entities) {
+                        Long datasetId = returned.getDataset().getId();
+                        if (!features.containsKey(datasetId)) {
+                            features.put(datasetId,
+                                         ((FeatureOfInterestService) getFeatureOfInterestService())
+                                                 .getEntityByDatasetIdRaw(datasetId, expandItem.getQueryOptions()));
+                        }
+                        returned.setFeature(features.get(datasetId));
+                    }
                     break;
                 default:
                     throw new RuntimeException("This can never happen!");
@@ -282,7 +500,7 @@ public class ObservationService extends
                                                            " on Entity of type 'Observations'");
             }
         }
-        return returned;
+        return entities;
     }
 
     @Override
@@ -292,7 +510,7 @@ public class ObservationService extends
         Specification<ObservationEntity<?>> filter;
         switch (relatedType) {
         case STAEntityDefinition.DATASTREAMS: {
-            filter = oQS.withDatastreamStaIdentifier(relatedId);
+            filter = oQS.withDatasetIds(getDatasetIds(relatedId));
             break;
         }
         case STAEntityDefinition.FEATURES_OF_INTEREST: {
@@ -308,10 +526,36 @@ public class ObservationService extends
         return filter;
     }
 
+    /**
+     * Gets the ids of the Datasets belonging to given Datastream. The ids are resolved once and passed as plain
+     * values to all queries of a request, so that the Datastream is not joined for the page, the count and the
+     * Observations themselves.
+     *
+     * @param datastreamIdentifier staIdentifier of the Datastream
+     * @return ids of the Datasets. Empty if the Datastream does not exist
+     */
+    private List<Long> getDatasetIds(String datastreamIdentifier) {
+        List<Long> datasetIds = datasetIdCache.get(datastreamIdentifier);
+        if (datasetIds == null) {
+            long version = datasetIdCache.version();
+            Optional<DatastreamEntity> datastream =
+                    datastreamRepository.findByStaIdentifier(datastreamIdentifier,
+                                                             EntityGraphRepository.FetchGraph.FETCHGRAPH_DATASETS);
+            if (!datastream.isPresent()) {
+                return Collections.emptyList();
+            }
+            datasetIds = datastream.get().getDatasets() == null
+                    ? Collections.emptyList()
+                    : datastream.get().getDatasets().stream().map(DatasetEntity::getId).collect(Collectors.toList());
+            datasetIdCache.put(datastreamIdentifier, datasetIds, version);
+        }
+        return datasetIds;
+    }
+
     @Override
     public String checkPropertyName(String property) {
         switch (property) {
-        case "phenomenonTime":
+        case PHENOMENON_TIME:
             // TODO: proper ISO8601 comparison
             return ObservationEntity.PROPERTY_SAMPLING_TIME_END;
         // This is handled separately as result is split up over multiple columns
@@ -330,6 +574,18 @@ public class ObservationService extends
                 observation.setProcessed(true);
                 check(observation);
 
+                String featureKey = getIngestContextFeatureKey(observation);
+                DatastreamIngestContextCache.IngestContext context = (featureKey != null)
+                        ? ingestContextCache.get(observation.getDatastream().getStaIdentifier())
+                        : null;
+                if (context != null && context.getDatasetId(featureKey) != null) {
+                    Optional<ObservationEntity<?>> cached =
+                            createEntityFromIngestContext(observation, context, featureKey);
+                    if (cached.isPresent()) {
+                        return cached.get();
+                    }
+                }
+
                 DatastreamEntity datastream = getDatastreamService().createEntity(observation.getDatastream());
                 observation.setDatastream(datastream);
 
@@ -346,9 +602,15 @@ public class ObservationService extends
 
                 AbstractFeatureEntity<?> feature = checkFeature(observation, datastream);
                 // category (obdProp)
-                CategoryEntity category = checkCategory();
+                Optional<CategoryEntity> cachedCategory = (context != null)
+                        ? categoryRepository.findById(context.getCategoryId())
+                        : Optional.empty();
+                CategoryEntity category = cachedCategory.isPresent() ? cachedCategory.get() : checkCategory();
                 // offering (sensor)
-                OfferingEntity offering = checkOffering(datastream);
+                Optional<OfferingEntity> cachedOffering = (context != null)
+                        ? offeringRepository.findById(context.getOfferingId())
+                        : Optional.empty();
+                OfferingEntity offering = cachedOffering.isPresent() ? cachedOffering.get() : checkOffering(datastream);
                 // dataset
                 DatasetEntity dataset = checkDataset(datastream, feature, category, offering);
                 // observation
@@ -356,6 +618,14 @@ public class ObservationService extends
                 if (data != null) {
                     updateDataset(dataset, data);
                     updateDatastream(datastream, dataset, data);
+                    if (featureKey != null) {
+                        ingestContextCache.put(datastream.getStaIdentifier(),
+                                               datastream.getId(),
+                                               category.getId(),
+                                               offering.getId(),
+                                               featureKey,
+                                               dataset.getId());
+                    }
                 }
                 return data;
             }
@@ -363,6 +633,210 @@ public class ObservationService extends
         }
     }
 
+    /**
+     * Creates the Observation using the Dataset cached in the ingest context of the Datastream. Skips resolving
+     * Datastream, FeatureOfInterest, Category, Offering and Dataset.
+     *
+     * @param observation Observation to be created
+     * @param context     cached ingest context of the Datastream
+     * @param featureKey  key of the FeatureOfInterest inside the ingest context
+     * @return created Observation or Optional.empty() if the cached context is stale
+     * @throws STACRUDException if an error occurred
+     */
+    private Optional<ObservationEntity<?>> createEntityFromIngestContext(
+            ObservationEntity<?> observation,
+            DatastreamIngestContextCache.IngestContext context,
+            String featureKey) throws STACRUDException {
+        Optional<DatastreamEntity> datastream = datastreamRepository.findById(context.getDatastreamId());
+        Optional<DatasetEntity> dataset =
+                datasetRepository.findById(context.getDatasetId(featureKey),
+                                           EntityGraphRepository.FetchGraph.FETCHGRAPH_OM_OBS_TYPE);
+        if (!datastream.isPresent() || !dataset.isPresent()) {
+            LOGGER.debug("Discarding stale ingest context of Datastream {}",
+                         observation.getDatastream().getStaIdentifier());
+            ingestContextCache.invalidate(observation.getDatastream().getStaIdentifier());
+            return Optional.empty();
+        }
+        ObservationEntity<?> data = checkData(observation, dataset.get());
+        if (data != null) {
+            updateDataset(dataset.get(), data);
+            // Dataset is already linked to the Datastream if it is present in the ingest context
+            updateDatastreamPhenomenonTime(datastream.get(), data);
+        }
+        return Optional.ofNullable(data);
+    }
+
+    /**
+     * Gets the key of the FeatureOfInterest used in the ingest context. Observations with inline Datastream or
+     * inline FeatureOfInterest are never served from the ingest context.
+     *
+     * @param observation Observation to be created
+     * @return key of the FeatureOfInterest or null if the ingest context may not be used
+     */
+    private String getIngestContextFeatureKey(ObservationEntity<?> observation) {
+        DatastreamEntity datastream = observation.getDatastream();
+        if (!ingestContextCache.isEnabled() || datastream.getStaIdentifier() == null || datastream.isSetName()) {
+            return null;
+        }
+        if (!observation.hasFeature()) {
+            return DatastreamIngestContextCache.DERIVED_FEATURE;
+        }
+        AbstractFeatureEntity<?> feature = observation.getFeature();
+        return (feature.getStaIdentifier() != null && !feature.isSetName()) ? feature.getStaIdentifier() : null;
+    }
+
+    /**
+     * Creates multiple Observations at once (e.g. from a CreateObservations dataArray request).
+     * Observations are grouped by Datastream so that Datastream, FeatureOfInterest, Category, Offering and Dataset
+     * are only resolved once per batch instead of once per Observation. Rows are rejected individually: an invalid
+     * row, FeatureOfInterest or Datastream only fails the Observations referencing it.
+     *
+     * @param observations Observations to be created. Entries may be null if they could not be parsed.
+     * @return created Observations in the order given. Entries are null if the Observation could not be created.
+     * @throws STACRUDException if an error occurred
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public List<ObservationEntity<?>> createEntities(List<ObservationEntity<?>> observations)
+            throws STACRUDException {
+        ObservationEntity<?>[] created = new ObservationEntity<?>[observations.size()];
+        Map<String, List<Integer>> byDatastream = new LinkedHashMap<>();
+        for (int i = 0; i < observations.size(); i++) {
+            ObservationEntity<?> observation = observations.get(i);
+            if (observation != null
+                    && observation.getDatastream() != null
+                    && observation.getDatastream().getStaIdentifier() != null) {
+                byDatastream.computeIfAbsent(observation.getDatastream().getStaIdentifier(),
+                                             k -> new ArrayList<>()).add(i);
+            }
+        }
+        if (byDatastream.isEmpty()) {
+            return Arrays.asList(created);
+        }
+
+        Set<String> existingIdentifiers = findExistingIdentifiers(observations);
+        CategoryEntity category = checkCategory();
+        for (Map.Entry<String, List<Integer>> group : byDatastream.entrySet()) {
+            // Only the lock of the Datastream currently written is held. It is the same lock checkDataset uses when
+            // Observations are created individually, so concurrent writers of one Datastream are serialized.
+            synchronized (getLock(group.getKey())) {
+                createEntitiesOfDatastream(group.getKey(),
+                                           group.getValue(),
+                                           observations,
+                                           created,
+                                           existingIdentifiers,
+                                           category);
+            }
+        }
+        return Arrays.asList(created);
+    }
+
+    private void createEntitiesOfDatastream(String datastreamId,
+                                            List<Integer> positions,
+                                            List<ObservationEntity<?>> observations,
+                                            ObservationEntity<?>[] created,
+                                            Set<String> existingIdentifiers,
+                                            CategoryEntity category) throws STACRUDException {
+        Optional<DatastreamEntity> queried = datastreamRepository
+                .findByStaIdentifier(datastreamId,
+                                     EntityGraphRepository.FetchGraph.FETCHGRAPH_THINGLOCATION,
+                                     EntityGraphRepository.FetchGraph.FETCHGRAPH_PROCEDURE,
+                                     EntityGraphRepository.FetchGraph.FETCHGRAPH_UOM,
+                                     EntityGraphRepository.FetchGraph.FETCHGRAPH_OBS_TYPE,
+                                     EntityGraphRepository.FetchGraph.FETCHGRAPH_OBSERVABLE_PROP,
+                                     EntityGraphRepository.FetchGraph.FETCHGRAPH_DATASETS);
+        if (!queried.isPresent()) {
+            LOGGER.debug("Skipping Observations of unknown Datastream {}", datastreamId);
+            return;
+        }
+        DatastreamEntity datastream = queried.get();
+        OfferingEntity offering;
+        try {
+            offering = checkOffering(datastream);
+        } catch (STACRUDException e) {
+            LOGGER.debug("Skipping Observations of Datastream {}: {}", datastreamId, e.getMessage());
+            return;
+        }
+
+        // FeatureOfInterest and Dataset are resolved once per distinct FeatureOfInterest. null if invalid
+        Map<String, DatasetEntity> datasets = new HashMap<>();
+        List<ObservationEntity<?>> batch = new ArrayList<>();
+        List<Integer> batchPositions = new ArrayList<>();
+        for (Integer position : positions) {
+            ObservationEntity observation = observations.get(position);
+            if (observation.getStaIdentifier() != null
+                    && !existingIdentifiers.add(observation.getStaIdentifier())) {
+                LOGGER.debug("Skipping Observation with duplicate identifier {}", observation.getStaIdentifier());
+                continue;
+            }
+            String featureKey = observation.hasFeature() ? observation.getFeature().getStaIdentifier() : null;
+            if (!datasets.containsKey(featureKey)) {
+                DatasetEntity dataset = null;
+                try {
+                    observation.setDatastream(datastream);
+                    AbstractFeatureEntity<?> feature = checkFeature(observation, datastream);
+                    dataset = checkDataset(datastream, feature, category, offering);
+                } catch (STACRUDException e) {
+                    LOGGER.debug("Skipping Observations of FeatureOfInterest {}: {}", featureKey, e.getMessage());
+                }
+                datasets.put(featureKey, dataset);
+            }
+            DatasetEntity dataset = datasets.get(featureKey);
+            if (dataset == null) {
+                continue;
+            }
+            ObservationEntity<?> data;
+            try {
+                data = createConcreteObservation(observation, dataset);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Skipping invalid Observation: {}", e.getMessage());
+                continue;
+            }
+            if (data != null) {
+                batch.add(data);
+                batchPositions.add(position);
+            }
+        }
+
+        List<ObservationEntity<?>> saved = getRepository().saveAll(batch);
+        for (int i = 0; i < saved.size(); i++) {
+            created[batchPositions.get(i)] = saved.get(i);
+        }
+        for (DatasetEntity dataset : datasets.values()) {
+            if (dataset == null) {
+                continue;
+            }
+            List<ObservationEntity<?>> ofDataset = saved.stream()
+                                                        .filter(o -> o.getDataset() == dataset)
+                                                        .collect(Collectors.toList());
+            if (!ofDataset.isEmpty()) {
+                updateDataset(dataset, ofDataset);
+                for (ObservationEntity<?> data : ofDataset) {
+                    updateDatastream(datastream, dataset, data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks which of the given (user-supplied) identifiers are already used with a single query.
+     *
+     * @param observations Observations to be checked
+     * @return Set of identifiers already present in the database
+     */
+    private Set<String> findExistingIdentifiers(List<ObservationEntity<?>> observations) {
+        List<String> identifiers = observations.stream()
+                                               .filter(Objects::nonNull)
+                                               .map(ObservationEntity::getStaIdentifier)
+                                               .filter(Objects::nonNull)
+                                               .collect(Collectors.toList());
+        if (identifiers.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(getRepository().identifierList(oQS.withStaIdentifier(identifiers),
+                                                            Pageable.unpaged(),
+                                                            STAIDENTIFIER));
+    }
+
     private void check(ObservationEntity observation) throws STACRUDException {
         if (observation.getDatastream() == null) {
             throw new STACRUDException("The observation to create is invalid. Missing datastream!",
@@ -665,6 +1139,26 @@ public class ObservationService extends
         }
     }
 
+    /**
+     * Updates first/last Observation of the Dataset with a batch of Observations. Only the earliest and latest
+     * Observation of the batch are fetched.
+     */
+    private DatasetEntity updateDataset(DatasetEntity dataset, List<ObservationEntity<?>> batch)
+            throws STACRUDException {
+        ObservationEntity<?> first = batch.get(0);
+        ObservationEntity<?> last = batch.get(0);
+        for (ObservationEntity<?> data : batch) {
+            if (data.getSamplingTimeStart().before(first.getSamplingTimeStart())) {
+                first = data;
+            }
+            if (data.getSamplingTimeEnd().after(last.getSamplingTimeEnd())) {
+                last = data;
+            }
+        }
+        updateDataset(dataset, first);
+        return (first == last) ? dataset : updateDataset(dataset, last);
+    }
+
     private void updateDatastream(DatastreamEntity datastream, DatasetEntity dataset, ObservationEntity<?> data)
             throws STACRUDException {
         if (datastream.getDatasets() != null) {
@@ -673,6 +1167,10 @@ public class ObservationService extends
                 getDatastreamService().updateEntity(datastream);
             }
         }
+        updateDatastreamPhenomenonTime(datastream, data);
+    }
+
+    private void updateDatastreamPhenomenonTime(DatastreamEntity datastream, ObservationEntity<?> data) {
         if (datastream.getPhenomenonTimeStart() == null) {
             datastream.setPhenomenonTimeStart(data.getPhenomenonTimeStart());
             datastream.setPhenomenonTimeEnd(data.getPhenomenonTimeEnd());
@@ -713,6 +1211,22 @@ public class ObservationService extends
 
     private ObservationEntity<?> castToConcreteObservationType(ObservationEntity observation, DatasetEntity dataset)
             throws STACRUDException {
+        if (observation.getStaIdentifier() != null
+                && getRepository().existsByStaIdentifier(observation.getStaIdentifier())) {
+            throw new STACRUDException("Identifier already exists!", HTTPStatus.CONFLICT);
+        }
+        return createConcreteObservation(observation, dataset);
+    }
+
+    /**
+     * Creates the concrete Observation matching the observationType of the Dataset. Does not check whether the
+     * identifier is already in use.
+     *
+     * @param observation Observation as parsed from the request
+     * @param dataset     Dataset the Observation belongs to
+     * @return concrete Observation or null if observationType is not supported
+     */
+    private ObservationEntity<?> createConcreteObservation(ObservationEntity observation, DatasetEntity dataset) {
         ObservationEntity<?> data = null;
         String value = (String) observation.getValue();
         switch (dataset.getOmObservationType().getFormat()) {
@@ -761,12 +1275,8 @@ public class ObservationService extends
         if (data != null) {
             data.setDataset(dataset);
             if (observation.getStaIdentifier() != null) {
-                if (getRepository().existsByStaIdentifier(observation.getStaIdentifier())) {
-                    throw new STACRUDException("Identifier already exists!", HTTPStatus.CONFLICT);
-                } else {
-                    data.setIdentifier(observation.getIdentifier());
-                    data.setStaIdentifier(observation.getStaIdentifier());
-                }
+                data.setIdentifier(observation.getIdentifier());
+                data.setStaIdentifier(observation.getStaIdentifier());
             } else {
                 String uuid = UUID.randomUUID().toString();
                 data.setIdentifier(uuid);
@@ -49,7 +49,7 @@ import org.n52.sta.data.service.EntityServiceRepository.EntityTypes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.DependsOn;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
@@ -92,21 +92,21 @@ public class ThingService
             if (ThingEntityDefinition.NAVIGATION_PROPERTIES.contains(expandProperty)) {
                 switch (expandProperty) {
                 case STAEntityDefinition.HISTORICAL_LOCATIONS:
-                    Page<HistoricalLocationEntity> hLocs = getHistoricalLocationService()
+                    Slice<HistoricalLocationEntity> hLocs = getHistoricalLocationService()
                             .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
                                                                    STAEntityDefinition.THINGS,
                                                                    expandItem.getQueryOptions());
                     entity.setHistoricalLocations(hLocs.get().collect(Collectors.toSet()));
                     break;
                 case STAEntityDefinition.DATASTREAMS:
-                    Page<DatastreamEntity> datastreams = getDatastreamService()
+                    Slice<DatastreamEntity> datastreams = getDatastreamService()
                             .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
                                                                    STAEntityDefinition.THINGS,
                                                                    expandItem.getQueryOptions());
                     entity.setDatastreams(datastreams.get().collect(Collectors.toSet()));
                     break;
                 case STAEntityDefinition.LOCATIONS:
-                    Page<LocationEntity> locations = getLocationService()
+                    Slice<LocationEntity> locations = getLocationService()
                             .getEntityCollectionByRelatedEntityRaw(entity.getStaIdentifier(),
                                                                    STAEntityDefinition.THINGS,
                                                                    expandItem.getQueryOptions());
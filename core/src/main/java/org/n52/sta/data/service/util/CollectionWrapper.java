@@ -29,9 +29,12 @@
 
 package org.n52.sta.data.service.util;
 
+import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.sta.serdes.util.ElementWithQueryOptions;
+import org.n52.sta.serdes.util.SerializationPlan;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
@@ -42,16 +45,52 @@ public class CollectionWrapper {
 
     private final List<ElementWithQueryOptions> entities;
 
+    private final Stream<ElementWithQueryOptions> entityStream;
+
+    private final QueryOptions queryOptions;
+
     private final boolean hasNextPage;
 
+    private final int pageSize;
+
     private String requestURL;
 
+    private String nextSkipToken;
+
+    private SerializationPlan plan;
+
     public CollectionWrapper(long entityCount,
                              List<ElementWithQueryOptions> entity,
                              boolean hasNextPage) {
         this.totalEntityCount = entityCount;
         this.entities = entity;
+        this.entityStream = null;
+        this.queryOptions = null;
         this.hasNextPage = hasNextPage;
+        this.pageSize = entity.size();
+    }
+
+    /**
+     * Creates a Collection whose entities are loaded lazily while they are serialized. Must be serialized inside the
+     * transaction the entities are read in.
+     *
+     * @param entityCount  total number of entities. negative if not requested
+     * @param entityStream lazily loaded entities
+     * @param pageSize     number of entities in the stream
+     * @param hasNextPage  whether there are further entities
+     * @param queryOptions query options of the request
+     */
+    public CollectionWrapper(long entityCount,
+                             Stream<ElementWithQueryOptions> entityStream,
+                             int pageSize,
+                             boolean hasNextPage,
+                             QueryOptions queryOptions) {
+        this.totalEntityCount = entityCount;
+        this.entities = null;
+        this.entityStream = entityStream;
+        this.queryOptions = queryOptions;
+        this.hasNextPage = hasNextPage;
+        this.pageSize = pageSize;
     }
 
     public long getTotalEntityCount() {
@@ -62,10 +101,47 @@ public class CollectionWrapper {
         return entities;
     }
 
+    public boolean isStreaming() {
+        return entityStream != null;
+    }
+
+    public Stream<ElementWithQueryOptions> getEntityStream() {
+        return entityStream;
+    }
+
+    public QueryOptions getQueryOptions() {
+        return queryOptions;
+    }
+
+    /**
+     * Returns the plan of the properties to be serialized, which is shared by all entities of this collection.
+     * Entities of a collection are created with the same QueryOptions, so the plan is compiled only once.
+     *
+     * @return plan
+     */
+    public SerializationPlan getPlan() {
+        if (plan == null) {
+            QueryOptions options = isStreaming() || entities.isEmpty()
+                    ? queryOptions
+                    : entities.get(0).getQueryOptions();
+            plan = SerializationPlan.of(options);
+        }
+        return plan;
+    }
+
     public boolean hasNextPage() {
         return hasNextPage;
     }
 
+    /**
+     * Returns the number of entities of this page. May be less than $top if $top exceeds the maximum page size.
+     *
+     * @return number of entities
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
     public String getRequestURL() {
         return requestURL;
     }
@@ -74,4 +150,18 @@ public class CollectionWrapper {
         this.requestURL = requestURL;
         return this;
     }
+
+    /**
+     * Returns the continuation token of the next page if keyset pagination is used.
+     *
+     * @return token for the next page. null if offset pagination is used
+     */
+    public String getNextSkipToken() {
+        return nextSkipToken;
+    }
+
+    public CollectionWrapper setNextSkipToken(String nextSkipToken) {
+        this.nextSkipToken = nextSkipToken;
+        return this;
+    }
 }
@@ -61,6 +61,8 @@ import java.util.Date;
 /**
  * Visitor visiting svalbard.odata.Expr and parsing it into javax.expression to be used in database access.
  * Not all methods return predicate (e.g. internal ones return concrete types) so abstract Expression&lt;?&gt; is used.
+ * Values are created via CriteriaBuilder#literal. They are rendered as bind parameters if
+ * hibernate.criteria.literal_handling_mode is set to bind (Hibernate inlines numeric literals by default).
  *
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
  */
@@ -29,41 +29,151 @@
 
 package org.n52.sta.serdes;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.sta.serdes.util.ElementWithQueryOptions;
+import org.n52.sta.serdes.util.SerializationPlan;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public abstract class AbstractSTASerializer<T> extends StdSerializer<T> {
 
-    private static final String ENCODEDSLASH = "%2F";
-    private static final String SLASH = "/";
+    private static final char[] ENCODEDSLASH = "%2F".toCharArray();
+    private static final char SLASH = '/';
+    private static final char[] SELF_LINK_SUFFIX = ")".toCharArray();
+    private static final SerializableString SELF_LINK = new SerializedString("@iot.selfLink");
+    private static final SerializableString ID = new SerializedString("@iot.id");
+    private static final String NAVIGATION_LINK = "@iot.navigationLink";
+
+    // Links are assembled here and passed to the generator, so no intermediate Strings are created
+    private static final ThreadLocal<char[]> LINK_BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+    // Only used for generators that do not support raw values. Readers are immutable and thread-safe
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     protected String rootUrl;
     protected String entitySetName;
 
+    // rootUrl + entitySetName + "(". Created on first use, as rootUrl and entitySetName are set by subclasses
+    private volatile char[] linkPrefix;
+    private final ConcurrentHashMap<String, SerializedString> navigationLinkNames = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, char[]> navigationLinkSuffixes = new ConcurrentHashMap<>();
+
     protected AbstractSTASerializer(Class<T> t) {
         super(t);
     }
 
     public void writeSelfLink(JsonGenerator gen, String id) throws IOException {
-        String escaped = id.replaceAll(SLASH, ENCODEDSLASH);
-        gen.writeStringField("@iot.selfLink", rootUrl + entitySetName + "(" + escaped + ")");
+        gen.writeFieldName(SELF_LINK);
+        writeLink(gen, id, SELF_LINK_SUFFIX);
     }
 
     public void writeId(JsonGenerator gen, String id) throws IOException {
-        gen.writeStringField("@iot.id", id);
+        gen.writeFieldName(ID);
+        gen.writeString(id);
     }
 
     public void writeNavigationProp(JsonGenerator gen, String navigationProperty, String id) throws IOException {
-        String escaped = id.replaceAll(SLASH, ENCODEDSLASH);
-        gen.writeStringField(navigationProperty + "@iot.navigationLink",
-                             rootUrl + entitySetName + "(" + escaped + ")/" + navigationProperty);
+        gen.writeFieldName(navigationLinkNames.computeIfAbsent(
+                navigationProperty, p -> new SerializedString(p + NAVIGATION_LINK)));
+        writeLink(gen, id, navigationLinkSuffixes.computeIfAbsent(
+                navigationProperty, p -> (")/" + p).toCharArray()));
+    }
+
+    /**
+     * Writes rootUrl + entitySetName + "(" + id + suffix with slashes in the id being escaped.
+     */
+    private void writeLink(JsonGenerator gen, String id, char[] suffix) throws IOException {
+        char[] prefix = linkPrefix;
+        if (prefix == null) {
+            prefix = (rootUrl + entitySetName + "(").toCharArray();
+            linkPrefix = prefix;
+        }
+        int idLength = id.length();
+        // Worst case: every character of the id is a slash
+        int maxLength = prefix.length + idLength * ENCODEDSLASH.length + suffix.length;
+        char[] buffer = LINK_BUFFER.get();
+        if (buffer.length < maxLength) {
+            buffer = new char[Math.max(maxLength, buffer.length * 2)];
+            LINK_BUFFER.set(buffer);
+        }
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+        int pos = prefix.length;
+        if (id.indexOf(SLASH) < 0) {
+            id.getChars(0, idLength, buffer, pos);
+            pos += idLength;
+        } else {
+            for (int i = 0; i < idLength; i++) {
+                char c = id.charAt(i);
+                if (c == SLASH) {
+                    System.arraycopy(ENCODEDSLASH, 0, buffer, pos, ENCODEDSLASH.length);
+                    pos += ENCODEDSLASH.length;
+                } else {
+                    buffer[pos++] = c;
+                }
+            }
+        }
+        System.arraycopy(suffix, 0, buffer, pos, suffix.length);
+        pos += suffix.length;
+        gen.writeString(buffer, 0, pos);
+    }
+
+    /**
+     * Writes a field holding a JSON document generated by this server during serialization, e.g. a GeoJSON
+     * geometry. The document is known to be valid JSON, so it is written as raw value without parsing it again.
+     * Generators of other formats do not support raw values, so the document is copied via a shared factory.
+     *
+     * @param gen       generator
+     * @param fieldName name of the field
+     * @param json      JSON document. null is written as JSON null
+     * @throws IOException if writing fails
+     */
+    protected void writeGeneratedJsonField(JsonGenerator gen, String fieldName, String json) throws IOException {
+        if (json != null && gen instanceof JsonGeneratorImpl) {
+            gen.writeFieldName(fieldName);
+            gen.writeRawValue(json);
+        } else {
+            writeStoredJsonField(gen, fieldName, json);
+        }
+    }
+
+    /**
+     * Writes a field holding a JSON document that is stored as String, e.g. properties of a Thing or a JSON
+     * parameter of an Observation. The database may be shared with other applications, so the document is not
+     * trusted to be valid JSON. It is streamed token by token from a shared factory into the generator, which
+     * rejects malformed documents without building an intermediate tree.
+     *
+     * @param gen       generator
+     * @param fieldName name of the field
+     * @param json      JSON document. null is written as JSON null
+     * @throws IOException if writing fails or the document is not valid JSON
+     */
+    protected void writeStoredJsonField(JsonGenerator gen, String fieldName, String json) throws IOException {
+        gen.writeFieldName(fieldName);
+        if (json == null) {
+            gen.writeNull();
+        } else {
+            try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+                if (parser.nextToken() == null) {
+                    throw new JsonParseException(parser, "Stored JSON document is empty");
+                }
+                gen.copyCurrentStructure(parser);
+                if (parser.nextToken() != null) {
+                    throw new JsonParseException(parser, "Unexpected content after stored JSON document");
+                }
+            }
+        }
     }
 
     protected void writeNestedEntity(Object expandedElement,
@@ -77,10 +187,11 @@ public abstract class AbstractSTASerializer<T> extends StdSerializer<T> {
                                          QueryOptions queryOptions,
                                          JsonGenerator gen,
                                          SerializerProvider serializers) throws IOException {
+        SerializationPlan plan = SerializationPlan.of(queryOptions);
         serializers.defaultSerializeValue(
                 expandedElements
                         .stream()
-                        .map(d -> ElementWithQueryOptions.from(d, queryOptions))
+                        .map(d -> ElementWithQueryOptions.from(d, queryOptions).sharePlan(plan))
                         .collect(Collectors.toSet()), gen);
     }
 }
@@ -38,15 +38,22 @@ import org.n52.shetland.ogc.filter.FilterClause;
 import org.n52.shetland.ogc.filter.FilterConstants;
 import org.n52.sta.data.service.util.CollectionWrapper;
 import org.n52.sta.serdes.util.ElementWithQueryOptions;
+import org.n52.sta.serdes.util.SerializationPlan;
+import org.n52.sta.utils.STARequestUtils;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
  */
 public class CollectionSer extends StdSerializer<CollectionWrapper> {
 
+    private static final String NEXT_LINK = "@iot.nextLink";
+
     public CollectionSer(Class<CollectionWrapper> t) {
         super(t);
     }
@@ -55,27 +62,57 @@ public class CollectionSer extends StdSerializer<CollectionWrapper> {
             throws IOException {
         gen.writeStartObject();
 
-        gen.writeNumberField("@iot.count", value.getTotalEntityCount());
+        // count is negative if it was not requested
+        if (value.getTotalEntityCount() >= 0) {
+            gen.writeNumberField("@iot.count", value.getTotalEntityCount());
+        }
 
         // We have multiple pages
-        if (value.hasNextPage() && !value.getEntities().isEmpty()) {
-            QueryOptions queryOptions = value.getEntities().get(0).getQueryOptions();
-            long oldTop = queryOptions.getTopFilter().getValue();
+        if (value.hasNextPage() && (value.isStreaming() || !value.getEntities().isEmpty())) {
+            QueryOptions queryOptions = value.isStreaming()
+                    ? value.getQueryOptions()
+                    : value.getEntities().get(0).getQueryOptions();
+            // Page may be smaller than $top if $top exceeds the maximum page size
+            long oldTop = Math.min(queryOptions.getTopFilter().getValue(), value.getPageSize());
             long oldSkip = queryOptions.hasSkipFilter() ? queryOptions.getSkipFilter().getValue() : 0L;
-            // Replace old skip Filter with new one
-            Set<FilterClause> allFilters = queryOptions.getAllFilters();
+            // Replace old skip Filter with new one. QueryOptions are shared between requests so they are copied
+            Set<FilterClause> allFilters = new HashSet<>(queryOptions.getAllFilters());
             allFilters.remove(queryOptions.getSkipFilter());
-            allFilters.add(new SkipTopFilter(FilterConstants.SkipTopOperator.Skip, oldSkip + oldTop));
-            gen.writeStringField("@iot.nextLink",
-                                 value.getRequestURL()
-                                         + "?"
-                                         + new QueryOptions("", allFilters).toString()
-            );
+            if (value.getNextSkipToken() != null) {
+                // Keyset pagination: next page is identified by token instead of $skip
+                String options = new QueryOptions("", allFilters).toString();
+                gen.writeStringField(NEXT_LINK,
+                                     value.getRequestURL()
+                                             + "?"
+                                             + options
+                                             + (options.isEmpty() ? "" : "&")
+                                             + STARequestUtils.SKIPTOKEN + "="
+                                             + value.getNextSkipToken()
+                );
+            } else {
+                allFilters.add(new SkipTopFilter(FilterConstants.SkipTopOperator.Skip, oldSkip + oldTop));
+                gen.writeStringField(NEXT_LINK,
+                                     value.getRequestURL()
+                                             + "?"
+                                             + new QueryOptions("", allFilters).toString()
+                );
+            }
         }
 
         gen.writeArrayFieldStart("value");
-        for (ElementWithQueryOptions element : value.getEntities()) {
-            provider.defaultSerializeValue(element, gen);
+        SerializationPlan plan = value.getPlan();
+        if (value.isStreaming()) {
+            // Entities are loaded while writing, so the response is started before all entities are read
+            try (Stream<ElementWithQueryOptions> entities = value.getEntityStream()) {
+                Iterator<ElementWithQueryOptions> iterator = entities.iterator();
+                while (iterator.hasNext()) {
+                    provider.defaultSerializeValue(iterator.next().sharePlan(plan), gen);
+                }
+            }
+        } else {
+            for (ElementWithQueryOptions element : value.getEntities()) {
+                provider.defaultSerializeValue(element.sharePlan(plan), gen);
+            }
         }
         gen.writeEndArray();
         gen.writeEndObject();
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.serdes;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.n52.series.db.beans.sta.ObservationEntity;
+import org.n52.shetland.ogc.sta.StaConstants;
+import org.n52.sta.serdes.json.JSONBase;
+import org.n52.sta.serdes.json.JSONObservation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Deserialization of the dataArray format used by the CreateObservations request (STA Part 1 §10.2).
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class DataArraySerDes {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataArraySerDes.class);
+
+    private static final String DATASTREAM = "Datastream";
+    private static final String FEATURE_OF_INTEREST = "FeatureOfInterest";
+    private static final String COMPONENTS = "components";
+    private static final String DATA_ARRAY = "dataArray";
+    private static final String COMPONENT_ID = "id";
+    private static final String COMPONENT_FOI_ID = "FeatureOfInterest/id";
+
+
+    /**
+     * Observations contained in a single CreateObservations request. Rows that could not be parsed are represented
+     * by {@code null} so that positions match the order of the rows in the request.
+     */
+    public static class DataArray {
+
+        private final List<ObservationEntity<?>> observations;
+
+        DataArray(List<ObservationEntity<?>> observations) {
+            this.observations = observations;
+        }
+
+        public List<ObservationEntity<?>> getObservations() {
+            return Collections.unmodifiableList(observations);
+        }
+    }
+
+
+    public static class DataArrayDeserializer extends StdDeserializer<DataArray> {
+
+        private static final long serialVersionUID = -6357409468386254721L;
+
+        public DataArrayDeserializer() {
+            super(DataArray.class);
+        }
+
+        @Override
+        public DataArray deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            ObjectCodec codec = p.getCodec();
+            JsonNode root = codec.readTree(p);
+            if (!root.isArray()) {
+                return ctxt.reportInputMismatch(this, "Invalid CreateObservations request. Expected JSON Array!");
+            }
+            List<ObservationEntity<?>> observations = new ArrayList<>();
+            for (JsonNode datastreamBlock : root) {
+                JsonNode datastream = datastreamBlock.get(DATASTREAM);
+                JsonNode components = datastreamBlock.get(COMPONENTS);
+                JsonNode dataArray = datastreamBlock.get(DATA_ARRAY);
+                if (datastream == null || components == null || !components.isArray()
+                        || dataArray == null || !dataArray.isArray()) {
+                    return ctxt.reportInputMismatch(this, "Invalid CreateObservations request. Each element must " +
+                            "contain 'Datastream', 'components' and 'dataArray'!");
+                }
+                String[] fields = new String[components.size()];
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = components.get(i).asText();
+                }
+                for (JsonNode row : dataArray) {
+                    observations.add(parseRow(codec, datastream, fields, row));
+                }
+            }
+            return new DataArray(observations);
+        }
+
+        private ObservationEntity<?> parseRow(ObjectCodec codec, JsonNode datastream, String[] fields, JsonNode row) {
+            try {
+                ObjectNode observation = JsonNodeFactory.instance.objectNode();
+                observation.set(DATASTREAM, datastream);
+                for (int i = 0; i < fields.length && i < row.size(); i++) {
+                    JsonNode value = row.get(i);
+                    switch (fields[i]) {
+                    case COMPONENT_ID:
+                        observation.set(StaConstants.AT_IOT_ID, value);
+                        break;
+                    case COMPONENT_FOI_ID:
+                        observation.putObject(FEATURE_OF_INTEREST).set(StaConstants.AT_IOT_ID, value);
+                        break;
+                    default:
+                        observation.set(fields[i], value);
+                        break;
+                    }
+                }
+                return codec.treeToValue(observation, JSONObservation.class).toEntity(JSONBase.EntityType.FULL);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug("Could not parse dataArray row: {}", e.getMessage());
+                return null;
+            }
+        }
+    }
+}
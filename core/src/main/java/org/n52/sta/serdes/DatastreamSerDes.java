@@ -37,25 +37,20 @@ import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.locationtech.jts.io.geojson.GeoJsonWriter;
 import org.n52.series.db.beans.sta.DatastreamEntity;
-import org.n52.shetland.filter.ExpandItem;
-import org.n52.shetland.oasis.odata.query.option.QueryOptions;
-import org.n52.shetland.ogc.gml.time.Time;
 import org.n52.shetland.ogc.sta.model.DatastreamEntityDefinition;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
-import org.n52.shetland.util.DateTimeHelper;
 import org.n52.sta.serdes.json.JSONBase;
 import org.n52.sta.serdes.json.JSONDatastream;
 import org.n52.sta.serdes.util.ElementWithQueryOptions.DatastreamWithQueryOptions;
 import org.n52.sta.serdes.util.EntityPatch;
-import org.n52.sta.utils.TimeUtil;
+import org.n52.sta.serdes.util.IsoTimeWriter;
+import org.n52.sta.serdes.util.SerializationPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.Date;
 
 public class DatastreamSerDes {
 
@@ -98,46 +93,29 @@ public class DatastreamSerDes {
                 throws IOException {
             gen.writeStartObject();
             DatastreamEntity datastream = value.getEntity();
-            QueryOptions options = value.getQueryOptions();
-
-            Set<String> fieldsToSerialize = null;
-            Map<String, QueryOptions> fieldsToExpand = new HashMap<>();
-            boolean hasSelectOption = false;
-            boolean hasExpandOption = false;
-            if (options != null) {
-                if (options.hasSelectFilter()) {
-                    hasSelectOption = true;
-                    fieldsToSerialize = options.getSelectFilter().getItems();
-                }
-                if (options.hasExpandFilter()) {
-                    hasExpandOption = true;
-                    for (ExpandItem item : options.getExpandFilter().getItems()) {
-                        fieldsToExpand.put(item.getPath(), item.getQueryOptions());
-                    }
-                }
-            }
+            SerializationPlan plan = value.getPlan();
 
             // olingo @iot links
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_ID)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_ID)) {
                 writeId(gen, datastream.getStaIdentifier());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_SELF_LINK)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_SELF_LINK)) {
                 writeSelfLink(gen, datastream.getStaIdentifier());
             }
 
             // actual properties
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_NAME)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_NAME)) {
                 gen.writeStringField(STAEntityDefinition.PROP_NAME, datastream.getName());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_DESCRIPTION)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_DESCRIPTION)) {
                 gen.writeStringField(STAEntityDefinition.PROP_DESCRIPTION, datastream.getDescription());
             }
 
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_OBSERVATION_TYPE)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_OBSERVATION_TYPE)) {
                 gen.writeObjectField(STAEntityDefinition.PROP_OBSERVATION_TYPE,
                                      datastream.getObservationType().getFormat());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_UOM)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_UOM)) {
                 gen.writeObjectFieldStart(STAEntityDefinition.PROP_UOM);
                 if (datastream.getUnitOfMeasurement() != null) {
                     gen.writeStringField(STAEntityDefinition.PROP_NAME, datastream.getUnitOfMeasurement().getName());
@@ -153,31 +131,30 @@ public class DatastreamSerDes {
                 gen.writeEndObject();
             }
 
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_OBSERVED_AREA)) {
-                gen.writeFieldName(STAEntityDefinition.PROP_OBSERVED_AREA);
-                if (datastream.getGeometryEntity() != null) {
-                    gen.writeRawValue(GEO_JSON_WRITER.write(datastream.getGeometryEntity().getGeometry()));
-                } else {
-                    gen.writeNull();
-                }
+            if (plan.isSelected(STAEntityDefinition.PROP_OBSERVED_AREA)) {
+                writeGeneratedJsonField(gen,
+                                        STAEntityDefinition.PROP_OBSERVED_AREA,
+                                        datastream.getGeometryEntity() != null
+                                                ? GEO_JSON_WRITER.write(datastream.getGeometryEntity().getGeometry())
+                                                : null);
             }
 
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_RESULT_TIME)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_RESULT_TIME)) {
                 if (datastream.getResultTimeStart() != null) {
-                    Time time = TimeUtil.createTime(TimeUtil.createDateTime(datastream.getResultTimeStart()),
-                                                    TimeUtil.createDateTime(datastream.getResultTimeEnd()));
-                    gen.writeStringField(STAEntityDefinition.PROP_RESULT_TIME,
-                                         DateTimeHelper.format(time));
+                    IsoTimeWriter.writeTimeField(gen,
+                                                 STAEntityDefinition.PROP_RESULT_TIME,
+                                                 datastream.getResultTimeStart(),
+                                                 openEnded(datastream.getResultTimeEnd()));
                 } else {
                     gen.writeNullField(STAEntityDefinition.PROP_RESULT_TIME);
                 }
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_PHENOMENON_TIME)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_PHENOMENON_TIME)) {
                 if (datastream.getSamplingTimeStart() != null) {
-                    Time time = TimeUtil.createTime(TimeUtil.createDateTime(datastream.getSamplingTimeStart()),
-                                                    TimeUtil.createDateTime(datastream.getSamplingTimeEnd()));
-                    gen.writeStringField(STAEntityDefinition.PROP_PHENOMENON_TIME,
-                                         DateTimeHelper.format(time));
+                    IsoTimeWriter.writeTimeField(gen,
+                                                 STAEntityDefinition.PROP_PHENOMENON_TIME,
+                                                 datastream.getSamplingTimeStart(),
+                                                 openEnded(datastream.getSamplingTimeEnd()));
                 } else {
                     gen.writeNullField(STAEntityDefinition.PROP_PHENOMENON_TIME);
                 }
@@ -185,8 +162,8 @@ public class DatastreamSerDes {
 
             // navigation properties
             for (String navigationProperty : DatastreamEntityDefinition.NAVIGATION_PROPERTIES) {
-                if (!hasSelectOption || fieldsToSerialize.contains(navigationProperty)) {
-                    if (!hasExpandOption || fieldsToExpand.get(navigationProperty) == null) {
+                if (plan.isSelected(navigationProperty)) {
+                    if (!plan.isExpanded(navigationProperty)) {
                         writeNavigationProp(gen, navigationProperty, datastream.getStaIdentifier());
                     } else {
                         switch (navigationProperty) {
@@ -196,7 +173,7 @@ public class DatastreamSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedCollection(Collections.unmodifiableSet(datastream.getObservations()),
-                                                      fieldsToExpand.get(navigationProperty),
+                                                      plan.getExpandOptions(navigationProperty),
                                                       gen,
                                                       serializers);
                             }
@@ -207,7 +184,7 @@ public class DatastreamSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedEntity(datastream.getObservableProperty(),
-                                                  fieldsToExpand.get(navigationProperty),
+                                                  plan.getExpandOptions(navigationProperty),
                                                   gen,
                                                   serializers);
                             }
@@ -218,7 +195,7 @@ public class DatastreamSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedEntity(datastream.getThing(),
-                                                  fieldsToExpand.get(navigationProperty),
+                                                  plan.getExpandOptions(navigationProperty),
                                                   gen,
                                                   serializers);
                             }
@@ -229,7 +206,7 @@ public class DatastreamSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedEntity(datastream.getProcedure(),
-                                                  fieldsToExpand.get(navigationProperty),
+                                                  plan.getExpandOptions(navigationProperty),
                                                   gen,
                                                   serializers);
                             }
@@ -242,6 +219,14 @@ public class DatastreamSerDes {
             }
             gen.writeEndObject();
         }
+
+        /**
+         * A Datastream with a start but no end time is written as a period ending now, as done by
+         * {@link org.n52.sta.utils.TimeUtil#createDateTime} for a missing end.
+         */
+        private Date openEnded(Date end) {
+            return end != null ? end : new Date();
+        }
     }
 
 
@@ -36,22 +36,19 @@ import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.n52.series.db.beans.sta.HistoricalLocationEntity;
-import org.n52.shetland.filter.ExpandItem;
-import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.shetland.ogc.sta.model.HistoricalLocationEntityDefinition;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
 import org.n52.sta.serdes.json.JSONBase;
 import org.n52.sta.serdes.json.JSONHistoricalLocation;
 import org.n52.sta.serdes.util.ElementWithQueryOptions.HistoricalLocationWithQueryOptions;
 import org.n52.sta.serdes.util.EntityPatch;
+import org.n52.sta.serdes.util.IsoTimeWriter;
+import org.n52.sta.serdes.util.SerializationPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
 
 public class HistoricalLocationSerDes {
 
@@ -91,42 +88,25 @@ public class HistoricalLocationSerDes {
                               SerializerProvider serializers) throws IOException {
             gen.writeStartObject();
             HistoricalLocationEntity histLoc = value.getEntity();
-            QueryOptions options = value.getQueryOptions();
-
-            Set<String> fieldsToSerialize = null;
-            Map<String, QueryOptions> fieldsToExpand = new HashMap<>();
-            boolean hasSelectOption = false;
-            boolean hasExpandOption = false;
-            if (options != null) {
-                if (options.hasSelectFilter()) {
-                    hasSelectOption = true;
-                    fieldsToSerialize = options.getSelectFilter().getItems();
-                }
-                if (options.hasExpandFilter()) {
-                    hasExpandOption = true;
-                    for (ExpandItem item : options.getExpandFilter().getItems()) {
-                        fieldsToExpand.put(item.getPath(), item.getQueryOptions());
-                    }
-                }
-            }
+            SerializationPlan plan = value.getPlan();
 
             // olingo @iot links
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_ID)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_ID)) {
                 writeId(gen, histLoc.getStaIdentifier());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_SELF_LINK)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_SELF_LINK)) {
                 writeSelfLink(gen, histLoc.getStaIdentifier());
             }
 
             // actual properties
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_TIME)) {
-                gen.writeStringField(STAEntityDefinition.PROP_TIME, histLoc.getTime().toInstant().toString());
+            if (plan.isSelected(STAEntityDefinition.PROP_TIME)) {
+                IsoTimeWriter.writeInstantField(gen, STAEntityDefinition.PROP_TIME, histLoc.getTime());
             }
 
             // navigation properties
             for (String navigationProperty : HistoricalLocationEntityDefinition.NAVIGATION_PROPERTIES) {
-                if (!hasSelectOption || fieldsToSerialize.contains(navigationProperty)) {
-                    if (!hasExpandOption || fieldsToExpand.get(navigationProperty) == null) {
+                if (plan.isSelected(navigationProperty)) {
+                    if (!plan.isExpanded(navigationProperty)) {
                         writeNavigationProp(gen, navigationProperty, histLoc.getStaIdentifier());
                     } else {
                         switch (navigationProperty) {
@@ -136,7 +116,7 @@ public class HistoricalLocationSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedEntity(histLoc.getThing(),
-                                                  fieldsToExpand.get(navigationProperty),
+                                                  plan.getExpandOptions(navigationProperty),
                                                   gen,
                                                   serializers);
                             }
@@ -147,7 +127,7 @@ public class HistoricalLocationSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedCollection(Collections.unmodifiableSet(histLoc.getLocations()),
-                                                      fieldsToExpand.get(navigationProperty),
+                                                      plan.getExpandOptions(navigationProperty),
                                                       gen,
                                                       serializers);
                             }
@@ -37,22 +37,18 @@ import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.locationtech.jts.io.geojson.GeoJsonWriter;
 import org.n52.series.db.beans.sta.LocationEntity;
-import org.n52.shetland.filter.ExpandItem;
-import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.shetland.ogc.sta.model.LocationEntityDefinition;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
 import org.n52.sta.serdes.json.JSONBase;
 import org.n52.sta.serdes.json.JSONLocation;
 import org.n52.sta.serdes.util.ElementWithQueryOptions.LocationWithQueryOptions;
 import org.n52.sta.serdes.util.EntityPatch;
+import org.n52.sta.serdes.util.SerializationPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
 
 public class LocationSerDes {
 
@@ -93,55 +89,39 @@ public class LocationSerDes {
                 throws IOException {
             gen.writeStartObject();
             LocationEntity location = value.getEntity();
-            QueryOptions options = value.getQueryOptions();
-
-            Set<String> fieldsToSerialize = null;
-            Map<String, QueryOptions> fieldsToExpand = new HashMap<>();
-            boolean hasSelectOption = false;
-            boolean hasExpandOption = false;
-            if (options != null) {
-                if (options.hasSelectFilter()) {
-                    hasSelectOption = true;
-                    fieldsToSerialize = options.getSelectFilter().getItems();
-                }
-                if (options.hasExpandFilter()) {
-                    hasExpandOption = true;
-                    for (ExpandItem item : options.getExpandFilter().getItems()) {
-                        fieldsToExpand.put(item.getPath(), item.getQueryOptions());
-                    }
-                }
-            }
+            SerializationPlan plan = value.getPlan();
 
             // olingo @iot links
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_ID)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_ID)) {
                 writeId(gen, location.getStaIdentifier());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_SELF_LINK)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_SELF_LINK)) {
                 writeSelfLink(gen, location.getStaIdentifier());
             }
 
             // actual properties
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_NAME)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_NAME)) {
                 gen.writeStringField(STAEntityDefinition.PROP_NAME, location.getName());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_DESCRIPTION)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_DESCRIPTION)) {
                 gen.writeStringField(STAEntityDefinition.PROP_DESCRIPTION, location.getDescription());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_ENCODINGTYPE)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_ENCODINGTYPE)) {
                 // only write out encodingtype if there is a location present
                 if (location.isSetGeometry()) {
                     gen.writeStringField(STAEntityDefinition.PROP_ENCODINGTYPE, ENCODINGTYPE_GEOJSON);
                 }
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_LOCATION)) {
-                gen.writeFieldName(STAEntityDefinition.PROP_LOCATION);
-                gen.writeRawValue(GEO_JSON_WRITER.write(location.getGeometryEntity().getGeometry()));
+            if (plan.isSelected(STAEntityDefinition.PROP_LOCATION)) {
+                writeGeneratedJsonField(gen,
+                                        STAEntityDefinition.PROP_LOCATION,
+                                        GEO_JSON_WRITER.write(location.getGeometryEntity().getGeometry()));
             }
 
             // navigation properties
             for (String navigationProperty : LocationEntityDefinition.NAVIGATION_PROPERTIES) {
-                if (!hasSelectOption || fieldsToSerialize.contains(navigationProperty)) {
-                    if (!hasExpandOption || fieldsToExpand.get(navigationProperty) == null) {
+                if (plan.isSelected(navigationProperty)) {
+                    if (!plan.isExpanded(navigationProperty)) {
                         writeNavigationProp(gen, navigationProperty, location.getStaIdentifier());
                     } else {
                         switch (navigationProperty) {
@@ -151,7 +131,7 @@ public class LocationSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedCollection(Collections.unmodifiableSet(location.getThings()),
-                                                      fieldsToExpand.get(navigationProperty),
+                                                      plan.getExpandOptions(navigationProperty),
                                                       gen,
                                                       serializers);
                             }
@@ -162,7 +142,7 @@ public class LocationSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedCollection(Collections.unmodifiableSet(location.getHistoricalLocations()),
-                                                      fieldsToExpand.get(navigationProperty),
+                                                      plan.getExpandOptions(navigationProperty),
                                                       gen,
                                                       serializers);
                             }
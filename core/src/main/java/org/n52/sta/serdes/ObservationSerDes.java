@@ -32,34 +32,24 @@ package org.n52.sta.serdes;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 import org.n52.series.db.beans.parameter.ParameterEntity;
 import org.n52.series.db.beans.parameter.ParameterJsonEntity;
 import org.n52.series.db.beans.sta.ObservationEntity;
-import org.n52.shetland.filter.ExpandItem;
-import org.n52.shetland.oasis.odata.query.option.QueryOptions;
-import org.n52.shetland.ogc.gml.time.Time;
-import org.n52.shetland.ogc.gml.time.TimeInstant;
-import org.n52.shetland.ogc.gml.time.TimePeriod;
 import org.n52.shetland.ogc.sta.model.ObservationEntityDefinition;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
-import org.n52.shetland.util.DateTimeHelper;
 import org.n52.sta.serdes.json.JSONBase;
 import org.n52.sta.serdes.json.JSONObservation;
 import org.n52.sta.serdes.util.ElementWithQueryOptions.ObservationWithQueryOptions;
 import org.n52.sta.serdes.util.EntityPatch;
+import org.n52.sta.serdes.util.IsoTimeWriter;
+import org.n52.sta.serdes.util.SerializationPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
 
 public class ObservationSerDes {
 
@@ -100,72 +90,59 @@ public class ObservationSerDes {
                 throws IOException {
             gen.writeStartObject();
             ObservationEntity<?> observation = value.getEntity();
-            QueryOptions options = value.getQueryOptions();
-
-            Set<String> fieldsToSerialize = null;
-            Map<String, QueryOptions> fieldsToExpand = new HashMap<>();
-            boolean hasSelectOption = false;
-            boolean hasExpandOption = false;
-            if (options != null) {
-                if (options.hasSelectFilter()) {
-                    hasSelectOption = true;
-                    fieldsToSerialize = options.getSelectFilter().getItems();
-                }
-                if (options.hasExpandFilter()) {
-                    hasExpandOption = true;
-                    for (ExpandItem item : options.getExpandFilter().getItems()) {
-                        fieldsToExpand.put(item.getPath(), item.getQueryOptions());
-                    }
-                }
-            }
+            SerializationPlan plan = value.getPlan();
 
             // olingo @iot links
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_ID)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_ID)) {
                 writeId(gen, observation.getStaIdentifier());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_SELF_LINK)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_SELF_LINK)) {
                 writeSelfLink(gen, observation.getStaIdentifier());
             }
 
             // actual properties
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_RESULT)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_RESULT)) {
                 gen.writeStringField(STAEntityDefinition.PROP_RESULT, observation.getValue().toString());
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_RESULT_TIME)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_RESULT_TIME)) {
                 if (observation.hasResultTime()) {
-                    gen.writeStringField(STAEntityDefinition.PROP_RESULT_TIME,
-                                         observation.getResultTime().toInstant().toString());
+                    IsoTimeWriter.writeInstantField(gen,
+                                                    STAEntityDefinition.PROP_RESULT_TIME,
+                                                    observation.getResultTime());
                 } else {
                     gen.writeNullField(STAEntityDefinition.PROP_RESULT_TIME);
                 }
             }
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_PHENOMENON_TIME)) {
-                String phenomenonTime = DateTimeHelper.format(createPhenomenonTime(observation));
-                gen.writeStringField(STAEntityDefinition.PROP_PHENOMENON_TIME, phenomenonTime);
+            if (plan.isSelected(STAEntityDefinition.PROP_PHENOMENON_TIME)) {
+                IsoTimeWriter.writeTimeField(gen,
+                                             STAEntityDefinition.PROP_PHENOMENON_TIME,
+                                             observation.getSamplingTimeStart(),
+                                             observation.getSamplingTimeEnd());
             }
 
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_RESULT_QUALITY)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_RESULT_QUALITY)) {
                 gen.writeNullField(STAEntityDefinition.PROP_RESULT_QUALITY);
             }
 
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_VALID_TIME)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_VALID_TIME)) {
                 if (observation.isSetValidTime()) {
-                    gen.writeStringField(STAEntityDefinition.PROP_VALID_TIME,
-                                         DateTimeHelper.format(createValidTime(observation)));
+                    IsoTimeWriter.writeTimeField(gen,
+                                                 STAEntityDefinition.PROP_VALID_TIME,
+                                                 observation.getValidTimeStart(),
+                                                 observation.getValidTimeEnd());
                 } else {
                     gen.writeNullField(STAEntityDefinition.PROP_VALID_TIME);
                 }
             }
 
-            if (!hasSelectOption || fieldsToSerialize.contains(STAEntityDefinition.PROP_PARAMETERS)) {
+            if (plan.isSelected(STAEntityDefinition.PROP_PARAMETERS)) {
                 gen.writeArrayFieldStart(STAEntityDefinition.PROP_PARAMETERS);
                 if (observation.hasParameters()) {
                     for (ParameterEntity<?> parameter : observation.getParameters()) {
                         gen.writeStartObject();
                         gen.writeStringField("name", parameter.getName());
                         if (parameter instanceof ParameterJsonEntity) {
-                            ObjectMapper mapper = new ObjectMapper();
-                            gen.writeObjectField(VALUE, mapper.readTree(parameter.getValueAsString()));
+                            writeStoredJsonField(gen, VALUE, parameter.getValueAsString());
                         } else {
                             gen.writeStringField(VALUE, parameter.getValueAsString());
                         }
@@ -177,8 +154,8 @@ public class ObservationSerDes {
 
             // navigation properties
             for (String navigationProperty : ObservationEntityDefinition.NAVIGATION_PROPERTIES) {
-                if (!hasSelectOption || fieldsToSerialize.contains(navigationProperty)) {
-                    if (!hasExpandOption || fieldsToExpand.get(navigationProperty) == null) {
+                if (plan.isSelected(navigationProperty)) {
+                    if (!plan.isExpanded(navigationProperty)) {
                         writeNavigationProp(gen, navigationProperty, observation.getStaIdentifier());
                     } else {
                         switch (navigationProperty) {
@@ -188,7 +165,7 @@ public class ObservationSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedEntity(observation.getDatastream(),
-                                                  fieldsToExpand.get(navigationProperty),
+                                                  plan.getExpandOptions(navigationProperty),
                                                   gen,
                                                   serializers);
                             }
@@ -199,7 +176,7 @@ public class ObservationSerDes {
                             } else {
                                 gen.writeFieldName(navigationProperty);
                                 writeNestedEntity(observation.getFeature(),
-                                                  fieldsToExpand.get(navigationProperty),
+                                                  plan.getExpandOptions(navigationProperty),
                                                   gen,
                                                   serializers);
                             }
@@ -212,36 +189,6 @@ public class ObservationSerDes {
             }
             gen.writeEndObject();
         }
-
-        private Time createPhenomenonTime(ObservationEntity<?> observation) {
-            final DateTime start = new DateTime(observation.getSamplingTimeStart(), DateTimeZone.UTC);
-            DateTime end;
-            if (observation.getSamplingTimeEnd() != null) {
-                end = new DateTime(observation.getSamplingTimeEnd(), DateTimeZone.UTC);
-            } else {
-                end = start;
-            }
-            return createTime(start, end);
-        }
-
-        private Time createValidTime(ObservationEntity<?> observation) {
-            final DateTime start = new DateTime(observation.getValidTimeStart(), DateTimeZone.UTC);
-            DateTime end;
-            if (observation.getValidTimeEnd() != null) {
-                end = new DateTime(observation.getValidTimeEnd(), DateTimeZone.UTC);
-            } else {
-                end = start;
-            }
-            return createTime(start, end);
-        }
-
-        private Time createTime(DateTime start, DateTime end) {
-            if (start.equals(end)) {
-                return new TimeInstant(start);
-            } else {
-                return new TimePeriod(start, end);
-            }
-        }
     }
 
 
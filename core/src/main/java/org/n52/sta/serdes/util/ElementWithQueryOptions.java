@@ -47,11 +47,39 @@ public abstract class ElementWithQueryOptions<P extends HibernateRelations.HasId
 
     protected P entity;
     protected QueryOptions queryOptions;
+    private SerializationPlan plan;
 
     public QueryOptions getQueryOptions() {
         return queryOptions;
     }
 
+    /**
+     * Returns the plan of the properties to be serialized. Compiled from the QueryOptions on first access unless
+     * a plan was shared via {@link #sharePlan(SerializationPlan)}.
+     *
+     * @return plan
+     */
+    public SerializationPlan getPlan() {
+        if (plan == null) {
+            plan = SerializationPlan.of(queryOptions);
+        }
+        return plan;
+    }
+
+    /**
+     * Uses the given plan if it was compiled from the QueryOptions of this element. Used to share the plan of a
+     * collection between all its elements.
+     *
+     * @param plan plan of the collection
+     * @return this element
+     */
+    public ElementWithQueryOptions<P> sharePlan(SerializationPlan plan) {
+        if (plan.getQueryOptions() == queryOptions) {
+            this.plan = plan;
+        }
+        return this;
+    }
+
     public P getEntity() {
         return entity;
     }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.serdes.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.util.DateTimeHelper;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Writes ISO-8601 timestamps directly from epoch millis into a {@link JsonGenerator}. Replaces wrapping every
+ * {@link Date} in Joda {@link DateTime} and shetland {@link org.n52.shetland.ogc.gml.time.Time} objects and
+ * formatting them via {@link DateTimeHelper}. Characters are written into a reusable per-thread buffer that is
+ * passed to the generator, so no intermediate Strings are created.
+ * <p>
+ * Output is identical to the previous formatting: {@link #writeTimeField} matches {@link DateTimeHelper#format},
+ * {@link #writeInstantField} matches {@link java.time.Instant#toString()}. Dates outside of the years 0000-9999
+ * are passed to the previous formatting.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public final class IsoTimeWriter {
+
+    // 0000-01-01T00:00:00.000Z
+    private static final long MIN_MILLIS = -62167219200000L;
+    // 9999-12-31T23:59:59.999Z
+    private static final long MAX_MILLIS = 253402300799999L;
+
+    private static final int SECONDS_PER_DAY = 86400;
+    private static final int MILLIS_PER_SECOND = 1000;
+    private static final int NANOS_PER_MILLI = 1000000;
+    private static final int NANOS_PER_MICRO = 1000;
+    private static final char[] INSTANT_DESIGNATOR = new char[] {'Z'};
+    private static final char[] TIME_DESIGNATOR = getTimeDesignator();
+
+    // yyyy-MM-ddTHH:mm:ss.SSSSSSSSS+00:00/yyyy-MM-ddTHH:mm:ss.SSSSSSSSS+00:00
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[80]);
+
+    private IsoTimeWriter() {
+    }
+
+    /**
+     * Writes a time instant or period as formatted by {@link DateTimeHelper#format}. A period is written if end is
+     * given and differs from start.
+     *
+     * @param gen       generator
+     * @param fieldName name of the field
+     * @param start     start of the time. Must not be null
+     * @param end       end of the time. May be null
+     * @throws IOException if writing fails
+     */
+    public static void writeTimeField(JsonGenerator gen, String fieldName, Date start, Date end)
+            throws IOException {
+        long startMillis = start.getTime();
+        long endMillis = (end != null) ? end.getTime() : startMillis;
+        if (!isSupported(startMillis) || !isSupported(endMillis)) {
+            DateTime startTime = new DateTime(startMillis, DateTimeZone.UTC);
+            String formatted = (startMillis == endMillis)
+                    ? DateTimeHelper.format(new TimeInstant(startTime))
+                    : DateTimeHelper.format(new TimePeriod(startTime, new DateTime(endMillis, DateTimeZone.UTC)));
+            gen.writeStringField(fieldName, formatted);
+            return;
+        }
+        char[] buffer = BUFFER.get();
+        int pos = writeTime(buffer, 0, startMillis);
+        if (startMillis != endMillis) {
+            buffer[pos++] = '/';
+            pos = writeTime(buffer, pos, endMillis);
+        }
+        gen.writeFieldName(fieldName);
+        gen.writeString(buffer, 0, pos);
+    }
+
+    /**
+     * Writes a time instant as formatted by {@link java.time.Instant#toString()}, i.e. fractional seconds are only
+     * written if present. Nanoseconds of {@link Timestamp}s are respected.
+     *
+     * @param gen       generator
+     * @param fieldName name of the field
+     * @param date      time to be written. Must not be null
+     * @throws IOException if writing fails
+     */
+    public static void writeInstantField(JsonGenerator gen, String fieldName, Date date) throws IOException {
+        long millis = date.getTime();
+        if (!isSupported(millis)) {
+            gen.writeStringField(fieldName, date.toInstant().toString());
+            return;
+        }
+        int nanos = (date instanceof Timestamp)
+                ? ((Timestamp) date).getNanos()
+                : (int) Math.floorMod(millis, MILLIS_PER_SECOND) * NANOS_PER_MILLI;
+        char[] buffer = BUFFER.get();
+        int pos = writeDateTime(buffer, 0, Math.floorDiv(millis, MILLIS_PER_SECOND));
+        if (nanos != 0) {
+            buffer[pos++] = '.';
+            if (nanos % NANOS_PER_MILLI == 0) {
+                pos = writeDigits(buffer, pos, nanos / NANOS_PER_MILLI, 3);
+            } else if (nanos % NANOS_PER_MICRO == 0) {
+                pos = writeDigits(buffer, pos, nanos / NANOS_PER_MICRO, 6);
+            } else {
+                pos = writeDigits(buffer, pos, nanos, 9);
+            }
+        }
+        pos = writeChars(buffer, pos, INSTANT_DESIGNATOR);
+        gen.writeFieldName(fieldName);
+        gen.writeString(buffer, 0, pos);
+    }
+
+    private static boolean isSupported(long millis) {
+        return millis >= MIN_MILLIS && millis <= MAX_MILLIS;
+    }
+
+    private static int writeTime(char[] buffer, int pos, long millis) {
+        int next = writeDateTime(buffer, pos, Math.floorDiv(millis, MILLIS_PER_SECOND));
+        buffer[next++] = '.';
+        next = writeDigits(buffer, next, (int) Math.floorMod(millis, MILLIS_PER_SECOND), 3);
+        return writeChars(buffer, next, TIME_DESIGNATOR);
+    }
+
+    /**
+     * Writes yyyy-MM-ddTHH:mm:ss. Conversion of days to the civil date follows the algorithm by Howard Hinnant,
+     * see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+     */
+    private static int writeDateTime(char[] buffer, int pos, long epochSecond) {
+        long days = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(epochSecond, SECONDS_PER_DAY);
+
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        int next = writeDigits(buffer, pos, year, 4);
+        buffer[next++] = '-';
+        next = writeDigits(buffer, next, month, 2);
+        buffer[next++] = '-';
+        next = writeDigits(buffer, next, day, 2);
+        buffer[next++] = 'T';
+        next = writeDigits(buffer, next, secondOfDay / 3600, 2);
+        buffer[next++] = ':';
+        next = writeDigits(buffer, next, secondOfDay / 60 % 60, 2);
+        buffer[next++] = ':';
+        return writeDigits(buffer, next, secondOfDay % 60, 2);
+    }
+
+    private static int writeDigits(char[] buffer, int pos, int value, int digits) {
+        int remaining = value;
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return pos + digits;
+    }
+
+    private static int writeChars(char[] buffer, int pos, char[] chars) {
+        System.arraycopy(chars, 0, buffer, pos, chars.length);
+        return pos + chars.length;
+    }
+
+    /**
+     * Gets the designator of UTC used by {@link DateTimeHelper}, so that output does not change if it is configured
+     * differently.
+     */
+    private static char[] getTimeDesignator() {
+        String epoch = "1970-01-01T00:00:00.000";
+        String formatted = DateTimeHelper.format(new TimeInstant(new DateTime(0L, DateTimeZone.UTC)));
+        return (formatted != null && formatted.startsWith(epoch))
+                ? formatted.substring(epoch.length()).toCharArray()
+                : INSTANT_DESIGNATOR;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.serdes.util;
+
+import org.n52.shetland.filter.ExpandItem;
+import org.n52.shetland.oasis.odata.query.option.QueryOptions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Properties to be serialized and expanded as given by $select and $expand. Compiled once from the
+ * {@link QueryOptions} of a request and shared by all elements of a collection, so that serializers do not evaluate
+ * the QueryOptions for every entity.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public final class SerializationPlan {
+
+    private static final SerializationPlan ALL = new SerializationPlan(null, null, Collections.emptyMap());
+
+    private final QueryOptions queryOptions;
+
+    // null if all properties are selected
+    private final Set<String> selected;
+
+    private final Map<String, QueryOptions> expanded;
+
+    private SerializationPlan(QueryOptions queryOptions, Set<String> selected, Map<String, QueryOptions> expanded) {
+        this.queryOptions = queryOptions;
+        this.selected = selected;
+        this.expanded = expanded;
+    }
+
+    /**
+     * Compiles the plan for the given QueryOptions.
+     *
+     * @param queryOptions QueryOptions of the request. May be null
+     * @return plan
+     */
+    public static SerializationPlan of(QueryOptions queryOptions) {
+        if (queryOptions == null || !(queryOptions.hasSelectFilter() || queryOptions.hasExpandFilter())) {
+            return (queryOptions == null) ? ALL : new SerializationPlan(queryOptions, null, Collections.emptyMap());
+        }
+        Set<String> selected = queryOptions.hasSelectFilter()
+                ? Collections.unmodifiableSet(new HashSet<>(queryOptions.getSelectFilter().getItems()))
+                : null;
+        Map<String, QueryOptions> expanded = new HashMap<>();
+        if (queryOptions.hasExpandFilter()) {
+            for (ExpandItem item : queryOptions.getExpandFilter().getItems()) {
+                expanded.put(item.getPath(), item.getQueryOptions());
+            }
+        }
+        return new SerializationPlan(queryOptions, selected, Collections.unmodifiableMap(expanded));
+    }
+
+    /**
+     * @return QueryOptions this plan was compiled from
+     */
+    public QueryOptions getQueryOptions() {
+        return queryOptions;
+    }
+
+    /**
+     * @param property name of the property
+     * @return true if the property is to be serialized
+     */
+    public boolean isSelected(String property) {
+        return selected == null || selected.contains(property);
+    }
+
+    /**
+     * @param navigationProperty name of the navigation property
+     * @return true if the navigation property is to be expanded
+     */
+    public boolean isExpanded(String navigationProperty) {
+        return expanded.get(navigationProperty) != null;
+    }
+
+    /**
+     * @param navigationProperty name of the navigation property
+     * @return QueryOptions of the expanded navigation property. null if it is not expanded
+     */
+    public QueryOptions getExpandOptions(String navigationProperty) {
+        return expanded.get(navigationProperty);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.utils;
+
+import org.n52.shetland.filter.SkipTopFilter;
+import org.n52.shetland.oasis.odata.ODataConstants;
+import org.n52.shetland.oasis.odata.query.option.QueryOptions;
+import org.n52.shetland.ogc.filter.FilterClause;
+import org.n52.shetland.ogc.filter.FilterConstants;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU-Cache holding parsed QueryOptions keyed by the query string they were parsed from.
+ * Clients tend to send the same query strings (e.g. the same $filter) repeatedly, so parsing the query string
+ * (including the $filter expression tree) can be skipped on repeated requests. Cached QueryOptions are shared
+ * between requests and must not be modified.
+ * $top and $skip are not part of the key, as they change with every page while paging through a collection via
+ * @iot.nextLink. The remaining options are parsed once and $top and $skip are bound to a copy of the cached
+ * QueryOptions. Literals inside $filter are part of the key, i.e. each distinct $filter is parsed once.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+public class QueryOptionsCache {
+
+    private static final String AMPERSAND = "&";
+    private static final String TOP = ODataConstants.QueryOptions.TOP + "=";
+    private static final String SKIP = ODataConstants.QueryOptions.SKIP + "=";
+
+    // Only plain non-negative numbers are bound directly. Everything else is left to the parser for validation
+    private static final Pattern NUMBER = Pattern.compile("\\d{1,18}");
+
+    private final int capacity;
+    private final Map<String, QueryOptions> cache;
+
+    public QueryOptionsCache(@Value("${server.feature.queryOptionsCacheSize:1000}") int capacity) {
+        this.capacity = capacity;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, QueryOptions>(16, 0.75f, true) {
+            private static final long serialVersionUID = -2861476215032485371L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<String, QueryOptions> eldest) {
+                return size() > QueryOptionsCache.this.capacity;
+            }
+        });
+    }
+
+    /**
+     * Gets the QueryOptions parsed from the given query string. Parses and caches them if not cached yet.
+     *
+     * @param queryString raw query string
+     * @param parser      parser used if the query string is not cached
+     * @return parsed QueryOptions
+     */
+    public QueryOptions get(String queryString, Function<String, QueryOptions> parser) {
+        if (capacity <= 0) {
+            return parser.apply(queryString);
+        }
+        String top = null;
+        String skip = null;
+        boolean unbound = false;
+        List<String> remaining = new ArrayList<>();
+        for (String option : queryString.split(AMPERSAND)) {
+            String decoded = UriUtils.decode(option, Charset.defaultCharset());
+            if (top == null && isNumericOption(decoded, TOP)) {
+                top = decoded.substring(TOP.length());
+            } else if (skip == null && isNumericOption(decoded, SKIP)) {
+                skip = decoded.substring(SKIP.length());
+            } else {
+                // Repeated or non-numeric $top/$skip are left to the parser, which reports them as errors
+                unbound |= decoded.startsWith(TOP) || decoded.startsWith(SKIP);
+                remaining.add(option);
+            }
+        }
+        if ((top == null && skip == null) || unbound || remaining.isEmpty()) {
+            return getParsed(queryString, parser);
+        }
+
+        QueryOptions cached = getParsed(String.join(AMPERSAND, remaining), parser);
+        Set<FilterClause> filters = new HashSet<>(cached.getAllFilters());
+        if (top != null) {
+            // Replaces the default $top added by the parser
+            filters.removeIf(filter -> filter instanceof SkipTopFilter
+                    && ((SkipTopFilter) filter).getOperator() == FilterConstants.SkipTopOperator.Top);
+            filters.add(new SkipTopFilter(FilterConstants.SkipTopOperator.Top, Long.valueOf(top)));
+        }
+        if (skip != null) {
+            filters.add(new SkipTopFilter(FilterConstants.SkipTopOperator.Skip, Long.valueOf(skip)));
+        }
+        return new QueryOptions(cached.getBaseURI(), filters);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private QueryOptions getParsed(String queryString, Function<String, QueryOptions> parser) {
+        QueryOptions queryOptions = cache.get(queryString);
+        if (queryOptions == null) {
+            // Parse outside of the lock. Concurrent misses on the same query string parse twice, which is harmless
+            queryOptions = parser.apply(queryString);
+            cache.put(queryString, queryOptions);
+        }
+        return queryOptions;
+    }
+
+    private static boolean isNumericOption(String option, String prefix) {
+        return option.startsWith(prefix) && NUMBER.matcher(option.substring(prefix.length())).matches();
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.utils;
+
+import org.n52.shetland.ogc.sta.StaConstants;
+import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
+import org.n52.shetland.ogc.sta.model.DatastreamEntityDefinition;
+import org.n52.shetland.ogc.sta.model.FeatureOfInterestEntityDefinition;
+import org.n52.shetland.ogc.sta.model.HistoricalLocationEntityDefinition;
+import org.n52.shetland.ogc.sta.model.LocationEntityDefinition;
+import org.n52.shetland.ogc.sta.model.ObservationEntityDefinition;
+import org.n52.shetland.ogc.sta.model.ObservedPropertyEntityDefinition;
+import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
+import org.n52.shetland.ogc.sta.model.SensorEntityDefinition;
+import org.n52.shetland.ogc.sta.model.ThingEntityDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed resource path of a request URL or MQTT topic, e.g. /Datastreams(52)/Thing/name.
+ * The path is tokenized in a single pass. Valid navigations are looked up in a table built once from the
+ * navigation properties of the {@link STAEntityDefinition}s instead of matching the path against regular expressions.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public final class ResourcePath implements StaConstants {
+
+    private static final String URL_INVALID = "Url is invalid. ";
+    private static final String REF = "$ref";
+    private static final String VALUE = "$value";
+
+    private static final String[] ROOT_COLLECTIONS = STAEntityDefinition.ALLCOLLECTIONS;
+
+    // Navigation properties by collection name
+    private static final Map<String, String[]> NAVIGATION = new HashMap<>();
+
+    // Collection name by navigation property or collection name
+    private static final Map<String, String> COLLECTION_NAMES = new HashMap<>();
+
+    static {
+        registerNavigation(DATASTREAMS, DatastreamEntityDefinition.NAVIGATION_PROPERTIES);
+        registerNavigation(FEATURES_OF_INTEREST, FeatureOfInterestEntityDefinition.NAVIGATION_PROPERTIES);
+        registerNavigation(HISTORICAL_LOCATIONS, HistoricalLocationEntityDefinition.NAVIGATION_PROPERTIES);
+        registerNavigation(LOCATIONS, LocationEntityDefinition.NAVIGATION_PROPERTIES);
+        registerNavigation(OBSERVATIONS, ObservationEntityDefinition.NAVIGATION_PROPERTIES);
+        registerNavigation(OBSERVED_PROPERTIES, ObservedPropertyEntityDefinition.NAVIGATION_PROPERTIES);
+        registerNavigation(SENSORS, SensorEntityDefinition.NAVIGATION_PROPERTIES);
+        registerNavigation(THINGS, ThingEntityDefinition.NAVIGATION_PROPERTIES);
+
+        COLLECTION_NAMES.put(THING, THINGS);
+        COLLECTION_NAMES.put(LOCATION, LOCATIONS);
+        COLLECTION_NAMES.put(HISTORICAL_LOCATION, HISTORICAL_LOCATIONS);
+        COLLECTION_NAMES.put(SENSOR, SENSORS);
+        COLLECTION_NAMES.put(DATASTREAM, DATASTREAMS);
+        COLLECTION_NAMES.put(OBSERVATION, OBSERVATIONS);
+        COLLECTION_NAMES.put(OBSERVED_PROPERTY, OBSERVED_PROPERTIES);
+        COLLECTION_NAMES.put(FEATURE_OF_INTEREST, FEATURES_OF_INTEREST);
+        for (String collection : ROOT_COLLECTIONS) {
+            COLLECTION_NAMES.put(collection, collection);
+        }
+    }
+
+    private final List<Segment> segments;
+    private final String property;
+    private final boolean ref;
+    private final boolean value;
+
+    private ResourcePath(List<Segment> segments, String property, boolean ref, boolean value) {
+        this.segments = Collections.unmodifiableList(segments);
+        this.property = property;
+        this.ref = ref;
+        this.value = value;
+    }
+
+    private static void registerNavigation(String collection, Collection<String> navigationProperties) {
+        NAVIGATION.put(collection, navigationProperties.toArray(new String[0]));
+    }
+
+    /**
+     * Parses the given path. A leading and a trailing slash are ignored.
+     * The path must start with a collection, optionally addressing an Entity by id, e.g. Things or Things(52).
+     * Each following navigation property must be valid for the Entity addressed by the previous segment.
+     * Plural navigation properties may address an Entity by id, e.g. Things(52)/Datastreams(1).
+     * The path may end with a property of the addressed Entity (optionally followed by $value) or with $ref.
+     *
+     * @param path path to be parsed
+     * @return parsed path
+     * @throws STAInvalidUrlException if the path is malformed
+     */
+    public static ResourcePath parse(String path) throws STAInvalidUrlException {
+        int pos = (path.length() > 0 && path.charAt(0) == '/') ? 1 : 0;
+        int length = (path.length() > pos && path.charAt(path.length() - 1) == '/') ? path.length() - 1 : path.length();
+        if (pos >= length) {
+            throw new STAInvalidUrlException(URL_INVALID + "Resource path is empty.");
+        }
+
+        List<Segment> segments = new ArrayList<>(3);
+        String property = null;
+        boolean ref = false;
+        boolean value = false;
+        Segment previous = null;
+        int previousStart = pos;
+        while (pos < length) {
+            int nameEnd = pos;
+            while (nameEnd < length && isAsciiLetter(path.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            int end = nameEnd;
+            if (nameEnd < length && path.charAt(nameEnd) == '(') {
+                // Identifiers may contain slashes, so the segment ends after the closing bracket
+                int close = path.indexOf(')', nameEnd);
+                end = (close == -1 || close >= length) ? length : close + 1;
+            }
+            if (end < length && path.charAt(end) != '/') {
+                int slash = path.indexOf('/', end);
+                end = (slash == -1 || slash > length) ? length : slash;
+            }
+            if (ref || value || end == pos) {
+                throw invalidPath(path, previousStart, end);
+            }
+
+            if (property != null) {
+                // Only $value may follow a property
+                if (!matches(path, pos, end, VALUE)) {
+                    throw invalidPath(path, previousStart, end);
+                }
+                value = true;
+            } else if (previous != null && matches(path, pos, end, REF)) {
+                ref = true;
+            } else {
+                String name = null;
+                if (previous == null) {
+                    name = lookup(path, pos, nameEnd, ROOT_COLLECTIONS);
+                } else if (previous.isEntity()) {
+                    name = lookup(path, pos, nameEnd, NAVIGATION.get(previous.getCollection()));
+                }
+
+                if (name != null) {
+                    Segment segment = new Segment(name, COLLECTION_NAMES.get(name), parseId(path, nameEnd, end));
+                    if (segment.getId() != null && !segment.getName().equals(segment.getCollection())) {
+                        // Only collections may be addressed by id
+                        throw invalidPath(path, previousStart, end);
+                    }
+                    segments.add(segment);
+                    previous = segment;
+                } else if (previous != null && previous.isEntity() && nameEnd == end && nameEnd > pos) {
+                    property = path.substring(pos, end);
+                } else if (previous == null) {
+                    throw new STAInvalidUrlException(URL_INVALID + path.substring(pos, end)
+                                                             + " is not a valid resource.");
+                } else {
+                    throw invalidPath(path, previousStart, end);
+                }
+            }
+            previousStart = pos;
+            pos = end + 1;
+        }
+        return new ResourcePath(segments, property, ref, value);
+    }
+
+    private static String parseId(String path, int start, int end) throws STAInvalidUrlException {
+        if (start == end) {
+            return null;
+        }
+        // Identifier must be enclosed in round brackets and may not contain a closing bracket
+        if (path.charAt(start) != '(' || path.indexOf(')', start) != end - 1 || end - start < 3) {
+            throw new STAInvalidUrlException(URL_INVALID + path.substring(start, end)
+                                                     + " is not a valid identifier.");
+        }
+        return path.substring(start + 1, end - 1);
+    }
+
+    private static String lookup(String path, int start, int end, String[] candidates) {
+        for (String candidate : candidates) {
+            if (matches(path, start, end, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String path, int start, int end, String candidate) {
+        return candidate.length() == end - start && path.regionMatches(start, candidate, 0, candidate.length());
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static STAInvalidUrlException invalidPath(String path, int start, int end) {
+        return new STAInvalidUrlException(URL_INVALID + path.substring(start, end) + " is not a valid resource path.");
+    }
+
+    /**
+     * @return Segments of this path addressing Entities or collections. Never empty
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return last segment of this path
+     */
+    public Segment getTarget() {
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * @return segment preceding the last segment of this path. null if the path only consists of a single segment
+     */
+    public Segment getSource() {
+        return segments.size() > 1 ? segments.get(segments.size() - 2) : null;
+    }
+
+    /**
+     * @return property addressed by this path, e.g. name in /Things(52)/name. null if no property is addressed
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * @return true if this path addresses association links, e.g. /Things(52)/Datastreams/$ref
+     */
+    public boolean isRef() {
+        return ref;
+    }
+
+    /**
+     * @return true if this path addresses the raw value of a property, e.g. /Things(52)/name/$value
+     */
+    public boolean isValue() {
+        return value;
+    }
+
+    /**
+     * @return true if this path only consists of navigation segments
+     */
+    public boolean isNavigationOnly() {
+        return property == null && !ref;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Segment segment : segments) {
+            builder.append('/').append(segment);
+        }
+        if (property != null) {
+            builder.append('/').append(property);
+        }
+        if (value) {
+            builder.append('/').append(VALUE);
+        }
+        if (ref) {
+            builder.append('/').append(REF);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Single navigation segment of a path, e.g. Datastreams(52) or Thing.
+     */
+    public static final class Segment {
+
+        private final String name;
+        private final String collection;
+        private final String id;
+
+        Segment(String name, String collection, String id) {
+            this.name = name;
+            this.collection = collection;
+            this.id = id;
+        }
+
+        /**
+         * @return name as given in the path, e.g. Thing in /Datastreams(52)/Thing
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return name of the collection the addressed Entities belong to, e.g. Things in /Datastreams(52)/Thing
+         */
+        public String getCollection() {
+            return collection;
+        }
+
+        /**
+         * @return identifier without brackets. null if the segment is not addressed by id
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return true if this segment addresses a single Entity, either by id or by a singular navigation property
+         */
+        public boolean isEntity() {
+            return id != null || !name.equals(collection);
+        }
+
+        @Override
+        public String toString() {
+            return id == null ? name : name + "(" + id + ")";
+        }
+    }
+}
@@ -42,6 +42,7 @@ import org.n52.shetland.ogc.sta.StaConstants;
 import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
 import org.n52.shetland.ogc.sta.exception.STANotFoundException;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
+import org.n52.sta.data.ResourceValidationCache;
 import org.n52.sta.data.service.EntityServiceRepository;
 import org.n52.sta.serdes.DatastreamSerDes;
 import org.n52.sta.serdes.FeatureOfInterestSerDes;
@@ -56,7 +57,11 @@ import org.springframework.web.util.UriUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public interface STARequestUtils extends StaConstants {
 
@@ -94,7 +99,18 @@ public interface STARequestUtils extends StaConstants {
     // e.g. "name" in /Datastreams(52)/Thing/name
     String GROUPNAME_PROPERTY = "property";
 
+    // Used for bulk creation of Observations via dataArray (STA Part 1 §10.2)
+    String CREATE_OBSERVATIONS = "CreateObservations";
+    String SKIPTOKEN = "$skiptoken";
+    String AMPERSAND = "&";
+    String EQUALS_SIGN = "=";
+
     String MAPPING_PREFIX = "**/";
+
+    // Media types of responses to read requests. Binary encodings are negotiated via the Accept header
+    String MEDIA_TYPE_JSON = "application/json";
+    String MEDIA_TYPE_CBOR = "application/cbor";
+    String MEDIA_TYPE_SMILE = "application/x-jackson-smile";
     String ID = "id";
 
     // Note: This is duplicated in LocationService to allow for non-standard 'updateFOI'-feature.
@@ -422,27 +438,42 @@ public interface STARequestUtils extends StaConstants {
                     NAMED_SELECT_PATTER_IDENT_BY_THING,
             };
 
-    Pattern BY_ID_PATTERN =
-            Pattern.compile(
-                    ROUND_BRACKET_OPEN + BASE_COLLECTION_REGEX_NAMED_GROUPS + ROUND_BRACKET_CLOSE + IDENTIFIER_REGEX);
-    Pattern BY_DATASTREAM_PATTERN = Pattern.compile(IDENTIFIED_BY_DATASTREAM_REGEX);
-    Pattern BY_OBSERVATION_PATTERN = Pattern.compile(IDENTIFIED_BY_OBSERVATION_REGEX);
-    Pattern BY_HIST_LOC_PATTERN = Pattern.compile(IDENTIFIED_BY_HISTORICAL_LOCATION_REGEX);
-    Pattern BY_LOCATION_PATTERN = Pattern.compile(IDENTIFIED_BY_LOCATION_REGEX);
-    Pattern BY_THING_PATTERN = Pattern.compile(IDENTIFIED_BY_THING_REGEX);
-    Pattern BY_SENSOR_PATTERN = Pattern.compile(IDENTIFIED_BY_SENSOR_REGEX);
-    Pattern BY_OBSER_PROP_PATTERN = Pattern.compile(IDENTIFIED_BY_OBSERVED_PROPERTY_REGEX);
-    Pattern BY_FOI_PATTERN = Pattern.compile(IDENTIFIED_BY_FEATURE_OF_INTEREST_REGEX);
-
-    default QueryOptions decodeQueryString(HttpServletRequest request) {
+    /**
+     * Parses the QueryOptions of the request. Parsed QueryOptions are shared between requests with the same query
+     * string and must not be modified.
+     *
+     * @param request           request
+     * @param queryOptionsCache cache of recently parsed QueryOptions
+     * @return parsed QueryOptions
+     */
+    default QueryOptions decodeQueryString(HttpServletRequest request, QueryOptionsCache queryOptionsCache) {
         if (request.getQueryString() != null) {
-            String decoded = UriUtils.decode(request.getQueryString(), Charset.defaultCharset());
-            return QUERY_OPTIONS_FACTORY.createQueryOptions(decoded);
+            // $skiptoken is not a filter and is handled separately
+            String queryString = Arrays.stream(request.getQueryString().split(AMPERSAND))
+                                       .filter(option -> !UriUtils.decode(option, Charset.defaultCharset())
+                                                                  .startsWith(SKIPTOKEN + EQUALS_SIGN))
+                                       .collect(Collectors.joining(AMPERSAND));
+            if (queryString.isEmpty()) {
+                return QUERY_OPTIONS_FACTORY.createDummy();
+            }
+            return queryOptionsCache.get(queryString,
+                                         raw -> QUERY_OPTIONS_FACTORY.createQueryOptions(
+                                                 UriUtils.decode(raw, Charset.defaultCharset())));
         } else {
             return QUERY_OPTIONS_FACTORY.createDummy();
         }
     }
 
+    /**
+     * Extracts the continuation token used for keyset pagination from the request.
+     *
+     * @param request request
+     * @return value of $skiptoken. null if not present
+     */
+    default String decodeSkipToken(HttpServletRequest request) {
+        return request.getParameter(SKIPTOKEN);
+    }
+
     default Class collectionNameToClass(String collectionName) throws STAInvalidUrlException {
         switch (collectionName) {
         case THINGS:
@@ -520,19 +551,24 @@ public interface STARequestUtils extends StaConstants {
     default void validateResource(String requestURI,
                                   EntityServiceRepository serviceRepository)
             throws Exception {
-        String[] uriResources;
-        if (requestURI.startsWith("/")) {
-            uriResources = requestURI.substring(1).split(SLASH);
-        } else {
-            uriResources = requestURI.split(SLASH);
+        ResourcePath path = ResourcePath.parse(requestURI);
+        if (!path.isNavigationOnly()) {
+            throw new STAInvalidUrlException(URL_INVALID + requestURI + " is not a valid resource path.");
         }
+        validateResource(path, serviceRepository);
+    }
 
-        Exception ex;
-        ex = validateURISyntax(uriResources);
-        if (ex != null) {
-            throw ex;
-        }
-        ex = validateURISemantic(uriResources, serviceRepository);
+    /**
+     * Validates a given Resource Path semantically. Syntax was already checked while parsing.
+     *
+     * @param path              parsed path to the Resource.
+     * @param serviceRepository Backend Repository Factory
+     * @throws Exception if URL is not valid
+     */
+    default void validateResource(ResourcePath path,
+                                  EntityServiceRepository serviceRepository)
+            throws Exception {
+        Exception ex = validateURISemantic(path, serviceRepository);
         if (ex != null) {
             throw ex;
         }
@@ -554,99 +590,73 @@ public interface STARequestUtils extends StaConstants {
         }
     }
 
-    /**
-     * Validates a given URI syntactically.
-     *
-     * @param uriResources URI of the Request split by SLASH
-     * @return STAInvalidUrlException if URI is malformed
-     */
-    default STAInvalidUrlException validateURISyntax(String[] uriResources) {
-        // Validate URL syntax via Regex
-        // Skip validation if no navigationPath is provided as Spring already validated syntax
-        if (uriResources.length > 1) {
-            // check iteratively and fail-fast
-            for (int i = 0; i < uriResources.length; i++) {
-                if (!BY_ID_PATTERN.matcher(uriResources[i]).matches()) {
-                    // Resource is addressed by relation to other entity
-                    // e.g. Datastreams(1)/Thing
-                    if (i > 0) {
-                        // Look back at last resource and check if association is valid
-                        String resource = uriResources[i - 1] + SLASH + uriResources[i];
-                        if (!(BY_DATASTREAM_PATTERN.matcher(resource).matches()
-                                || BY_HIST_LOC_PATTERN.matcher(resource).matches()
-                                || BY_LOCATION_PATTERN.matcher(resource).matches()
-                                || BY_THING_PATTERN.matcher(resource).matches()
-                                || BY_FOI_PATTERN.matcher(resource).matches()
-                                || BY_OBSERVATION_PATTERN.matcher(resource).matches()
-                                || BY_OBSER_PROP_PATTERN.matcher(resource).matches()
-                                || BY_SENSOR_PATTERN.matcher(resource).matches()
-                                || BY_OBSER_PROP_PATTERN.matcher(resource).matches())) {
-                            return new STAInvalidUrlException(URL_INVALID
-                                                                      + uriResources[i - 1]
-                                                                      + SLASH + uriResources[i]
-                                                                      + " is not a valid resource path.");
-
-                        }
-                    } else {
-                        return new STAInvalidUrlException(URL_INVALID
-                                                                  + uriResources[i]
-                                                                  + " is not a valid resource.");
-                    }
-                }
-                // Resource is adressed by Id
-                // e.g. Things(1), no processing required
-            }
-        }
-        return null;
-    }
-
     /**
      * This function validates a given URI semantically by checking if all Entities referenced in the navigation
      * exists. As URI is syntactically valid indices can be hard-coded.
      *
-     * @param uriResources      URI of the Request split by SLASH
+     * @param path              parsed path of the Request
      * @param serviceRepository Repository for EntityServices
      * @return STAInvalidUrlException if URI is malformed
      */
-    default Exception validateURISemantic(String[] uriResources,
+    default Exception validateURISemantic(ResourcePath path,
                                           EntityServiceRepository serviceRepository) {
+        List<ResourcePath.Segment> segments = path.getSegments();
+        ResourcePath.Segment first = segments.get(0);
         // Check if this is Request to root collection. They are always valid
-        if (uriResources.length == 1 && !uriResources[0].contains(ROUND_BRACKET_OPEN)) {
+        if (segments.size() == 1 && first.getId() == null) {
             return null;
         }
         // Parse first navigation Element
-        String[] sourceEntity = splitId(uriResources[0]);
-        String sourceId = sourceEntity[1].replace(ROUND_BRACKET_CLOSE, "");
-        sourceId = sourceId.replaceAll("%2F", "/");
-        String sourceType = sourceEntity[0];
-
-        if (!serviceRepository.getEntityService(sourceType).existsEntity(sourceId)) {
-            return createNotFoundExceptionNoEntity(uriResources[0]);
+        String sourceId = first.getId().replaceAll("%2F", "/");
+        String sourceType = first.getName();
+
+        String firstType = sourceType;
+        String firstId = sourceId;
+        if (validateCached(serviceRepository,
+                           first.toString(),
+                           sourceType,
+                           sourceType,
+                           () -> serviceRepository.getEntityService(firstType).existsEntity(firstId) ? firstId : null)
+                == null) {
+            return createNotFoundExceptionNoEntity(first.toString());
         }
 
         // Iterate over the rest of the uri validating each resource
-        for (int i = 1, uriResourcesLength = uriResources.length; i < uriResourcesLength - 1; i++) {
-            String[] targetEntity = splitId(uriResources[i]);
-            String targetType = targetEntity[0];
-            String targetId = null;
-            if (targetEntity.length == 1) {
+        for (int i = 1, segmentsLength = segments.size(); i < segmentsLength - 1; i++) {
+            ResourcePath.Segment target = segments.get(i);
+            String targetType = target.getName();
+            String targetId;
+            String currentId = sourceId;
+            String currentType = sourceType;
+            String key = currentType + ROUND_BRACKET_OPEN + currentId + ROUND_BRACKET_CLOSE + SLASH + target;
+            if (target.getId() == null) {
                 // Resource is addressed by related Entity
                 // e.g. /Datastreams(1)/Thing/
                 // Getting id directly as it is needed for next iteration
-                targetId = serviceRepository.getEntityService(targetType)
-                                            .getEntityIdByRelatedEntity(sourceId, sourceType);
-                if (targetId == null) {
-                    return createInvalidUrlExceptionNoEntityAssociated(uriResources[i], uriResources[i - 1]);
-                }
+                targetId = validateCached(serviceRepository,
+                                          key,
+                                          currentType,
+                                          targetType,
+                                          () -> serviceRepository.getEntityService(targetType)
+                                                                 .getEntityIdByRelatedEntity(currentId, currentType));
             } else {
                 // Resource is addressed by Id directly
                 // e.g. /Things(1)/
                 // Only checking exists as Id is already known
-                targetId = targetEntity[1].replace(ROUND_BRACKET_CLOSE, "");
-                if (!serviceRepository.getEntityService(targetType)
-                                      .existsEntityByRelatedEntity(sourceId, sourceType, targetId)) {
-                    return createInvalidUrlExceptionNoEntityAssociated(uriResources[i], uriResources[i - 1]);
-                }
+                String ownId = target.getId();
+                targetId = validateCached(serviceRepository,
+                                          key,
+                                          currentType,
+                                          targetType,
+                                          () -> serviceRepository.getEntityService(targetType)
+                                                                 .existsEntityByRelatedEntity(currentId,
+                                                                                              currentType,
+                                                                                              ownId)
+                                                  ? ownId : null);
+            }
+            if (targetId == null) {
+                return createInvalidUrlExceptionNoEntityAssociated(target.toString(),
+                                                                   segments.get(i - 1).toString());
             }
 
             // Store target as source for next iteration
@@ -657,6 +667,38 @@ public interface STARequestUtils extends StaConstants {
         return null;
     }
 
+    /**
+     * Validates a single resource of an URL. Successful validations are cached in the
+     * {@link ResourceValidationCache} if available.
+     *
+     * @param serviceRepository service repository
+     * @param key               unique key of the resource
+     * @param sourceType        type of the Entity the resource is navigated from
+     * @param targetType        type of the resource
+     * @param validation        validation querying the database. Returns the id of the resource or null if invalid
+     * @return id of the resource. null if the resource is invalid
+     */
+    default String validateCached(EntityServiceRepository serviceRepository,
+                                  String key,
+                                  String sourceType,
+                                  String targetType,
+                                  Supplier<String> validation) {
+        ResourceValidationCache cache = serviceRepository.getValidationCache();
+        if (cache == null || !cache.isEnabled()) {
+            return validation.get();
+        }
+        String cached = cache.get(key, sourceType, targetType);
+        if (cached != null) {
+            return cached;
+        }
+        ResourceValidationCache.Stamp stamp = cache.stamp(sourceType, targetType);
+        String targetId = validation.get();
+        if (targetId != null) {
+            cache.put(key, targetId, stamp);
+        }
+        return targetId;
+    }
+
     default STANotFoundException createNotFoundExceptionNoEntity(String entity) {
         return new STANotFoundException("No Entity: " + entity + " found!");
     }
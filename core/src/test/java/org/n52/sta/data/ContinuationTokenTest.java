@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.data;
+
+import org.junit.jupiter.api.Test;
+import org.n52.shetland.ogc.sta.exception.STACRUDException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class ContinuationTokenTest {
+
+    private static final String STA_IDENTIFIER = "staIdentifier";
+    private static final String TIME = "samplingTimeEnd";
+
+    @Test
+    public void testRoundTripIdentifier() throws STACRUDException {
+        // Separator and non-ASCII characters in the value are preserved
+        String identifier = "a\nb/ä€";
+        ContinuationToken token = ContinuationToken.decode(
+                new ContinuationToken(STA_IDENTIFIER, false, identifier, null).encode());
+        assertEquals(STA_IDENTIFIER, token.getSortProperty());
+        assertFalse(token.isDescending());
+        assertEquals(identifier, token.getValue());
+        assertNull(token.getId());
+        assertNull(token.getTime());
+        assertDoesNotThrow(() -> token.checkSort(STA_IDENTIFIER, false, true));
+    }
+
+    @Test
+    public void testRoundTripTime() throws STACRUDException {
+        Timestamp time = Timestamp.from(Instant.parse("2020-02-29T12:34:56.123456789Z"));
+        ContinuationToken token = ContinuationToken.decode(new ContinuationToken(TIME, true, time, 52L).encode());
+        assertEquals(TIME, token.getSortProperty());
+        assertTrue(token.isDescending());
+        assertEquals(Long.valueOf(52L), token.getId());
+        // Full precision is kept
+        assertEquals(time, token.getTime());
+        assertEquals(123456789, token.getTime().getNanos());
+        assertDoesNotThrow(() -> token.checkSort(TIME, true, false));
+    }
+
+    @Test
+    public void testRoundTripDate() throws STACRUDException {
+        for (long millis : new long[] {0L, -1L, 1582979696123L, -62167219200000L}) {
+            Date date = new Date(millis);
+            ContinuationToken token = ContinuationToken.decode(new ContinuationToken(TIME, false, date, 1L).encode());
+            assertEquals(millis, token.getTime().getTime());
+        }
+    }
+
+    @Test
+    public void testSortMismatch() throws STACRUDException {
+        ContinuationToken time = ContinuationToken.decode(
+                new ContinuationToken(TIME, false, new Date(0L), 1L).encode());
+        assertThrows(STACRUDException.class, () -> time.checkSort(TIME, true, false));
+        assertThrows(STACRUDException.class, () -> time.checkSort(STA_IDENTIFIER, false, true));
+        assertThrows(STACRUDException.class, () -> time.checkSort(TIME, false, true));
+
+        ContinuationToken identifier = ContinuationToken.decode(
+                new ContinuationToken(STA_IDENTIFIER, false, "1", null).encode());
+        assertThrows(STACRUDException.class, () -> identifier.checkSort(STA_IDENTIFIER, false, false));
+        assertThrows(STACRUDException.class, () -> identifier.checkSort(TIME, false, true));
+    }
+
+    @Test
+    public void testGarbage() {
+        assertInvalid("");
+        assertInvalid("not*base64");
+        assertInvalid("%%%");
+        assertInvalid(encode("garbage"));
+        assertInvalid(encode("\nasc\n\nvalue"));
+        assertInvalid(encode(STA_IDENTIFIER + "\nasc\n"));
+        assertInvalid(encode(STA_IDENTIFIER + "\nsideways\n\nvalue"));
+    }
+
+    @Test
+    public void testTampered() throws STACRUDException {
+        String valid = new ContinuationToken(TIME, false, new Date(0L), 1L).encode();
+        assertEquals(TIME, ContinuationToken.decode(valid).getSortProperty());
+
+        assertInvalid(encode(TIME + "\nasc\nabc\n1970-01-01T00:00:00Z"));
+        assertInvalid(encode(TIME + "\nasc\n1.5\n1970-01-01T00:00:00Z"));
+        assertInvalid(encode(TIME + "\nasc\n1\n0"));
+        assertInvalid(encode(TIME + "\nasc\n1\n1970-01-01 00:00:00"));
+        assertInvalid(encode(TIME + "\nasc\n1\n"));
+        assertInvalid(valid.substring(0, valid.length() - 3));
+    }
+
+    private void assertInvalid(String token) {
+        assertThrows(STACRUDException.class, () -> ContinuationToken.decode(token), token);
+    }
+
+    private String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.serdes;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.n52.series.db.beans.parameter.ParameterEntity;
+import org.n52.series.db.beans.parameter.ParameterJsonEntity;
+import org.n52.series.db.beans.sta.QuantityObservationEntity;
+import org.n52.sta.serdes.util.ElementWithQueryOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the response encodings of a page of Observations. {@link #encode()} serializes the page with
+ * {@link ObservationSerDes.ObservationSerializer} as done by the server, {@link #decode()} parses the encoded page
+ * as done by a client. The payload size of each encoding is printed on setup.
+ * <p>
+ * Run via {@link #main(String[])} from the test classpath.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservationEncodingBenchmark {
+
+    private static final int PAGE_SIZE = 1000;
+
+    @Param({"json", "cbor", "smile"})
+    private String encoding;
+
+    private ObjectMapper mapper;
+    private List<ElementWithQueryOptions> page;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(new ObservationSerDes.ObservationSerializer("http://localhost:8081/v2/"));
+        mapper = new ObjectMapper(createFactory(encoding)).registerModule(module);
+
+        page = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            QuantityObservationEntity observation = new QuantityObservationEntity();
+            observation.setStaIdentifier("observation-" + i);
+            observation.setValue(BigDecimal.valueOf(i * 0.25));
+            observation.setSamplingTimeStart(new Date(1425340800000L + i * 1000L));
+            observation.setSamplingTimeEnd(observation.getSamplingTimeStart());
+            observation.setResultTime(observation.getSamplingTimeStart());
+            ParameterJsonEntity parameter = new ParameterJsonEntity();
+            parameter.setName("quality");
+            parameter.setValue("{\"flag\":" + (i % 4) + ",\"checked\":true}");
+            observation.setParameters(Collections.<ParameterEntity<?>>singleton(parameter));
+            page.add(ElementWithQueryOptions.from(observation, null));
+        }
+        encoded = mapper.writeValueAsBytes(page);
+        System.out.println(encoding + " payload size of " + PAGE_SIZE + " Observations: " + encoded.length + " bytes");
+    }
+
+    private static JsonFactory createFactory(String encoding) {
+        switch (encoding) {
+            case "cbor":
+                return new CBORFactory();
+            case "smile":
+                return new SmileFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        return mapper.readTree(encoded);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ObservationEncodingBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
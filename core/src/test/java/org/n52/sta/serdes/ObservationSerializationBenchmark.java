@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.serdes;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.n52.series.db.beans.parameter.ParameterEntity;
+import org.n52.series.db.beans.parameter.ParameterJsonEntity;
+import org.n52.series.db.beans.sta.QuantityObservationEntity;
+import org.n52.sta.serdes.util.ElementWithQueryOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization of a page of Observations with JSON parameters. {@link #page()} serializes the page
+ * with {@link ObservationSerDes.ObservationSerializer}, which streams the stored parameters into the generator.
+ * {@link #legacy()}, {@link #copy()} and {@link #raw()} isolate the writing of the parameters, comparing the previous
+ * approach (new ObjectMapper and readTree for every parameter) with streaming the stored JSON via a shared factory
+ * and with writing it as unchecked raw value.
+ * <p>
+ * Run via {@link #main(String[])} from the test classpath.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObservationSerializationBenchmark {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int PARAMETERS = 3;
+    private static final String VALUE = "value";
+    private static final OutputStream NULL_STREAM = new OutputStream() {
+        @Override public void write(int b) {
+        }
+
+        @Override public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private ObjectMapper mapper;
+    private List<ElementWithQueryOptions> page;
+    private List<ParameterEntity<?>> parameters;
+
+    @Setup
+    public void setup() {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(new ObservationSerDes.ObservationSerializer("http://localhost:8081/v2/"));
+        mapper = new ObjectMapper().registerModule(module);
+
+        page = new ArrayList<>(PAGE_SIZE);
+        parameters = new ArrayList<>(PAGE_SIZE * PARAMETERS);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            QuantityObservationEntity observation = new QuantityObservationEntity();
+            observation.setStaIdentifier("observation-" + i);
+            observation.setValue(BigDecimal.valueOf(i));
+            observation.setSamplingTimeStart(new Date(1425340800000L + i * 1000L));
+            observation.setSamplingTimeEnd(observation.getSamplingTimeStart());
+            Set<ParameterEntity<?>> observationParameters = new HashSet<>();
+            for (int j = 0; j < PARAMETERS; j++) {
+                ParameterJsonEntity parameter = new ParameterJsonEntity();
+                parameter.setName("parameter-" + j);
+                parameter.setValue("{\"quality\":" + j + ",\"flags\":[\"checked\",\"calibrated\"],"
+                                           + "\"sensor\":{\"serial\":\"SN-" + i + "\",\"firmware\":\"1.2.3\"}}");
+                observationParameters.add(parameter);
+                parameters.add(parameter);
+            }
+            observation.setParameters(observationParameters);
+            page.add(ElementWithQueryOptions.from(observation, null));
+        }
+    }
+
+    @Benchmark
+    public void page() throws IOException {
+        mapper.writeValue(NULL_STREAM, page);
+    }
+
+    @Benchmark
+    public void legacy() throws IOException {
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(NULL_STREAM)) {
+            gen.writeStartArray();
+            for (ParameterEntity<?> parameter : parameters) {
+                gen.writeStartObject();
+                ObjectMapper perParameter = new ObjectMapper();
+                gen.writeObjectField(VALUE, perParameter.readTree(parameter.getValueAsString()));
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    @Benchmark
+    public void copy() throws IOException {
+        JsonFactory factory = mapper.getFactory();
+        try (JsonGenerator gen = factory.createGenerator(NULL_STREAM)) {
+            gen.writeStartArray();
+            for (ParameterEntity<?> parameter : parameters) {
+                gen.writeStartObject();
+                gen.writeFieldName(VALUE);
+                try (JsonParser parser = factory.createParser(parameter.getValueAsString())) {
+                    parser.nextToken();
+                    gen.copyCurrentStructure(parser);
+                }
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    @Benchmark
+    public void raw() throws IOException {
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(NULL_STREAM)) {
+            gen.writeStartArray();
+            for (ParameterEntity<?> parameter : parameters) {
+                gen.writeStartObject();
+                gen.writeFieldName(VALUE);
+                gen.writeRawValue(parameter.getValueAsString());
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ObservationSerializationBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.serdes;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.PlatformEntity;
+import org.n52.sta.serdes.util.ElementWithQueryOptions;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class ThingSerDesTest {
+
+    private static final String PROPERTIES = "properties";
+    private static final String STORED = "{\"serial\":\"SN-1\",\"flags\":[1,2.5,true,null],\"nested\":{\"a\":\"b\"}}";
+
+    private final ObjectMapper json = createMapper(new ObjectMapper());
+    private final ObjectMapper cbor = createMapper(new ObjectMapper(new CBORFactory()));
+
+    @Test
+    public void testStoredPropertiesAreCopied() throws IOException {
+        JsonNode expected = new ObjectMapper().readTree(STORED);
+        assertEquals(expected, json.readTree(json.writeValueAsBytes(thing(STORED))).get(PROPERTIES));
+        assertEquals(expected, cbor.readTree(cbor.writeValueAsBytes(thing(STORED))).get(PROPERTIES));
+    }
+
+    @Test
+    public void testMalformedPropertiesAreRejected() {
+        for (String malformed : new String[] {"{\"a\":", "{\"a\":1}}", "{\"a\":1} {}", "\"a\"\"b\"", "a"}) {
+            assertThrows(JsonProcessingException.class, () -> json.writeValueAsString(thing(malformed)), malformed);
+            assertThrows(JsonProcessingException.class, () -> cbor.writeValueAsBytes(thing(malformed)), malformed);
+        }
+    }
+
+    private ObjectMapper createMapper(ObjectMapper mapper) {
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(new ThingSerDes.ThingSerializer("http://localhost:8081/v2/"));
+        return mapper.registerModule(module);
+    }
+
+    private ElementWithQueryOptions<?> thing(String properties) {
+        PlatformEntity thing = new PlatformEntity();
+        thing.setStaIdentifier("thing-1");
+        thing.setName("thing");
+        thing.setDescription("description");
+        thing.setProperties(properties);
+        return ElementWithQueryOptions.from(thing, null);
+    }
+}
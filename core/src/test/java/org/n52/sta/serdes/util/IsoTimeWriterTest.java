@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.serdes.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.util.DateTimeHelper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class IsoTimeWriterTest {
+
+    private static final String FIELD = "time";
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final long[] MILLIS = new long[] {
+        // epoch
+        0L,
+        1L,
+        999L,
+        1000L,
+        // pre-1970
+        -1L,
+        -999L,
+        -1000L,
+        -1001L,
+        -86400000L,
+        -86400001L,
+        parse("1900-03-01T00:00:00Z"),
+        parse("1600-02-29T12:34:56.789Z"),
+        // leap days
+        parse("2000-02-29T23:59:59.999Z"),
+        parse("2020-02-29T00:00:00Z"),
+        parse("2020-03-01T00:00:00Z"),
+        parse("2100-02-28T23:59:59.999Z"),
+        parse("2100-03-01T00:00:00.001Z"),
+        parse("2019-12-31T23:59:59.999Z"),
+        // time zones
+        parse("2020-03-29T02:30:00+02:00"),
+        parse("2020-10-25T02:30:00.120-05:30"),
+        // supported range
+        parse("0000-01-01T00:00:00Z"),
+        parse("9999-12-31T23:59:59.999Z"),
+        // fallback
+        parse("0000-01-01T00:00:00Z") - 1L,
+        parse("9999-12-31T23:59:59.999Z") + 1L,
+        System.currentTimeMillis()
+    };
+
+    @Test
+    public void testTimeInstantMatchesDateTimeHelper() throws IOException {
+        for (long millis : MILLIS) {
+            String expected = DateTimeHelper.format(new TimeInstant(new DateTime(millis, DateTimeZone.UTC)));
+            assertEquals(expected, writeTime(new Date(millis), null), "millis: " + millis);
+            assertEquals(expected, writeTime(new Date(millis), new Date(millis)), "millis: " + millis);
+        }
+    }
+
+    @Test
+    public void testTimePeriodMatchesDateTimeHelper() throws IOException {
+        for (int i = 1; i < MILLIS.length; i++) {
+            long start = Math.min(MILLIS[i - 1], MILLIS[i]);
+            long end = Math.max(MILLIS[i - 1], MILLIS[i]);
+            String expected = DateTimeHelper.format(new TimePeriod(new DateTime(start, DateTimeZone.UTC),
+                                                                   new DateTime(end, DateTimeZone.UTC)));
+            assertEquals(expected, writeTime(new Date(start), new Date(end)), "millis: " + start + "/" + end);
+        }
+    }
+
+    @Test
+    public void testInstantMatchesInstantToString() throws IOException {
+        for (long millis : MILLIS) {
+            Date date = new Date(millis);
+            assertEquals(date.toInstant().toString(), writeInstant(date), "millis: " + millis);
+        }
+    }
+
+    @Test
+    public void testTimestampNanos() throws IOException {
+        int[] nanos = new int[] {0, 1, 1000, 1000000, 120000000, 123456000, 123456789, 999999999};
+        for (long millis : MILLIS) {
+            for (int nano : nanos) {
+                Timestamp timestamp = new Timestamp(millis);
+                timestamp.setNanos(nano);
+                assertEquals(timestamp.toInstant().toString(), writeInstant(timestamp),
+                             "millis: " + millis + " nanos: " + nano);
+            }
+        }
+    }
+
+    @Test
+    public void testIndependentOfDefaultTimeZone() throws IOException {
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            for (String zone : new String[] {"Europe/Berlin", "America/St_Johns", "Pacific/Kiritimati"}) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zone));
+                for (long millis : MILLIS) {
+                    Date date = new Date(millis);
+                    assertEquals(Instant.ofEpochMilli(millis).toString(), writeInstant(date), zone);
+                    assertEquals(DateTimeHelper.format(new TimeInstant(new DateTime(millis, DateTimeZone.UTC))),
+                                 writeTime(date, null),
+                                 zone);
+                }
+            }
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    private static long parse(String time) {
+        return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+    }
+
+    private static String writeTime(Date start, Date end) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator gen = FACTORY.createGenerator(writer)) {
+            gen.writeStartObject();
+            IsoTimeWriter.writeTimeField(gen, FIELD, start, end);
+            gen.writeEndObject();
+        }
+        return MAPPER.readTree(writer.toString()).get(FIELD).asText();
+    }
+
+    private static String writeInstant(Date date) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator gen = FACTORY.createGenerator(writer)) {
+            gen.writeStartObject();
+            IsoTimeWriter.writeInstantField(gen, FIELD, date);
+            gen.writeEndObject();
+        }
+        return MAPPER.readTree(writer.toString()).get(FIELD).asText();
+    }
+}
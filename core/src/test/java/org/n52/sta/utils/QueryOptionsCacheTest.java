@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.utils;
+
+import org.junit.jupiter.api.Test;
+import org.n52.shetland.oasis.odata.query.option.QueryOptions;
+import org.n52.svalbard.odata.core.QueryOptionsFactory;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class QueryOptionsCacheTest {
+
+    private static final String FILTER = "$filter=result%20gt%205";
+
+    private final QueryOptionsFactory factory = new QueryOptionsFactory();
+    private final AtomicInteger parsed = new AtomicInteger();
+    private final Function<String, QueryOptions> parser = raw -> {
+        parsed.incrementAndGet();
+        return factory.createQueryOptions(UriUtils.decode(raw, Charset.defaultCharset()));
+    };
+
+    @Test
+    public void testPagesShareShape() {
+        QueryOptionsCache cache = new QueryOptionsCache(10);
+        for (long skip = 0; skip < 500; skip += 100) {
+            QueryOptions queryOptions = cache.get(FILTER + "&$top=100&$skip=" + skip, parser);
+            assertEquals(Long.valueOf(100L), queryOptions.getTopFilter().getValue());
+            assertEquals(Long.valueOf(skip), queryOptions.getSkipFilter().getValue());
+            assertTrue(queryOptions.hasFilterFilter());
+        }
+        assertEquals(1, parsed.get());
+    }
+
+    @Test
+    public void testBindingMatchesParser() {
+        QueryOptionsCache cache = new QueryOptionsCache(10);
+        String[] queries = new String[] {
+            FILTER + "&$skip=20",
+            FILTER + "&$top=7",
+            "$top=3&$orderby=id%20desc&$skip=1",
+            "$top=3",
+        };
+        for (String query : queries) {
+            QueryOptions expected = parser.apply(query);
+            QueryOptions actual = cache.get(query, parser);
+            assertEquals(expected.getAllFilters(), actual.getAllFilters(), query);
+        }
+    }
+
+    @Test
+    public void testInvalidValuesAreLeftToParser() {
+        QueryOptionsCache cache = new QueryOptionsCache(10);
+        List<String> seen = new ArrayList<>();
+        Function<String, QueryOptions> recording = raw -> {
+            seen.add(raw);
+            return factory.createDummy();
+        };
+        String[] queries = new String[] {
+            "$skip=-1&" + FILTER,
+            "$top=3&$top=4&" + FILTER,
+            "$skip=abc&$top=3",
+        };
+        for (String query : queries) {
+            cache.get(query, recording);
+        }
+        assertEquals(Arrays.asList(queries), seen);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+package org.n52.sta.utils;
+
+import org.junit.jupiter.api.Test;
+import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class ResourcePathTest {
+
+    @Test
+    public void testCollection() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Things");
+        assertEquals(1, path.getSegments().size());
+        assertEquals("Things", path.getTarget().getName());
+        assertEquals("Things", path.getTarget().getCollection());
+        assertNull(path.getTarget().getId());
+        assertFalse(path.getTarget().isEntity());
+        assertNull(path.getSource());
+        assertTrue(path.isNavigationOnly());
+        assertEquals("/Things", path.toString());
+    }
+
+    @Test
+    public void testEntityWithSlashes() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("/Things(1)/");
+        assertEquals(1, path.getSegments().size());
+        assertEquals("1", path.getTarget().getId());
+        assertTrue(path.getTarget().isEntity());
+        assertEquals("/Things(1)", path.toString());
+    }
+
+    @Test
+    public void testSingularNavigation() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Datastreams(52)/Thing");
+        assertEquals(2, path.getSegments().size());
+        assertEquals("Thing", path.getTarget().getName());
+        assertEquals("Things", path.getTarget().getCollection());
+        assertNull(path.getTarget().getId());
+        assertTrue(path.getTarget().isEntity());
+        assertEquals("Datastreams", path.getSource().getName());
+        assertEquals("52", path.getSource().getId());
+    }
+
+    @Test
+    public void testNestedNavigation() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Things(1)/Datastreams(2)/Observations");
+        assertEquals(3, path.getSegments().size());
+        assertEquals("Observations", path.getTarget().getName());
+        assertFalse(path.getTarget().isEntity());
+        assertEquals("Datastreams", path.getSource().getName());
+        assertEquals("2", path.getSource().getId());
+        assertEquals("/Things(1)/Datastreams(2)/Observations", path.toString());
+    }
+
+    @Test
+    public void testProperty() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Things(1)/name");
+        assertEquals("name", path.getProperty());
+        assertFalse(path.isValue());
+        assertFalse(path.isRef());
+        assertFalse(path.isNavigationOnly());
+        assertEquals("Things", path.getTarget().getName());
+
+        path = ResourcePath.parse("Datastreams(52)/Thing/name");
+        assertEquals("name", path.getProperty());
+        assertEquals("Thing", path.getTarget().getName());
+    }
+
+    @Test
+    public void testPropertyValue() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Things(1)/name/$value");
+        assertEquals("name", path.getProperty());
+        assertTrue(path.isValue());
+        assertEquals("/Things(1)/name/$value", path.toString());
+    }
+
+    @Test
+    public void testRef() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Things(1)/Datastreams/$ref");
+        assertTrue(path.isRef());
+        assertNull(path.getProperty());
+        assertFalse(path.isNavigationOnly());
+        assertEquals("Datastreams", path.getTarget().getName());
+        assertEquals("/Things(1)/Datastreams/$ref", path.toString());
+
+        path = ResourcePath.parse("Things/$ref");
+        assertTrue(path.isRef());
+        assertEquals("Things", path.getTarget().getName());
+    }
+
+    @Test
+    public void testQuotedId() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Things('abc')");
+        assertEquals("'abc'", path.getTarget().getId());
+
+        path = ResourcePath.parse("Things('a b-c.d')/Datastreams");
+        assertEquals("'a b-c.d'", path.getSource().getId());
+    }
+
+    @Test
+    public void testIdContainingSlash() throws STAInvalidUrlException {
+        ResourcePath path = ResourcePath.parse("Things('a/b')/Datastreams");
+        assertEquals(2, path.getSegments().size());
+        assertEquals("'a/b'", path.getSource().getId());
+        assertEquals("Datastreams", path.getTarget().getName());
+
+        path = ResourcePath.parse("/Things('urn:a/b/c')/");
+        assertEquals(1, path.getSegments().size());
+        assertEquals("'urn:a/b/c'", path.getTarget().getId());
+    }
+
+    @Test
+    public void testPathsRejectedByRegexes() throws STAInvalidUrlException {
+        // Identifiers containing characters outside of the former identifier pattern
+        assertEquals("'a:b@c'", ResourcePath.parse("Things('a:b@c')").getTarget().getId());
+        assertEquals("'ä$ö'", ResourcePath.parse("Sensors('ä$ö')/Datastreams").getSource().getId());
+        // Navigation via singular navigation properties
+        assertEquals("Datastreams",
+                     ResourcePath.parse("Observations(1)/Datastream/Thing/Locations")
+                                 .getSegments()
+                                 .get(1)
+                                 .getCollection());
+    }
+
+    @Test
+    public void testInvalidPaths() {
+        assertInvalid("");
+        assertInvalid("/");
+        assertInvalid("//");
+        assertInvalid("Thingz");
+        assertInvalid("Things()");
+        assertInvalid("Things(1)x");
+        assertInvalid("Things(1");
+        assertInvalid("Things(1))");
+        assertInvalid("Things(1)/Sensor(1)");
+        assertInvalid("Datastreams/Thing");
+        assertInvalid("Datastreams(1)/Thing(2)");
+        assertInvalid("Things(1)/$value");
+        assertInvalid("Things(1)/name/$ref");
+        assertInvalid("Things(1)/name/$value/name");
+        assertInvalid("Things(1)/$ref/name");
+        assertInvalid("Things(1)//Datastreams");
+        assertInvalid("$ref");
+        assertInvalid("Things('a/b'");
+    }
+
+    private void assertInvalid(String path) {
+        assertThrows(STAInvalidUrlException.class, () -> ResourcePath.parse(path), path);
+    }
+}
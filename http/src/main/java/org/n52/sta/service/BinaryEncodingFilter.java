@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.service;
+
+import org.n52.sta.utils.STARequestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Enforces server.feature.binaryEncodings. If binary encodings are disabled, CBOR and Smile are removed from the
+ * Accept header so that content negotiation falls back to the other accepted media types, e.g. JSON. Requests only
+ * accepting binary encodings are rejected with 406 Not Acceptable.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+public class BinaryEncodingFilter extends OncePerRequestFilter {
+
+    private static final MediaType CBOR = MediaType.valueOf(STARequestUtils.MEDIA_TYPE_CBOR);
+    private static final MediaType SMILE = MediaType.valueOf(STARequestUtils.MEDIA_TYPE_SMILE);
+
+    private final boolean enabled;
+
+    public BinaryEncodingFilter(@Value("${server.feature.binaryEncodings:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (enabled || accept == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            // Left to the regular content negotiation
+            chain.doFilter(request, response);
+            return;
+        }
+        List<MediaType> remaining = accepted.stream()
+                                            .filter(mediaType -> !mediaType.equalsTypeAndSubtype(CBOR)
+                                                    && !mediaType.equalsTypeAndSubtype(SMILE))
+                                            .collect(Collectors.toList());
+        if (remaining.size() == accepted.size()) {
+            chain.doFilter(request, response);
+        } else if (remaining.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_ACCEPTABLE, "Binary encodings are disabled.");
+        } else {
+            chain.doFilter(new AcceptHeaderRequest(request, MediaType.toString(remaining)), response);
+        }
+    }
+
+    private static final class AcceptHeaderRequest extends HttpServletRequestWrapper {
+
+        private final String accept;
+
+        AcceptHeaderRequest(HttpServletRequest request, String accept) {
+            super(request);
+            this.accept = accept;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return HttpHeaders.ACCEPT.equalsIgnoreCase(name) ? accept : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return HttpHeaders.ACCEPT.equalsIgnoreCase(name)
+                    ? Collections.enumeration(Collections.singletonList(accept))
+                    : super.getHeaders(name);
+        }
+    }
+}
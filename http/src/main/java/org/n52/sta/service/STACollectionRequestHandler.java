@@ -29,20 +29,32 @@
 
 package org.n52.sta.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.n52.shetland.filter.SelectFilter;
 import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.shetland.ogc.filter.FilterClause;
 import org.n52.shetland.ogc.sta.exception.STACRUDException;
+import org.n52.sta.data.service.AbstractSensorThingsEntityService;
 import org.n52.sta.data.service.EntityServiceRepository;
 import org.n52.sta.data.service.util.CollectionWrapper;
+import org.n52.sta.utils.QueryOptionsCache;
 import org.n52.sta.utils.STARequestUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Handles all requests to Entity Collections and Entity Collections association Links
@@ -58,11 +70,26 @@ public class STACollectionRequestHandler implements STARequestUtils {
 
     private final EntityServiceRepository serviceRepository;
     private final String rootUrl;
+    private final ObjectMapper mapper;
+    private final PlatformTransactionManager transactionManager;
+    private final int streamingThreshold;
+    private final List<AbstractJackson2HttpMessageConverter> converters;
+    private final QueryOptionsCache queryOptionsCache;
 
     public STACollectionRequestHandler(@Value("${server.rootUrl}") String rootUrl,
-                                       EntityServiceRepository serviceRepository) {
+                                       @Value("${server.feature.streamingThreshold:0}") int streamingThreshold,
+                                       EntityServiceRepository serviceRepository,
+                                       ObjectMapper mapper,
+                                       PlatformTransactionManager transactionManager,
+                                       List<AbstractJackson2HttpMessageConverter> converters,
+                                       QueryOptionsCache queryOptionsCache) {
         this.rootUrl = rootUrl;
+        this.streamingThreshold = streamingThreshold;
         this.serviceRepository = serviceRepository;
+        this.mapper = mapper;
+        this.transactionManager = transactionManager;
+        this.converters = converters;
+        this.queryOptionsCache = queryOptionsCache;
     }
 
     /**
@@ -75,16 +102,24 @@ public class STACollectionRequestHandler implements STARequestUtils {
      */
     @GetMapping(
             value = "/{collectionName:" + BASE_COLLECTION_REGEX + "}",
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public CollectionWrapper readCollectionDirect(@PathVariable String collectionName,
-                                                  HttpServletRequest request)
-            throws STACRUDException {
-        QueryOptions options = decodeQueryString(request);
-        return serviceRepository
-                .getEntityService(collectionName)
-                .getEntityCollection(options)
-                .setRequestURL(rootUrl + collectionName);
+                                                  HttpServletRequest request,
+                                                  HttpServletResponse response)
+            throws STACRUDException, IOException {
+        QueryOptions options = decodeQueryString(request, queryOptionsCache);
+        String skipToken = decodeSkipToken(request);
+        String requestURL = rootUrl + collectionName;
+        AbstractSensorThingsEntityService<?, ?, ?> service = serviceRepository.getEntityService(collectionName);
+        if (isStreamed(options)) {
+            writeStreamed(request,
+                          response,
+                          () -> service.getEntityCollectionStream(options, skipToken).setRequestURL(requestURL));
+            return null;
+        }
+        return service.getEntityCollection(options, skipToken)
+                      .setRequestURL(requestURL);
     }
 
     /**
@@ -97,7 +132,7 @@ public class STACollectionRequestHandler implements STARequestUtils {
      */
     @GetMapping(
             value = "/{collectionName:" + BASE_COLLECTION_REGEX + "}" + SLASHREF,
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public CollectionWrapper readCollectionRefDirect(@PathVariable String collectionName,
                                                      HttpServletRequest request)
@@ -106,7 +141,7 @@ public class STACollectionRequestHandler implements STARequestUtils {
         String queryString = request.getQueryString();
         if (queryString != null) {
             // Parse QueryString normally and extract relevant Filters
-            QueryOptions options = decodeQueryString(request);
+            QueryOptions options = decodeQueryString(request, queryOptionsCache);
             filters.add(options.getSkipFilter());
             filters.add(options.getTopFilter());
             filters.add(options.getCountFilter());
@@ -139,11 +174,12 @@ public class STACollectionRequestHandler implements STARequestUtils {
                     MAPPING_PREFIX + COLLECTION_IDENTIFIED_BY_DATASTREAM_PATH_VARIABLE,
                     MAPPING_PREFIX + COLLECTION_IDENTIFIED_BY_HIST_LOCATION_PATH_VARIABLE
             },
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public CollectionWrapper readCollectionRelated(@PathVariable String entity,
                                                    @PathVariable String target,
-                                                   HttpServletRequest request)
+                                                   HttpServletRequest request,
+                                                   HttpServletResponse response)
             throws Exception {
 
         validateResource(request.getRequestURI().substring(request.getContextPath().length()), serviceRepository);
@@ -152,12 +188,25 @@ public class STACollectionRequestHandler implements STARequestUtils {
         String sourceType = split[0];
         String sourceId = split[1].replace(")", "");
 
-        QueryOptions options = decodeQueryString(request);
-        return serviceRepository.getEntityService(target)
-                                .getEntityCollectionByRelatedEntity(sourceId,
-                                                                    sourceType,
-                                                                    options)
-                                .setRequestURL(rootUrl + entity + "/" + target);
+        QueryOptions options = decodeQueryString(request, queryOptionsCache);
+        String skipToken = decodeSkipToken(request);
+        String requestURL = rootUrl + entity + "/" + target;
+        AbstractSensorThingsEntityService<?, ?, ?> service = serviceRepository.getEntityService(target);
+        if (isStreamed(options)) {
+            writeStreamed(request,
+                          response,
+                          () -> service.getEntityCollectionByRelatedEntityStream(sourceId,
+                                                                                 sourceType,
+                                                                                 options,
+                                                                                 skipToken)
+                                       .setRequestURL(requestURL));
+            return null;
+        }
+        return service.getEntityCollectionByRelatedEntity(sourceId,
+                                                          sourceType,
+                                                          options,
+                                                          skipToken)
+                      .setRequestURL(requestURL);
     }
 
     /**
@@ -179,7 +228,7 @@ public class STACollectionRequestHandler implements STARequestUtils {
                     MAPPING_PREFIX + COLLECTION_IDENTIFIED_BY_DATASTREAM_PATH_VARIABLE + SLASHREF,
                     MAPPING_PREFIX + COLLECTION_IDENTIFIED_BY_HIST_LOCATION_PATH_VARIABLE + SLASHREF
             },
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public CollectionWrapper readCollectionRelatedRef(@PathVariable String entity,
                                                       @PathVariable String target,
@@ -198,7 +247,7 @@ public class STACollectionRequestHandler implements STARequestUtils {
         String queryString = request.getQueryString();
         if (queryString != null) {
             // Parse QueryString normally and extract relevant Filters
-            QueryOptions options = decodeQueryString(request);
+            QueryOptions options = decodeQueryString(request, queryOptionsCache);
             filters.add(options.getSkipFilter());
             filters.add(options.getTopFilter());
             filters.add(options.getCountFilter());
@@ -212,4 +261,71 @@ public class STACollectionRequestHandler implements STARequestUtils {
                                                                     QUERY_OPTIONS_FACTORY.createQueryOptions(filters))
                                 .setRequestURL(rootUrl + entity + "/" + target);
     }
+
+    private boolean isStreamed(QueryOptions options) {
+        return streamingThreshold > 0 && options.getTopFilter().getValue() >= streamingThreshold;
+    }
+
+    /**
+     * Writes the collection directly to the response. Loading and serialization are done inside a single read-only
+     * transaction, so that entities can be loaded lazily while the response is written.
+     *
+     * @param request    request holding the accepted media types
+     * @param response   response to write to
+     * @param collection supplies the collection
+     * @throws STACRUDException if the collection could not be loaded
+     * @throws IOException      if the collection could not be written
+     */
+    private void writeStreamed(HttpServletRequest request,
+                               HttpServletResponse response,
+                               CollectionSupplier collection)
+            throws STACRUDException, IOException {
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        definition.setReadOnly(true);
+        TransactionStatus transaction = transactionManager.getTransaction(definition);
+        try {
+            CollectionWrapper wrapper = collection.get();
+            AbstractJackson2HttpMessageConverter converter = getBinaryConverter(request);
+            if (converter != null) {
+                response.setContentType(converter.getSupportedMediaTypes().get(0).toString());
+                converter.getObjectMapper().writeValue(response.getOutputStream(), wrapper);
+            } else {
+                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+                mapper.writeValue(response.getOutputStream(), wrapper);
+            }
+        } catch (STACRUDException | IOException | RuntimeException e) {
+            transactionManager.rollback(transaction);
+            throw e;
+        }
+        transactionManager.commit(transaction);
+    }
+
+    /**
+     * Returns the converter of the binary encoding preferred by the Accept header of the request. As these are
+     * written directly to the response, the regular content negotiation is not used for streamed collections.
+     *
+     * @param request request
+     * @return converter or null if JSON is to be written
+     */
+    private AbstractJackson2HttpMessageConverter getBinaryConverter(HttpServletRequest request) {
+        List<MediaType> accepted = MediaType.parseMediaTypes(request.getHeader(HttpHeaders.ACCEPT));
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            if (mediaType.isWildcardType() || mediaType.isWildcardSubtype()
+                    || mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return null;
+            }
+            for (AbstractJackson2HttpMessageConverter converter : converters) {
+                if (converter.canWrite(CollectionWrapper.class, mediaType)) {
+                    return converter;
+                }
+            }
+        }
+        return null;
+    }
+
+    private interface CollectionSupplier {
+
+        CollectionWrapper get() throws STACRUDException;
+    }
 }
@@ -29,17 +29,24 @@
 
 package org.n52.sta.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.n52.janmayen.http.HTTPStatus;
 import org.n52.series.db.beans.IdEntity;
+import org.n52.series.db.beans.sta.ObservationEntity;
 import org.n52.shetland.ogc.sta.StaConstants;
 import org.n52.shetland.ogc.sta.exception.STACRUDException;
 import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
 import org.n52.sta.data.service.AbstractSensorThingsEntityService;
 import org.n52.sta.data.service.EntityServiceRepository;
+import org.n52.sta.data.service.EntityServiceRepository.EntityTypes;
+import org.n52.sta.data.service.ObservationService;
+import org.n52.sta.serdes.DataArraySerDes;
 import org.n52.sta.serdes.util.ElementWithQueryOptions;
 import org.n52.sta.serdes.util.EntityPatch;
 import org.n52.sta.utils.STARequestUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpMethod;
 import org.springframework.util.Assert;
@@ -52,6 +59,8 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Handles all CUD requests (POST, PUT, DELETE)
@@ -63,11 +72,15 @@ import java.io.IOException;
 public class STACrudRequestHandler<T extends IdEntity> implements STARequestUtils {
 
     private static final String COULD_NOT_FIND_RELATED_ENTITY = "Could not find related Entity!";
+    private static final String CREATE_OBSERVATIONS_ERROR = "error";
     private final EntityServiceRepository serviceRepository;
     private final ObjectMapper mapper;
+    private final String rootUrl;
 
-    public STACrudRequestHandler(EntityServiceRepository serviceRepository,
+    public STACrudRequestHandler(@Value("${server.rootUrl}") String rootUrl,
+                                 EntityServiceRepository serviceRepository,
                                  ObjectMapper mapper) {
+        this.rootUrl = rootUrl;
         this.serviceRepository = serviceRepository;
         this.mapper = mapper;
     }
@@ -93,6 +106,37 @@ public class STACrudRequestHandler<T extends IdEntity> implements STARequestUtil
                 serviceRepository.getEntityService(collectionName)).create(mapper.readValue(body, clazz));
     }
 
+    /**
+     * Matches all POST requests on the CreateObservations resource using the dataArray format (STA Part 1 §10.2).
+     * e.g. ../CreateObservations
+     *
+     * @param body request Body. Automatically set by Spring via @RequestBody
+     * @return selfLinks of the created Observations in the order given. "error" for rows that could not be created
+     */
+    @PostMapping(
+            consumes = "application/json",
+            value = SLASH + CREATE_OBSERVATIONS,
+            produces = "application/json")
+    public List<String> handleCreateObservations(@RequestBody String body)
+            throws IOException, STACRUDException {
+        DataArraySerDes.DataArray dataArray;
+        try {
+            dataArray = mapper.readValue(body, DataArraySerDes.DataArray.class);
+        } catch (JsonProcessingException e) {
+            throw new STACRUDException(e.getOriginalMessage(), HTTPStatus.BAD_REQUEST);
+        }
+        List<ObservationEntity<?>> created =
+                ((ObservationService) serviceRepository.getEntityService(EntityTypes.Observation))
+                        .createEntities(dataArray.getObservations());
+        List<String> result = new ArrayList<>(created.size());
+        for (ObservationEntity<?> observation : created) {
+            result.add(observation == null ? CREATE_OBSERVATIONS_ERROR :
+                               rootUrl + OBSERVATIONS + ROUND_BRACKET_OPEN + observation.getStaIdentifier()
+                                       + ROUND_BRACKET_CLOSE);
+        }
+        return result;
+    }
+
     /**
      * Matches all POST requests on Collections not referenced directly via id but via referenced entity.
      * e.g. ../Datastreams(52)/Observations
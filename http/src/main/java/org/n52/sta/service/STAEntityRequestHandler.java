@@ -34,6 +34,7 @@ import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.shetland.ogc.filter.FilterClause;
 import org.n52.sta.data.service.EntityServiceRepository;
 import org.n52.sta.serdes.util.ElementWithQueryOptions;
+import org.n52.sta.utils.QueryOptionsCache;
 import org.n52.sta.utils.STARequestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -55,9 +56,11 @@ import java.util.HashSet;
 public class STAEntityRequestHandler implements STARequestUtils {
 
     private final EntityServiceRepository serviceRepository;
+    private final QueryOptionsCache queryOptionsCache;
 
-    public STAEntityRequestHandler(EntityServiceRepository serviceRepository) {
+    public STAEntityRequestHandler(EntityServiceRepository serviceRepository, QueryOptionsCache queryOptionsCache) {
         this.serviceRepository = serviceRepository;
+        this.queryOptionsCache = queryOptionsCache;
     }
 
     /**
@@ -70,7 +73,7 @@ public class STAEntityRequestHandler implements STARequestUtils {
      */
     @GetMapping(
             value = MAPPING_PREFIX + ENTITY_IDENTIFIED_DIRECTLY,
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public ElementWithQueryOptions<?> readEntityDirect(@PathVariable String entity,
                                                        @PathVariable String id,
@@ -78,7 +81,7 @@ public class STAEntityRequestHandler implements STARequestUtils {
         validateResource(request.getRequestURI().substring(request.getContextPath().length()), serviceRepository);
 
         String entityId = id.substring(1, id.length() - 1);
-        QueryOptions options = decodeQueryString(request);
+        QueryOptions options = decodeQueryString(request, queryOptionsCache);
         return serviceRepository.getEntityService(entity)
                                 .getEntity(entityId, options);
     }
@@ -93,7 +96,7 @@ public class STAEntityRequestHandler implements STARequestUtils {
      */
     @GetMapping(
             value = MAPPING_PREFIX + ENTITY_IDENTIFIED_DIRECTLY + SLASHREF,
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public ElementWithQueryOptions<?> readEntityRefDirect(@PathVariable String entity,
                                                           @PathVariable String id,
@@ -124,7 +127,7 @@ public class STAEntityRequestHandler implements STARequestUtils {
                     MAPPING_PREFIX + ENTITY_IDENTIFIED_BY_OBSERVATION_PATH_VARIABLE,
                     MAPPING_PREFIX + ENTITY_IDENTIFIED_BY_HISTORICAL_LOCATION_PATH_VARIABLE
             },
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public ElementWithQueryOptions<?> readRelatedEntity(@PathVariable String entity,
                                                         @PathVariable String target,
@@ -136,7 +139,7 @@ public class STAEntityRequestHandler implements STARequestUtils {
         String sourceType = entity.substring(0, entity.indexOf("("));
         String sourceId = entity.substring(sourceType.length() + 1, entity.length() - 1);
 
-        QueryOptions options = decodeQueryString(request);
+        QueryOptions options = decodeQueryString(request, queryOptionsCache);
         return serviceRepository.getEntityService(target)
                                 .getEntityByRelatedEntity(sourceId,
                                                           sourceType,
@@ -159,7 +162,7 @@ public class STAEntityRequestHandler implements STARequestUtils {
                     MAPPING_PREFIX + ENTITY_IDENTIFIED_BY_OBSERVATION_PATH_VARIABLE + SLASHREF,
                     MAPPING_PREFIX + ENTITY_IDENTIFIED_BY_HISTORICAL_LOCATION_PATH_VARIABLE + SLASHREF
             },
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public ElementWithQueryOptions<?> readRelatedEntityRef(@PathVariable String entity,
                                                            @PathVariable String target,
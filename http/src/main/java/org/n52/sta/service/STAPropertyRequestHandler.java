@@ -73,7 +73,7 @@ public class STAPropertyRequestHandler implements STARequestUtils {
      */
     @GetMapping(
             value = MAPPING_PREFIX + ENTITY_IDENTIFIED_DIRECTLY + SLASH + PATH_PROPERTY,
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public ElementWithQueryOptions<?> readEntityPropertyDirect(@PathVariable String entity,
                                                                @PathVariable String id,
@@ -117,7 +117,7 @@ public class STAPropertyRequestHandler implements STARequestUtils {
                     MAPPING_PREFIX + ENTITY_PROPERTY_IDENTIFIED_BY_OBSERVATION_PATH_VARIABLE,
                     MAPPING_PREFIX + ENTITY_PROPERTY_IDENTIFIED_BY_HISTORICAL_LOCATION_PATH_VARIABLE
             },
-            produces = "application/json"
+            produces = {MEDIA_TYPE_JSON, MEDIA_TYPE_CBOR, MEDIA_TYPE_SMILE}
     )
     public ElementWithQueryOptions<?> readRelatedEntityProperty(@PathVariable String entity,
                                                                 @PathVariable String target,
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.mqtt.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Bounded write-behind queue decoupling the Moquette handler threads from database insertion of published
+ * messages. Messages are consumed in micro-batches by a pool of writer threads.
+ * Disabled if queueCapacity is 0. Messages are then processed synchronously on the Moquette thread.
+ * Metrics are logged every metricsInterval seconds while messages are received and are exposed via JMX if enabled.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@Component
+@ManagedResource(objectName = "org.n52.sta:type=MqttIngestQueue")
+public class MqttIngestQueue implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MqttIngestQueue.class);
+
+    private static final long POLL_TIMEOUT_MS = 500;
+    private static final String QUEUE_FULL = "MQTT ingest queue is full. Dropped message on topic {}";
+
+    private final int capacity;
+    private final int workers;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long metricsInterval;
+    private final BlockingQueue<PublishedMessage> queue;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+
+    private ExecutorService executor;
+    private ScheduledExecutorService reporter;
+    private volatile boolean running;
+    private long lastReportedAccepted;
+
+    public MqttIngestQueue(@Value("${mqtt.ingest.queueCapacity:0}") int capacity,
+                           @Value("${mqtt.ingest.workers:2}") int workers,
+                           @Value("${mqtt.ingest.batchSize:100}") int batchSize,
+                           @Value("${mqtt.ingest.overflowPolicy:BLOCK}") OverflowPolicy overflowPolicy,
+                           @Value("${mqtt.ingest.metricsInterval:60}") long metricsInterval) {
+        this.capacity = capacity;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+        this.metricsInterval = metricsInterval;
+        this.queue = capacity > 0 ? new ArrayBlockingQueue<>(capacity) : null;
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Starts the writer threads.
+     *
+     * @param consumer processes a batch of messages. Must not throw.
+     */
+    public synchronized void start(Consumer<List<PublishedMessage>> consumer) {
+        if (!isEnabled() || running) {
+            return;
+        }
+        running = true;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "mqtt-ingest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.execute(() -> work(consumer));
+        }
+        if (metricsInterval > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "mqtt-ingest-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(this::logMetrics, metricsInterval, metricsInterval, TimeUnit.SECONDS);
+        }
+        LOGGER.info("Initialized MQTT ingest queue with capacity: {}, workers: {}, batchSize: {}, overflowPolicy: {}",
+                    capacity, workers, batchSize, overflowPolicy);
+    }
+
+    /**
+     * Adds a message to the queue. Behaviour on full queue is defined by the configured {@link OverflowPolicy}.
+     *
+     * @param message message to be queued
+     * @return true if the message was queued, false if it was dropped
+     */
+    public boolean offer(PublishedMessage message) {
+        switch (overflowPolicy) {
+        case DROP_NEWEST:
+            if (!queue.offer(message)) {
+                dropped.incrementAndGet();
+                LOGGER.warn(QUEUE_FULL, message.getTopic());
+                return false;
+            }
+            break;
+        case DROP_OLDEST:
+            while (!queue.offer(message)) {
+                PublishedMessage oldest = queue.poll();
+                if (oldest != null) {
+                    dropped.incrementAndGet();
+                    LOGGER.warn(QUEUE_FULL, oldest.getTopic());
+                }
+            }
+            break;
+        case BLOCK:
+        default:
+            try {
+                // Blocks the publishing client until there is space in the queue
+                queue.put(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.incrementAndGet();
+                return false;
+            }
+            break;
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    private void work(Consumer<List<PublishedMessage>> consumer) {
+        List<PublishedMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PublishedMessage head = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (head == null) {
+                    continue;
+                }
+                batch.add(head);
+                queue.drainTo(batch, batchSize - 1);
+                consumer.accept(batch);
+                processed.addAndGet(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Error while processing MQTT ingest batch: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Logs the metrics of the queue. Skipped while the queue is idle, i.e. no messages were accepted since the last
+     * report and the queue is empty.
+     */
+    private void logMetrics() {
+        long currentAccepted = accepted.get();
+        int depth = getQueueDepth();
+        if (currentAccepted != lastReportedAccepted || depth > 0) {
+            lastReportedAccepted = currentAccepted;
+            LOGGER.info("MQTT ingest queue depth: {}, lag: {} ms, accepted: {}, dropped: {}, processed: {}",
+                        depth, getLagMillis(), currentAccepted, getDroppedCount(), getProcessedCount());
+        }
+    }
+
+    @Override
+    public synchronized void destroy() throws InterruptedException {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (running) {
+            running = false;
+            executor.shutdown();
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOGGER.warn("MQTT ingest queue did not drain in time. {} messages discarded.", queue.size());
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "Number of messages waiting to be written")
+    public int getQueueDepth() {
+        return isEnabled() ? queue.size() : 0;
+    }
+
+    @ManagedAttribute(description = "Time in ms the oldest queued message has been waiting")
+    public long getLagMillis() {
+        PublishedMessage oldest = isEnabled() ? queue.peek() : null;
+        return oldest == null ? 0L : System.currentTimeMillis() - oldest.getReceivedAt();
+    }
+
+    @ManagedAttribute(description = "Number of messages accepted into the queue")
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages dropped because the queue was full")
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @ManagedAttribute(description = "Number of messages handed to the writers")
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+
+    /**
+     * Behaviour when a message is published while the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Block the Moquette thread until there is space (backpressure to the client)
+         */
+        BLOCK,
+        /**
+         * Discard the message that is being published
+         */
+        DROP_NEWEST,
+        /**
+         * Discard the oldest queued message
+         */
+        DROP_OLDEST
+    }
+
+
+    /**
+     * Copy of a published message. Payload is copied as the underlying buffer is released by Moquette after the
+     * interceptor returns.
+     */
+    public static final class PublishedMessage {
+
+        private final String topic;
+        private final String payload;
+        private final long receivedAt;
+
+        public PublishedMessage(String topic, String payload) {
+            this.topic = topic;
+            this.payload = payload;
+            this.receivedAt = System.currentTimeMillis();
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+    }
+}
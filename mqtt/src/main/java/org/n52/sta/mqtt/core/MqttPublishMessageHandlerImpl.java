@@ -33,21 +33,30 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.moquette.interception.messages.InterceptPublishMessage;
 import org.n52.series.db.beans.IdEntity;
+import org.n52.series.db.beans.sta.ObservationEntity;
+import org.n52.shetland.ogc.sta.exception.STACRUDException;
 import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
 import org.n52.shetland.ogc.sta.model.STAEntityDefinition;
 import org.n52.sta.data.service.AbstractSensorThingsEntityService;
 import org.n52.sta.data.service.EntityServiceRepository;
+import org.n52.sta.data.service.EntityServiceRepository.EntityTypes;
+import org.n52.sta.data.service.ObservationService;
+import org.n52.sta.mqtt.core.MqttIngestQueue.PublishedMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -63,15 +72,18 @@ public class MqttPublishMessageHandlerImpl implements MqttPublishMessageHandler
     private final Set<String> publishTopics;
 
     private final boolean readOnly;
+    private final MqttIngestQueue ingestQueue;
 
     public MqttPublishMessageHandlerImpl(
             @Value("${server.feature.mqttPublishTopics:Observations}") List<String> publishTopics,
             @Value("${server.feature.mqttReadOnly}") boolean readOnly,
             EntityServiceRepository serviceRepository,
-            ObjectMapper mapper) {
+            ObjectMapper mapper,
+            MqttIngestQueue ingestQueue) {
         this.serviceRepository = serviceRepository;
         this.mapper = mapper;
         this.readOnly = readOnly;
+        this.ingestQueue = ingestQueue;
         Set topics = new HashSet<>(publishTopics);
 
         // Fallback to default if parameter was invalid
@@ -82,6 +94,7 @@ public class MqttPublishMessageHandlerImpl implements MqttPublishMessageHandler
             this.publishTopics = topics;
         }
         LOGGER.info("Initialized mqttPublishTopics: " + String.join(",", topics));
+        ingestQueue.start(this::processBatch);
     }
 
     /**
@@ -98,55 +111,138 @@ public class MqttPublishMessageHandlerImpl implements MqttPublishMessageHandler
     }
 
     @Override public <T extends IdEntity> void processPublishMessage(InterceptPublishMessage msg) {
-        try {
-            if (msg.getClientID().equals(INTERNAL_CLIENT_ID) || readOnly) {
-                return;
-            }
-            // This may only be a reference to Observation collection
-            // Remove leading slash if present
-            String topic = (msg.getTopicName().startsWith("/")) ? msg.getTopicName().substring(1) : msg.getTopicName();
-
-            // Check topic for syntax+semantics
-            validateResource(new StringBuffer(topic), serviceRepository);
-
-            // Check if topic references valid Collection
-            boolean valid = false;
-            String collection = "";
-            for (String publishTopic : publishTopics) {
-                if (topic.endsWith(publishTopic)) {
-                    valid = true;
-                    collection = publishTopic;
-                    break;
-                }
+        if (msg.getClientID().equals(INTERNAL_CLIENT_ID) || readOnly) {
+            return;
+        }
+        // Payload buffer is released after this interceptor returns so it needs to be copied here
+        PublishedMessage message =
+                new PublishedMessage(msg.getTopicName(), msg.getPayload().toString(Charset.defaultCharset()));
+        if (ingestQueue.isEnabled()) {
+            ingestQueue.offer(message);
+        } else {
+            try {
+                this.<T>processMessage(message);
+            } catch (Throwable e) {
+                logFailure(message, e);
             }
-            if (valid) {
-                String payload;
-                // Check whether we are posted via a related collection
-                if (topic.contains("/")) {
-                    String[] split = topic.split("/");
-                    String[] reference = split[split.length - 2].split("\\(");
-                    String sourceType = reference[0];
-                    String sourceId = reference[1].replace(")", "");
-                    ObjectNode jsonBody =
-                            (ObjectNode) mapper.readTree(msg.getPayload().toString(Charset.defaultCharset()));
-                    jsonBody.put(REFERENCED_FROM_TYPE, sourceType);
-                    jsonBody.put(REFERENCED_FROM_ID, sourceId);
-                    payload = jsonBody.toString();
+        }
+    }
+
+    /**
+     * Processes a batch of queued messages. Observations referencing an existing Datastream are inserted in one
+     * transaction per Datastream. If that transaction fails, the messages of the Datastream are retried
+     * individually so that only the failing messages are lost. All other Entities are created individually.
+     *
+     * @param batch messages to be processed
+     */
+    private void processBatch(List<PublishedMessage> batch) {
+        Map<String, List<ObservationEntity<?>>> observations = new LinkedHashMap<>();
+        Map<String, List<PublishedMessage>> observationMessages = new HashMap<>();
+        for (PublishedMessage message : batch) {
+            try {
+                String topic = getTopic(message);
+                String collection = getCollection(topic);
+                IdEntity entity = parseEntity(topic, collection, message.getPayload());
+                if (entity instanceof ObservationEntity
+                        && ((ObservationEntity<?>) entity).getDatastream() != null
+                        && !((ObservationEntity<?>) entity).getDatastream().isSetName()) {
+                    String datastream = ((ObservationEntity<?>) entity).getDatastream().getStaIdentifier();
+                    observations.computeIfAbsent(datastream, k -> new ArrayList<>()).add((ObservationEntity<?>) entity);
+                    observationMessages.computeIfAbsent(datastream, k -> new ArrayList<>()).add(message);
                 } else {
-                    payload = msg.getPayload().toString(Charset.defaultCharset());
+                    create(collection, entity);
                 }
-
-                Class<T> clazz = collectionNameToClass(collection);
-                ((AbstractSensorThingsEntityService<?, T, ? extends T>) serviceRepository.getEntityService(collection))
-                        .create(mapper.readValue(payload, clazz));
-            } else {
-                throw new STAInvalidUrlException("Topic does not reference a Collection allowed for POSTing via mqtt");
+            } catch (Throwable e) {
+                logFailure(message, e);
             }
+        }
+        for (Map.Entry<String, List<ObservationEntity<?>>> group : observations.entrySet()) {
+            createObservations(group.getValue(), observationMessages.get(group.getKey()));
+        }
+    }
+
+    private void createObservations(List<ObservationEntity<?>> observations, List<PublishedMessage> messages) {
+        List<ObservationEntity<?>> created;
+        try {
+            created = ((ObservationService) serviceRepository.getEntityService(EntityTypes.Observation))
+                    .createEntities(observations);
         } catch (Throwable e) {
-            LOGGER.error("Creation of Entity {} on topic {} failed with Exception {}!",
-                         msg.getPayload().toString(StandardCharsets.UTF_8),
-                         msg.getTopicName(),
+            LOGGER.debug("Creation of {} Observations failed with Exception {}! Retrying individually.",
+                         observations.size(),
                          e.getMessage());
+            for (PublishedMessage message : messages) {
+                try {
+                    processMessage(message);
+                } catch (Throwable ex) {
+                    logFailure(message, ex);
+                }
+            }
+            return;
         }
+        for (int i = 0; i < created.size(); i++) {
+            if (created.get(i) == null) {
+                LOGGER.error("Creation of Entity {} on topic {} failed!",
+                             messages.get(i).getPayload(),
+                             messages.get(i).getTopic());
+            }
+        }
+    }
+
+    private <T extends IdEntity> void processMessage(PublishedMessage message) throws Exception {
+        String topic = getTopic(message);
+        String collection = getCollection(topic);
+        this.<T>create(collection, parseEntity(topic, collection, message.getPayload()));
+    }
+
+    private String getTopic(PublishedMessage message) throws Exception {
+        // This may only be a reference to Observation collection
+        // Remove leading slash if present
+        String topic = (message.getTopic().startsWith("/")) ? message.getTopic().substring(1) : message.getTopic();
+
+        // Check topic for syntax+semantics
+        validateResource(new StringBuffer(topic), serviceRepository);
+        return topic;
+    }
+
+    private String getCollection(String topic) throws STAInvalidUrlException {
+        // Check if topic references valid Collection
+        for (String publishTopic : publishTopics) {
+            if (topic.endsWith(publishTopic)) {
+                return publishTopic;
+            }
+        }
+        throw new STAInvalidUrlException("Topic does not reference a Collection allowed for POSTing via mqtt");
+    }
+
+    private <T extends IdEntity> T parseEntity(String topic, String collection, String rawPayload)
+            throws IOException, STAInvalidUrlException {
+        String payload;
+        // Check whether we are posted via a related collection
+        if (topic.contains("/")) {
+            String[] split = topic.split("/");
+            String[] reference = split[split.length - 2].split("\\(");
+            String sourceType = reference[0];
+            String sourceId = reference[1].replace(")", "");
+            ObjectNode jsonBody = (ObjectNode) mapper.readTree(rawPayload);
+            jsonBody.put(REFERENCED_FROM_TYPE, sourceType);
+            jsonBody.put(REFERENCED_FROM_ID, sourceId);
+            payload = jsonBody.toString();
+        } else {
+            payload = rawPayload;
+        }
+        Class<T> clazz = collectionNameToClass(collection);
+        return mapper.readValue(payload, clazz);
+    }
+
+    private <T extends IdEntity> void create(String collection, T entity) throws STACRUDException {
+        ((AbstractSensorThingsEntityService<?, T, ? extends T>) serviceRepository.getEntityService(collection))
+                .create(entity);
+    }
+
+    private void logFailure(PublishedMessage message, Throwable e) {
+        LOGGER.error("Creation of Entity {} on topic {} failed with Exception {}!",
+                     message.getPayload(),
+                     message.getTopic(),
+                     e.getMessage());
     }
 }
@@ -41,6 +41,7 @@ import io.netty.handler.codec.mqtt.MqttMessageType;
 import io.netty.handler.codec.mqtt.MqttPublishMessage;
 import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
 import io.netty.handler.codec.mqtt.MqttQoS;
+import org.n52.series.db.beans.HibernateRelations;
 import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.sta.data.service.EntityServiceRepository;
 import org.n52.sta.mqtt.MqttHandlerException;
@@ -49,18 +50,17 @@ import org.n52.sta.mqtt.core.subscription.MqttEntityCollectionSubscription;
 import org.n52.sta.mqtt.core.subscription.MqttEntitySubscription;
 import org.n52.sta.mqtt.core.subscription.MqttPropertySubscription;
 import org.n52.sta.mqtt.core.subscription.MqttSelectSubscription;
+import org.n52.sta.mqtt.core.subscription.MqttSubscriptionIndex;
 import org.n52.sta.serdes.util.ElementWithQueryOptions;
+import org.n52.sta.utils.ResourcePath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
@@ -70,6 +70,8 @@ public class MqttSubscriptionEventHandlerImpl implements MqttSubscriptionEventHa
 
     private static final String BASE_URL = "";
     private static final Logger LOGGER = LoggerFactory.getLogger(MqttSubscriptionEventHandlerImpl.class);
+    private static final String UNKNOWN_SUBSCRIPTION_TYPE =
+            "Error while parsing MQTT topic. Could not identify subscription type!";
     private final MqttFixedHeader mqttFixedHeader = new MqttFixedHeader(
             MqttMessageType.PUBLISH,
             false,
@@ -80,14 +82,20 @@ public class MqttSubscriptionEventHandlerImpl implements MqttSubscriptionEventHa
     private final MqttUtil config;
     private final EntityServiceRepository serviceRepository;
     private Server mqttBroker;
-    private Map<AbstractMqttSubscription, HashSet<String>> subscriptions = new HashMap<>();
+
+    /*
+     * Subscribed clients per subscription. A subscription is removed once its last client unsubscribed.
+     */
+    private final Map<AbstractMqttSubscription, Set<String>> subscriptions = new ConcurrentHashMap<>();
+    private final MqttSubscriptionIndex subscriptionIndex = new MqttSubscriptionIndex();
 
     private final ObjectMapper mapper;
 
     /*
-     * List of all Entity Types that are currently subscribed to. Used for fail-fast.
+     * Number of subscriptions per Entity Type. Keys are all Entity Types that are currently subscribed to.
+     * Used for fail-fast.
      */
-    private Set<String> watchedEntityTypes = new HashSet<>();
+    private final ConcurrentHashMap<String, Integer> watchedEntityTypes = new ConcurrentHashMap<>();
 
     public MqttSubscriptionEventHandlerImpl(MqttUtil config,
                                             EntityServiceRepository serviceRepository,
@@ -99,11 +107,10 @@ public class MqttSubscriptionEventHandlerImpl implements MqttSubscriptionEventHa
 
     @Override
     public Set<String> getWatchedEntityTypes() {
-        return watchedEntityTypes;
+        return watchedEntityTypes.keySet();
     }
 
     @Override
-    @Async
     public void handleEvent(Object rawObject,
                             String entityType,
                             Set<String> differenceMap,
@@ -116,8 +123,12 @@ public class MqttSubscriptionEventHandlerImpl implements MqttSubscriptionEventHa
             // Multiple serializations may be necessary due to different select clauses.
             Map<QueryOptions, ByteBuf> serializedCache = new HashMap<>();
 
-            // Check all subscriptions for a match
-            for (AbstractMqttSubscription subscrip : subscriptions.keySet()) {
+            // Check only subscriptions that may match this entity
+            String staIdentifier = (rawObject instanceof HibernateRelations.HasStaIdentifier)
+                    ? ((HibernateRelations.HasStaIdentifier) rawObject).getStaIdentifier()
+                    : null;
+            for (AbstractMqttSubscription subscrip
+                    : subscriptionIndex.getCandidates(entityType, staIdentifier, collections)) {
 
                 String topic = subscrip.checkSubscription(rawObject, entityType, collections, differenceMap);
 
@@ -147,27 +158,30 @@ public class MqttSubscriptionEventHandlerImpl implements MqttSubscriptionEventHa
     }
 
     public void addSubscription(AbstractMqttSubscription subscription, String clientId) {
-        HashSet<String> clients = subscriptions.get(subscription);
-        if (clients == null) {
-            clients = new HashSet<>();
-        }
-        LOGGER.debug("Adding to watched EntityType: " + subscription.getEntityType());
-        watchedEntityTypes.add(subscription.getEntityType());
-        clients.add(clientId);
-        subscriptions.put(subscription, clients);
+        subscriptions.compute(subscription, (key, clients) -> {
+            Set<String> result = clients;
+            if (result == null) {
+                result = ConcurrentHashMap.newKeySet();
+                subscriptionIndex.add(key);
+                LOGGER.debug("Adding to watched EntityType: " + key.getEntityType());
+                watchedEntityTypes.merge(key.getEntityType(), 1, Integer::sum);
+            }
+            result.add(clientId);
+            return result;
+        });
     }
 
     public void removeSubscription(AbstractMqttSubscription subscription, String clientId) {
-        HashSet<String> clients = subscriptions.get(subscription);
-        if (clients != null) {
-            if (clients.size() == 1) {
-                subscriptions.remove(subscription);
-                watchedEntityTypes.remove(subscription.getEntityType());
-            } else {
-                clients.remove(clientId);
-                subscriptions.put(subscription, clients);
+        subscriptions.computeIfPresent(subscription, (key, clients) -> {
+            clients.remove(clientId);
+            if (clients.isEmpty()) {
+                subscriptionIndex.remove(key);
+                // Only stop watching the EntityType once its last subscription is removed
+                watchedEntityTypes.computeIfPresent(key.getEntityType(), (type, count) -> count > 1 ? count - 1 : null);
+                return null;
             }
-        }
+            return clients;
+        });
     }
 
     @Override public void processSubscribeMessage(InterceptSubscribeMessage msg) throws MqttHandlerException {
@@ -180,62 +194,67 @@ public class MqttSubscriptionEventHandlerImpl implements MqttSubscriptionEventHa
 
     private AbstractMqttSubscription createMqttSubscription(String rawTopic) throws MqttHandlerException {
         try {
-            Matcher mt;
             // Delete possible leading slash
             String topic = (rawTopic.startsWith("/")) ? rawTopic.substring(1) : rawTopic;
+            int queryStart = topic.indexOf("?");
+            ResourcePath path = ResourcePath.parse(queryStart == -1 ? topic : topic.substring(0, queryStart));
 
-            // Check topic for syntax+semantics
-            if (topic.contains("?")) {
-                // only check path part of the topic (excluding the select parameter)
-                validateResource(topic.substring(0, topic.indexOf("?")), serviceRepository);
-                for (Pattern namedSelectPattern : NAMED_SELECT_PATTERNS) {
-                    mt = namedSelectPattern.matcher(topic);
-                    if (mt.matches()) {
-                        // OGC-15-078r6 14.2.4
-                        return new MqttSelectSubscription(topic, mt);
-                    }
-                }
-            } else {
-                // check full topic
-                // This will fail if we have a PropertySubscription
-                try {
-                    validateResource(topic, serviceRepository);
-                    for (Pattern collectionPattern : NAMED_COLL_PATTERNS) {
-                        mt = collectionPattern.matcher(topic);
-                        if (mt.matches()) {
-                            // OGC-15-078r6 14.2.1
-                            return new MqttEntityCollectionSubscription(topic, mt);
-                        }
-                    }
+            // Subscriptions are only supported on Entities and collections addressed directly or via a single
+            // related Entity, e.g. Things(52)/Datastreams
+            ResourcePath.Segment target = path.getTarget();
+            ResourcePath.Segment source = path.getSource();
+            if (path.isRef()
+                    || path.isValue()
+                    || path.getSegments().size() > 2
+                    || (source != null && target.getId() != null)) {
+                throw new MqttHandlerException(UNKNOWN_SUBSCRIPTION_TYPE);
+            }
 
-                    for (Pattern namedEntityPattern : NAMED_ENTITY_PATTERNS) {
-                        mt = namedEntityPattern.matcher(topic);
-                        if (mt.matches()) {
-                            // OGC-15-078r6 14.2.2
-                            return new MqttEntitySubscription(topic, mt);
-                        }
-                    }
-                } catch (Exception ex) {
-                    for (Pattern namedPropertyPattern : NAMED_PROP_PATTERNS) {
-                        mt = namedPropertyPattern.matcher(topic);
-                        if (mt.matches()) {
-                            // OGC-15-078r6 14.2.3
-                            // Only check path part of the topic (excluding the property)
-                            String path = topic.substring(0, topic.lastIndexOf("/"));
-                            validateResource(path, serviceRepository);
-                            return new MqttPropertySubscription(topic, mt);
-                        }
-                    }
+            // Check topic for semantics. Syntax was already checked while parsing
+            validateResource(path, serviceRepository);
+            if (queryStart != -1) {
+                String select = parseSelect(topic.substring(queryStart + 1));
+                if (select != null && path.isNavigationOnly() && !target.isEntity()) {
+                    // OGC-15-078r6 14.2.4
+                    return new MqttSelectSubscription(topic, path, select);
                 }
-
+            } else if (path.getProperty() != null) {
+                // OGC-15-078r6 14.2.3
+                return new MqttPropertySubscription(topic, path);
+            } else if (target.isEntity()) {
+                // OGC-15-078r6 14.2.2
+                return new MqttEntitySubscription(topic, path);
+            } else {
+                // OGC-15-078r6 14.2.1
+                return new MqttEntityCollectionSubscription(topic, path);
             }
 
-            throw new MqttHandlerException("Error while parsing MQTT topic. Could not identify subscription type!");
+            throw new MqttHandlerException(UNKNOWN_SUBSCRIPTION_TYPE);
         } catch (Exception ex) {
             throw new MqttHandlerException("Error while parsing MQTT topic.", ex);
         }
     }
 
+    /**
+     * Extracts the selected properties from the query part of a topic, e.g. $select=id,name
+     *
+     * @param query query part of the topic
+     * @return comma-separated list of selected properties. null if the query is not a valid $select
+     */
+    private String parseSelect(String query) {
+        String prefix = "$select=";
+        if (!query.startsWith(prefix) || query.length() == prefix.length()) {
+            return null;
+        }
+        for (int i = prefix.length(); i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == ',')) {
+                return null;
+            }
+        }
+        return query.substring(prefix.length());
+    }
+
     @Override public void setMqttBroker(Server mqttBroker) {
         this.mqttBroker = mqttBroker;
     }
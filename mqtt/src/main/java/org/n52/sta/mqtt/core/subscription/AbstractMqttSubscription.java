@@ -81,6 +81,23 @@ public abstract class AbstractMqttSubscription {
         return wantedEntityType;
     }
 
+    public String getSourceEntityType() {
+        return sourceEntityType;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    /**
+     * Returns the identifier of the Entity this subscription is watching directly.
+     *
+     * @return identifier if this subscription is on a single Entity (e.g. /Things(52)), else null
+     */
+    public String getWantedIdentifier() {
+        return null;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(topic);
@@ -35,7 +35,7 @@
 package org.n52.sta.mqtt.core.subscription;
 
 import org.n52.series.db.beans.HibernateRelations;
-import org.n52.sta.utils.STARequestUtils;
+import org.n52.sta.utils.ResourcePath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -43,7 +43,6 @@ import org.springframework.util.Assert;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.regex.Matcher;
 
 /**
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
@@ -53,29 +52,29 @@ public class MqttEntityCollectionSubscription extends AbstractMqttSubscription {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MqttEntityCollectionSubscription.class);
 
-    public MqttEntityCollectionSubscription(String topic, Matcher mt) {
+    public MqttEntityCollectionSubscription(String topic, ResourcePath path) {
         super(topic);
-        init(mt);
+        init(path);
         LOGGER.debug(this.toString());
     }
 
-    public MqttEntityCollectionSubscription(String topic, Matcher mt, boolean calledFromSubclass) {
+    public MqttEntityCollectionSubscription(String topic, ResourcePath path, boolean calledFromSubclass) {
         super(topic);
-        init(mt);
+        init(path);
     }
 
-    private void init(Matcher mt) {
+    private void init(ResourcePath path) {
+        ResourcePath.Segment source = path.getSource();
         // Root collection
         // E.g. /Things
-        if (!mt.pattern().pattern().contains(STARequestUtils.GROUPNAME_SOURCE_IDENTIFIER)) {
-            wantedEntityType = mt.group(1);
+        if (source == null) {
+            wantedEntityType = path.getTarget().getName();
         } else {
             // Related collection
             // E.g. /Things(52)/Datastreams
-            sourceEntityType = mt.group(STARequestUtils.GROUPNAME_SOURCE_NAME);
-            sourceId = mt.group(STARequestUtils.GROUPNAME_SOURCE_IDENTIFIER);
-            sourceId = sourceId.substring(1, sourceId.length() - 1);
-            wantedEntityType = mt.group(STARequestUtils.GROUPNAME_WANTED_NAME);
+            sourceEntityType = source.getName();
+            sourceId = source.getId();
+            wantedEntityType = path.getTarget().getName();
             Assert.notNull(sourceEntityType, "Unable to parse topic. Could not extract sourceEntityType");
             Assert.notNull(sourceId, "Unable to parse topic. Could not extract sourceId");
         }
@@ -35,14 +35,13 @@
 package org.n52.sta.mqtt.core.subscription;
 
 import org.n52.series.db.beans.HibernateRelations;
-import org.n52.sta.utils.STARequestUtils;
+import org.n52.sta.utils.ResourcePath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
 
 /**
  * @author <a href="mailto:s.drost@52north.org">Sebastian Drost</a>
@@ -50,42 +49,48 @@ import java.util.regex.Matcher;
 public class MqttEntitySubscription extends AbstractMqttSubscription {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MqttEntitySubscription.class);
+    private static final String NO_SOURCE_ENTITY_TYPE = "Unable to parse topic. Could not extract sourceEntityType";
 
     private String wantedIdentifier;
 
-    public MqttEntitySubscription(String topic, Matcher mt) {
+    public MqttEntitySubscription(String topic, ResourcePath path) {
         super(topic);
-        init(mt);
+        init(path);
         LOGGER.debug(this.toString());
     }
 
-    public MqttEntitySubscription(String topic, Matcher mt, boolean calledFromSubclass) {
+    public MqttEntitySubscription(String topic, ResourcePath path, boolean calledFromSubclass) {
         super(topic);
-        init(mt);
+        init(path);
     }
 
-    private void init(Matcher mt) {
+    private void init(ResourcePath path) {
+        ResourcePath.Segment source = path.getSource();
         // Referenced Entity
         // E.g. /Datastream(52)/Sensor
-        if (mt.group(STARequestUtils.GROUPNAME_WANTED_IDENTIFIER) == null) {
-            sourceEntityType = mt.group(STARequestUtils.GROUPNAME_SOURCE_NAME);
-            sourceId = mt.group(STARequestUtils.GROUPNAME_SOURCE_IDENTIFIER);
-            sourceId = sourceId.substring(1, sourceId.length() - 1);
-            wantedEntityType = mt.group(STARequestUtils.GROUPNAME_WANTED_NAME);
+        if (path.getTarget().getId() == null) {
+            Assert.notNull(source, NO_SOURCE_ENTITY_TYPE);
+            sourceEntityType = source.getName();
+            sourceId = source.getId();
+            wantedEntityType = path.getTarget().getName();
             Assert.notNull(sourceId, "Unable to parse topic. Could not extract sourceId");
-            Assert.notNull(sourceEntityType, "Unable to parse topic. Could not extract sourceEntityType");
+            Assert.notNull(sourceEntityType, NO_SOURCE_ENTITY_TYPE);
         } else {
             // Direct Entity
             // E.g. /Things(52)
-            wantedEntityType = mt.group(STARequestUtils.GROUPNAME_WANTED_NAME);
-            wantedIdentifier = mt.group(STARequestUtils.GROUPNAME_WANTED_IDENTIFIER);
-            wantedIdentifier = wantedIdentifier.substring(1, wantedIdentifier.length() - 1);
+            wantedEntityType = path.getTarget().getName();
+            wantedIdentifier = path.getTarget().getId();
             Assert.notNull(wantedIdentifier, "Unable to parse topic. Could not extract wantedIdentifier");
         }
 
         Assert.notNull(wantedEntityType, "Unable to parse topic. Could not extract wantedEntityType");
     }
 
+    @Override
+    public String getWantedIdentifier() {
+        return wantedIdentifier;
+    }
+
     @Override
     public boolean matches(HibernateRelations.HasStaIdentifier entity,
                            String realEntityType,
@@ -38,7 +38,7 @@ import org.n52.series.db.beans.HibernateRelations;
 import org.n52.shetland.filter.SelectFilter;
 import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.shetland.ogc.filter.FilterClause;
-import org.n52.sta.utils.STARequestUtils;
+import org.n52.sta.utils.ResourcePath;
 import org.n52.svalbard.odata.core.QueryOptionsFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +47,6 @@ import org.springframework.util.Assert;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
 
 /**
  * @author <a href="mailto:s.drost@52north.org">Sebastian Drost</a>
@@ -60,9 +59,9 @@ public class MqttPropertySubscription extends MqttEntitySubscription {
 
     private QueryOptions queryOptions;
 
-    public MqttPropertySubscription(String topic, Matcher mt) {
-        super(topic, mt, true);
-        watchedProperty = mt.group(STARequestUtils.GROUPNAME_PROPERTY);
+    public MqttPropertySubscription(String topic, ResourcePath path) {
+        super(topic, path, true);
+        watchedProperty = path.getProperty();
         Assert.notNull(watchedProperty, "Unable to parse topic. Could not extract watchedProperty");
         LOGGER.debug(this.toString());
 
@@ -32,7 +32,7 @@ package org.n52.sta.mqtt.core.subscription;
 import org.n52.shetland.filter.SelectFilter;
 import org.n52.shetland.oasis.odata.query.option.QueryOptions;
 import org.n52.shetland.ogc.filter.FilterClause;
-import org.n52.sta.utils.STARequestUtils;
+import org.n52.sta.utils.ResourcePath;
 import org.n52.svalbard.odata.core.QueryOptionsFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +40,6 @@ import org.springframework.util.Assert;
 
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.regex.Matcher;
 
 /**
  * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
@@ -53,16 +52,16 @@ public class MqttSelectSubscription extends MqttEntityCollectionSubscription {
 
     private QueryOptions queryOptions;
 
-    public MqttSelectSubscription(String topic, Matcher mt) {
-        super(topic, mt, true);
+    public MqttSelectSubscription(String topic, ResourcePath path, String selectOption) {
+        super(topic, path, true);
 
-        selectOption = mt.group(STARequestUtils.GROUPNAME_SELECT);
+        this.selectOption = selectOption;
         Assert.notNull(selectOption, "Unable to parse topic. Could not extract selectOption");
 
         QueryOptionsFactory qof = new QueryOptionsFactory();
         HashSet<FilterClause> filters = new HashSet<>();
         HashSet<String> filterItems = new HashSet<>();
-        Collections.addAll(filterItems, mt.group(STARequestUtils.GROUPNAME_SELECT).split(","));
+        Collections.addAll(filterItems, selectOption.split(","));
         filters.add(new SelectFilter(filterItems));
         queryOptions = qof.createQueryOptions(filters);
         LOGGER.debug(this.toString());
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.mqtt.core.subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of subscriptions used to find all subscriptions that may match a given change event without checking every
+ * registered subscription. Subscriptions are indexed by wantedEntityType and either
+ * <ul>
+ *     <li>nothing (root collections, e.g. /Things)</li>
+ *     <li>wantedIdentifier (single Entity, e.g. /Things(52))</li>
+ *     <li>sourceEntityType + sourceId (related Entity/Collection, e.g. /Things(52)/Datastreams)</li>
+ * </ul>
+ * Candidates returned by {@link #getCandidates(String, String, Map)} still need to be checked via
+ * {@link AbstractMqttSubscription#checkSubscription(Object, String, Map, Set)}, as e.g. property subscriptions
+ * additionally check the changed properties.
+ * <p>
+ * All operations are thread-safe. Lookups do not lock and may run concurrently with (un-)subscriptions.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class MqttSubscriptionIndex {
+
+    private static final String OPEN_PAREN = "(";
+    private static final String CLOSE_PAREN = ")";
+
+    // wantedEntityType -> subscriptions on root collection
+    private final Map<String, Set<AbstractMqttSubscription>> byType = new ConcurrentHashMap<>();
+
+    // wantedEntityType -> wantedIdentifier -> subscriptions on single entity
+    private final Map<String, Map<String, Set<AbstractMqttSubscription>>> byIdentifier = new ConcurrentHashMap<>();
+
+    // wantedEntityType -> sourceEntityType(sourceId) -> subscriptions on related entity/collection
+    private final Map<String, Map<String, Set<AbstractMqttSubscription>>> bySource = new ConcurrentHashMap<>();
+
+    public void add(AbstractMqttSubscription subscription) {
+        String type = subscription.getEntityType();
+        if (subscription.getWantedIdentifier() != null) {
+            addTo(byIdentifier.computeIfAbsent(type, k -> new ConcurrentHashMap<>()),
+                  subscription.getWantedIdentifier(),
+                  subscription);
+        } else if (subscription.getSourceId() != null) {
+            addTo(bySource.computeIfAbsent(type, k -> new ConcurrentHashMap<>()),
+                  sourceKey(subscription.getSourceEntityType(), subscription.getSourceId()),
+                  subscription);
+        } else {
+            addTo(byType, type, subscription);
+        }
+    }
+
+    public void remove(AbstractMqttSubscription subscription) {
+        String type = subscription.getEntityType();
+        if (subscription.getWantedIdentifier() != null) {
+            removeFrom(byIdentifier.get(type), subscription.getWantedIdentifier(), subscription);
+        } else if (subscription.getSourceId() != null) {
+            removeFrom(bySource.get(type),
+                       sourceKey(subscription.getSourceEntityType(), subscription.getSourceId()),
+                       subscription);
+        } else {
+            removeFrom(byType, type, subscription);
+        }
+    }
+
+    /**
+     * Returns all subscriptions that may match an entity with given type, identifier and related entities.
+     * Does not lock. Subscriptions added or removed concurrently may or may not be included.
+     *
+     * @param entityType      Type of Entity
+     * @param staIdentifier   Identifier of Entity
+     * @param relatedEntities Map with EntityType-ID pairs for the related entities. May be null
+     * @return list of candidate subscriptions. Each subscription is contained at most once.
+     */
+    public List<AbstractMqttSubscription> getCandidates(String entityType,
+                                                        String staIdentifier,
+                                                        Map<String, Set<String>> relatedEntities) {
+        List<AbstractMqttSubscription> candidates = new ArrayList<>();
+        candidates.addAll(byType.getOrDefault(entityType, Collections.emptySet()));
+
+        Map<String, Set<AbstractMqttSubscription>> identified = byIdentifier.get(entityType);
+        if (identified != null && staIdentifier != null) {
+            candidates.addAll(identified.getOrDefault(staIdentifier, Collections.emptySet()));
+        }
+
+        Map<String, Set<AbstractMqttSubscription>> related = bySource.get(entityType);
+        if (related != null && relatedEntities != null) {
+            for (Map.Entry<String, Set<String>> collection : relatedEntities.entrySet()) {
+                for (String id : collection.getValue()) {
+                    candidates.addAll(related.getOrDefault(sourceKey(collection.getKey(), id),
+                                                           Collections.emptySet()));
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private static void addTo(Map<String, Set<AbstractMqttSubscription>> index,
+                              String key,
+                              AbstractMqttSubscription subscription) {
+        index.compute(key, (k, subs) -> {
+            Set<AbstractMqttSubscription> result = (subs == null) ? ConcurrentHashMap.newKeySet() : subs;
+            result.add(subscription);
+            return result;
+        });
+    }
+
+    private static void removeFrom(Map<String, Set<AbstractMqttSubscription>> index,
+                                   String key,
+                                   AbstractMqttSubscription subscription) {
+        if (index != null) {
+            // Entity types are never removed from the outer maps as there is only a fixed number of them
+            index.computeIfPresent(key, (k, subs) -> {
+                subs.remove(subscription);
+                return subs.isEmpty() ? null : subs;
+            });
+        }
+    }
+
+    private static String sourceKey(String sourceEntityType, String sourceId) {
+        return sourceEntityType + OPEN_PAREN + sourceId + CLOSE_PAREN;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.mqtt.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.sta.DatastreamEntity;
+import org.n52.series.db.beans.sta.ObservationEntity;
+import org.n52.series.db.beans.sta.QuantityObservationEntity;
+import org.n52.shetland.ogc.sta.exception.STACRUDException;
+import org.n52.sta.data.service.AbstractSensorThingsEntityService;
+import org.n52.sta.data.service.EntityServiceRepository;
+import org.n52.sta.data.service.ObservationService;
+import org.n52.sta.mqtt.core.MqttIngestQueue.PublishedMessage;
+import org.n52.sta.serdes.util.ElementWithQueryOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that queued Observations are inserted in one batch per Datastream and that a failing batch is retried
+ * per message.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class MqttPublishMessageHandlerImplTest {
+
+    private static final String TOPIC = "Observations";
+
+    private final Map<String, ObservationEntity<?>> parsed = new HashMap<>();
+    private final List<List<String>> batches = new ArrayList<>();
+    private final List<String> created = new ArrayList<>();
+    private final Set<String> failingBatches = new HashSet<>();
+    private final Set<String> failingObservations = new HashSet<>();
+
+    private Consumer<List<PublishedMessage>> consumer;
+
+    @BeforeEach
+    public void setUp() {
+        parsed.clear();
+        batches.clear();
+        created.clear();
+        failingBatches.clear();
+        failingObservations.clear();
+
+        ObservationService observationService = new ObservationService(null,
+                                                                        null,
+                                                                        null,
+                                                                        null,
+                                                                        null,
+                                                                        null,
+                                                                        null,
+                                                                        null,
+                                                                        null,
+                                                                        false,
+                                                                        false) {
+            @Override public List<ObservationEntity<?>> createEntities(List<ObservationEntity<?>> observations)
+                    throws STACRUDException {
+                String datastream = observations.get(0).getDatastream().getStaIdentifier();
+                batches.add(identifiers(observations));
+                if (failingBatches.contains(datastream)) {
+                    throw new STACRUDException("batch failed");
+                }
+                created.addAll(identifiers(observations));
+                return observations;
+            }
+
+            @Override public ElementWithQueryOptions create(ObservationEntity<?> entity) throws STACRUDException {
+                if (failingObservations.contains(entity.getStaIdentifier())) {
+                    throw new STACRUDException("observation failed");
+                }
+                created.add(entity.getStaIdentifier());
+                return null;
+            }
+        };
+        EntityServiceRepository serviceRepository = new EntityServiceRepository() {
+            @Override public AbstractSensorThingsEntityService<?, ?, ?> getEntityService(EntityTypes entityType) {
+                return observationService;
+            }
+        };
+        ObjectMapper mapper = new ObjectMapper() {
+            private static final long serialVersionUID = 1L;
+
+            @Override public <T> T readValue(String content, Class<T> valueType) {
+                return (T) parsed.get(content);
+            }
+        };
+        MqttIngestQueue ingestQueue = new MqttIngestQueue(1, 1, 1, MqttIngestQueue.OverflowPolicy.BLOCK, 0) {
+            @Override public synchronized void start(Consumer<List<PublishedMessage>> batchConsumer) {
+                consumer = batchConsumer;
+            }
+        };
+        new MqttPublishMessageHandlerImpl(Collections.singletonList(TOPIC),
+                                          false,
+                                          serviceRepository,
+                                          mapper,
+                                          ingestQueue);
+    }
+
+    @Test
+    public void testObservationsAreGroupedByDatastream() {
+        consumer.accept(Arrays.asList(message("a1", "A", false),
+                                      message("b1", "B", false),
+                                      message("a2", "A", false)));
+
+        assertEquals(Arrays.asList(Arrays.asList("a1", "a2"), Collections.singletonList("b1")), batches);
+        assertEquals(Arrays.asList("a1", "a2", "b1"), created);
+    }
+
+    @Test
+    public void testObservationsWithNewDatastreamAreCreatedIndividually() {
+        consumer.accept(Arrays.asList(message("a1", "A", false),
+                                      message("n1", "N", true)));
+
+        assertEquals(Collections.singletonList(Collections.singletonList("a1")), batches);
+        assertEquals(Arrays.asList("n1", "a1"), created);
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedIndividually() {
+        failingBatches.add("A");
+        failingObservations.add("a2");
+        consumer.accept(Arrays.asList(message("a1", "A", false),
+                                      message("a2", "A", false),
+                                      message("a3", "A", false),
+                                      message("b1", "B", false)));
+
+        assertEquals(Arrays.asList(Arrays.asList("a1", "a2", "a3"), Collections.singletonList("b1")), batches);
+        // Only the failing Observation is lost
+        assertEquals(Arrays.asList("a1", "a3", "b1"), created);
+    }
+
+    private PublishedMessage message(String observationId, String datastreamId, boolean newDatastream) {
+        DatastreamEntity datastream = new DatastreamEntity();
+        datastream.setStaIdentifier(datastreamId);
+        if (newDatastream) {
+            datastream.setName(datastreamId);
+        }
+        QuantityObservationEntity observation = new QuantityObservationEntity();
+        observation.setStaIdentifier(observationId);
+        observation.setDatastream(datastream);
+        String payload = "{\"@iot.id\":\"" + observationId + "\"}";
+        parsed.put(payload, observation);
+        return new PublishedMessage(TOPIC, payload);
+    }
+
+    private static List<String> identifiers(List<ObservationEntity<?>> observations) {
+        return observations.stream()
+                           .map(ObservationEntity::getStaIdentifier)
+                           .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.mqtt.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.moquette.broker.Server;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.shetland.ogc.sta.StaConstants;
+import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
+import org.n52.sta.mqtt.core.subscription.AbstractMqttSubscription;
+import org.n52.sta.mqtt.core.subscription.MqttEntityCollectionSubscription;
+import org.n52.sta.mqtt.core.subscription.MqttEntitySubscription;
+import org.n52.sta.utils.ResourcePath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that subscriptions are reference counted per client and that events are only published to matching
+ * subscriptions.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class MqttSubscriptionEventHandlerImplTest {
+
+    private static final String CLIENT_A = "clientA";
+    private static final String CLIENT_B = "clientB";
+
+    private final List<String> published = new ArrayList<>();
+
+    private MqttSubscriptionEventHandlerImpl handler;
+
+    @BeforeEach
+    public void setUp() {
+        published.clear();
+        handler = new MqttSubscriptionEventHandlerImpl(null, null, new ObjectMapper() {
+            private static final long serialVersionUID = 1L;
+
+            @Override public byte[] writeValueAsBytes(Object value) {
+                return new byte[0];
+            }
+        });
+        handler.setMqttBroker(new Server() {
+            @Override public void internalPublish(MqttPublishMessage msg, String clientId) {
+                published.add(msg.variableHeader().topicName());
+            }
+        });
+    }
+
+    @Test
+    public void testReferenceCounting() throws STAInvalidUrlException {
+        handler.addSubscription(collection("Datastreams(1)/Observations"), CLIENT_A);
+        handler.addSubscription(collection("Datastreams(1)/Observations"), CLIENT_B);
+        assertEquals(Collections.singleton(StaConstants.OBSERVATIONS), handler.getWatchedEntityTypes());
+
+        // Subscription is kept until its last client unsubscribed
+        handler.removeSubscription(collection("Datastreams(1)/Observations"), CLIENT_A);
+        publishObservation("1");
+        assertEquals(Collections.singletonList("Datastreams(1)/Observations"), published);
+
+        // Unsubscribing twice or unsubscribing unknown clients has no effect
+        handler.removeSubscription(collection("Datastreams(1)/Observations"), CLIENT_A);
+        handler.removeSubscription(collection("Datastreams(1)/Observations"), "unknown");
+        assertTrue(handler.getWatchedEntityTypes().contains(StaConstants.OBSERVATIONS));
+
+        handler.removeSubscription(collection("Datastreams(1)/Observations"), CLIENT_B);
+        assertTrue(handler.getWatchedEntityTypes().isEmpty());
+        published.clear();
+        publishObservation("1");
+        assertTrue(published.isEmpty());
+    }
+
+    @Test
+    public void testSameClientSubscribesTwice() throws STAInvalidUrlException {
+        handler.addSubscription(collection("Observations"), CLIENT_A);
+        handler.addSubscription(collection("Observations"), CLIENT_A);
+        publishObservation("1");
+        assertEquals(Collections.singletonList("Observations"), published);
+
+        handler.removeSubscription(collection("Observations"), CLIENT_A);
+        assertTrue(handler.getWatchedEntityTypes().isEmpty());
+    }
+
+    @Test
+    public void testWatchedEntityTypes() throws STAInvalidUrlException {
+        handler.addSubscription(collection("Observations"), CLIENT_A);
+        handler.addSubscription(collection("Datastreams(1)/Observations"), CLIENT_A);
+        handler.addSubscription(entity("Things(1)"), CLIENT_A);
+        assertEquals(new HashSet<>(Arrays.asList(StaConstants.OBSERVATIONS, StaConstants.THINGS)),
+                     handler.getWatchedEntityTypes());
+
+        // Entity type is watched until its last subscription is removed
+        handler.removeSubscription(collection("Observations"), CLIENT_A);
+        assertTrue(handler.getWatchedEntityTypes().contains(StaConstants.OBSERVATIONS));
+        handler.removeSubscription(collection("Datastreams(1)/Observations"), CLIENT_A);
+        assertFalse(handler.getWatchedEntityTypes().contains(StaConstants.OBSERVATIONS));
+        assertEquals(Collections.singleton(StaConstants.THINGS), handler.getWatchedEntityTypes());
+    }
+
+    @Test
+    public void testOnlyMatchingSubscriptionsArePublished() throws STAInvalidUrlException {
+        handler.addSubscription(collection("Observations"), CLIENT_A);
+        handler.addSubscription(collection("Datastreams(1)/Observations"), CLIENT_A);
+        handler.addSubscription(collection("Datastreams(2)/Observations"), CLIENT_B);
+        handler.addSubscription(entity("Observations(obs)"), CLIENT_B);
+        handler.addSubscription(entity("Observations(other)"), CLIENT_B);
+        handler.addSubscription(collection("Things"), CLIENT_B);
+
+        publishObservation("2");
+        assertEquals(new HashSet<>(Arrays.asList("Observations", "Datastreams(2)/Observations", "Observations(obs)")),
+                     new HashSet<>(published));
+        assertEquals(3, published.size());
+    }
+
+    private void publishObservation(String datastreamId) {
+        QuantityDataEntity observation = new QuantityDataEntity();
+        observation.setStaIdentifier("obs");
+        Map<String, Set<String>> related = Collections.singletonMap(StaConstants.DATASTREAMS,
+                                                                    Collections.singleton(datastreamId));
+        handler.handleEvent(observation, StaConstants.OBSERVATIONS, null, related);
+    }
+
+    private static AbstractMqttSubscription collection(String topic) throws STAInvalidUrlException {
+        return new MqttEntityCollectionSubscription(topic, ResourcePath.parse(topic));
+    }
+
+    private static AbstractMqttSubscription entity(String topic) throws STAInvalidUrlException {
+        return new MqttEntitySubscription(topic, ResourcePath.parse(topic));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.mqtt.core;
+
+import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
+import org.n52.sta.utils.ResourcePath;
+import org.n52.sta.utils.STARequestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares parsing a resource path with {@link ResourcePath} to the previous regex-based pipeline, which validated
+ * the syntax by matching each pair of path segments and then identified the subscription type by matching the
+ * topic against the named-group patterns of {@link STARequestUtils}.
+ * <p>
+ * Run via {@link #main(String[])} from the test classpath.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourcePathBenchmark {
+
+    private static final Pattern BY_ID_PATTERN = Pattern.compile(
+            "(" + STARequestUtils.BASE_COLLECTION_REGEX_NAMED_GROUPS + ")" + STARequestUtils.IDENTIFIER_REGEX);
+
+    private static final Pattern[] BY_RELATION_PATTERNS = new Pattern[] {
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_DATASTREAM_REGEX),
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_HISTORICAL_LOCATION_REGEX),
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_LOCATION_REGEX),
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_THING_REGEX),
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_FEATURE_OF_INTEREST_REGEX),
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_OBSERVATION_REGEX),
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_OBSERVED_PROPERTY_REGEX),
+            Pattern.compile(STARequestUtils.IDENTIFIED_BY_SENSOR_REGEX)
+    };
+
+    private static final Pattern[][] NAMED_PATTERNS = new Pattern[][] {
+            STARequestUtils.NAMED_COLL_PATTERNS,
+            STARequestUtils.NAMED_ENTITY_PATTERNS,
+            STARequestUtils.NAMED_PROP_PATTERNS
+    };
+
+    @Param({
+            "Things",
+            "Things(52)",
+            "Datastreams(52)/Observations",
+            "Datastreams(52)/Thing",
+            "HistoricalLocations(52)/Thing/name"
+    })
+    private String path;
+
+    @Benchmark
+    public void regex(Blackhole bh) {
+        String[] segments = path.split(STARequestUtils.SLASH);
+        // Syntax check as previously done for each request
+        for (int i = 1; i < segments.length; i++) {
+            if (!BY_ID_PATTERN.matcher(segments[i]).matches()) {
+                String resource = segments[i - 1] + STARequestUtils.SLASH + segments[i];
+                boolean valid = false;
+                for (Pattern pattern : BY_RELATION_PATTERNS) {
+                    if (pattern.matcher(resource).matches()) {
+                        valid = true;
+                        break;
+                    }
+                }
+                bh.consume(valid);
+            }
+        }
+        // Identification of the addressed resource
+        for (Pattern[] patterns : NAMED_PATTERNS) {
+            for (Pattern pattern : patterns) {
+                Matcher mt = pattern.matcher(path);
+                if (mt.matches()) {
+                    bh.consume(mt);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public ResourcePath parser() throws STAInvalidUrlException {
+        return ResourcePath.parse(path);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResourcePathBenchmark.class.getSimpleName()).build()).run();
+    }
+}
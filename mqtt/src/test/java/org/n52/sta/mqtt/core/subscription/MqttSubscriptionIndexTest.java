@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.mqtt.core.subscription;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.shetland.ogc.sta.StaConstants;
+import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
+import org.n52.sta.utils.ResourcePath;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+public class MqttSubscriptionIndexTest {
+
+    private MqttSubscriptionIndex index;
+
+    private AbstractMqttSubscription things;
+    private AbstractMqttSubscription thing1;
+    private AbstractMqttSubscription thing2;
+    private AbstractMqttSubscription thing1Name;
+    private AbstractMqttSubscription thing1Datastreams;
+    private AbstractMqttSubscription observations;
+    private AbstractMqttSubscription observationsSelect;
+    private AbstractMqttSubscription datastream1Observations;
+    private AbstractMqttSubscription datastream2Observations;
+    private AbstractMqttSubscription datastream1Sensor;
+
+    @BeforeEach
+    public void setUp() throws STAInvalidUrlException {
+        index = new MqttSubscriptionIndex();
+        things = collection("Things");
+        thing1 = entity("Things(1)");
+        thing2 = entity("Things(2)");
+        thing1Name = new MqttPropertySubscription("Things(1)/name", ResourcePath.parse("Things(1)/name"));
+        thing1Datastreams = collection("Things(1)/Datastreams");
+        observations = collection("Observations");
+        observationsSelect = new MqttSelectSubscription("Observations?$select=result",
+                                                        ResourcePath.parse("Observations"),
+                                                        "result");
+        datastream1Observations = collection("Datastreams(1)/Observations");
+        datastream2Observations = collection("Datastreams(2)/Observations");
+        datastream1Sensor = entity("Datastreams(1)/Sensor");
+        for (AbstractMqttSubscription subscription : Arrays.asList(things,
+                                                                    thing1,
+                                                                    thing2,
+                                                                    thing1Name,
+                                                                    thing1Datastreams,
+                                                                    observations,
+                                                                    observationsSelect,
+                                                                    datastream1Observations,
+                                                                    datastream2Observations,
+                                                                    datastream1Sensor)) {
+            index.add(subscription);
+        }
+    }
+
+    @Test
+    public void testCandidatesByEntityType() {
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "3", null), things);
+        assertCandidates(index.getCandidates(StaConstants.SENSORS, "3", null));
+        assertCandidates(index.getCandidates(StaConstants.LOCATIONS, null, null));
+    }
+
+    @Test
+    public void testCandidatesByIdentifier() {
+        // Property subscriptions are indexed by the identifier of their Entity
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "1", null), things, thing1, thing1Name);
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "2", null), things, thing2);
+        assertCandidates(index.getCandidates(StaConstants.THINGS, null, null), things);
+    }
+
+    @Test
+    public void testCandidatesBySource() {
+        Map<String, Set<String>> related = new HashMap<>();
+        related.put(StaConstants.DATASTREAMS, Collections.singleton("1"));
+        related.put(StaConstants.FEATURES_OF_INTEREST, Collections.singleton("1"));
+        assertCandidates(index.getCandidates(StaConstants.OBSERVATIONS, "5", related),
+                         observations,
+                         observationsSelect,
+                         datastream1Observations);
+
+        related.put(StaConstants.DATASTREAMS, new HashSet<>(Arrays.asList("1", "2")));
+        assertCandidates(index.getCandidates(StaConstants.OBSERVATIONS, "5", related),
+                         observations,
+                         observationsSelect,
+                         datastream1Observations,
+                         datastream2Observations);
+
+        // Source must match the type of the related Entity
+        related.clear();
+        related.put(StaConstants.THINGS, Collections.singleton("1"));
+        assertCandidates(index.getCandidates(StaConstants.OBSERVATIONS, "5", related),
+                         observations,
+                         observationsSelect);
+        assertCandidates(index.getCandidates(StaConstants.DATASTREAMS, "5", related), thing1Datastreams);
+
+        // Singular navigation properties are indexed by their source as well
+        related.clear();
+        related.put(StaConstants.DATASTREAMS, Collections.singleton("1"));
+        assertCandidates(index.getCandidates(datastream1Sensor.getEntityType(), "7", related), datastream1Sensor);
+    }
+
+    @Test
+    public void testCandidatesContainMatches() {
+        // Every subscription that matches is a candidate, so using the index does not lose any messages
+        Map<String, Set<String>> related = new HashMap<>();
+        related.put(StaConstants.DATASTREAMS, Collections.singleton("2"));
+        QuantityDataEntity observation = new QuantityDataEntity();
+        observation.setStaIdentifier("5");
+        List<AbstractMqttSubscription> candidates = index.getCandidates(StaConstants.OBSERVATIONS, "5", related);
+        for (AbstractMqttSubscription subscription : Arrays.asList(observations,
+                                                                    observationsSelect,
+                                                                    datastream1Observations,
+                                                                    datastream2Observations)) {
+            boolean matches = subscription.checkSubscription(observation, StaConstants.OBSERVATIONS, related, null)
+                    != null;
+            assertEquals(matches, candidates.contains(subscription), subscription.getTopic());
+        }
+    }
+
+    @Test
+    public void testRemove() throws STAInvalidUrlException {
+        index.remove(thing1);
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "1", null), things, thing1Name);
+        index.remove(thing1Name);
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "1", null), things);
+
+        // Subscriptions are removed by equality of their topic
+        index.remove(collection("Datastreams(1)/Observations"));
+        Map<String, Set<String>> related = Collections.singletonMap(StaConstants.DATASTREAMS,
+                                                                    Collections.singleton("1"));
+        assertCandidates(index.getCandidates(StaConstants.OBSERVATIONS, "5", related),
+                         observations,
+                         observationsSelect);
+
+        index.remove(observations);
+        index.remove(observationsSelect);
+        assertCandidates(index.getCandidates(StaConstants.OBSERVATIONS, "5", related));
+
+        // Removing unknown subscriptions has no effect
+        index.remove(observations);
+        index.remove(entity("Sensors(1)"));
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "2", null), things, thing2);
+    }
+
+    @Test
+    public void testAddTwice() {
+        index.add(thing2);
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "2", null), things, thing2);
+        index.remove(thing2);
+        assertCandidates(index.getCandidates(StaConstants.THINGS, "2", null), things);
+    }
+
+    private static AbstractMqttSubscription collection(String topic) throws STAInvalidUrlException {
+        return new MqttEntityCollectionSubscription(topic, ResourcePath.parse(topic));
+    }
+
+    private static AbstractMqttSubscription entity(String topic) throws STAInvalidUrlException {
+        return new MqttEntitySubscription(topic, ResourcePath.parse(topic));
+    }
+
+    private static void assertCandidates(List<AbstractMqttSubscription> candidates,
+                                         AbstractMqttSubscription... expected) {
+        assertEquals(expected.length, candidates.size(), candidates.toString());
+        assertTrue(candidates.containsAll(Arrays.asList(expected)), candidates.toString());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018-2020 52°North Initiative for Geospatial Open Source
+ * Software GmbH
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation.
+ *
+ * If the program is linked with libraries which are licensed under one of
+ * the following licenses, the combination of the program with the linked
+ * library is not considered a "derivative work" of the program:
+ *
+ *     - Apache License, version 2.0
+ *     - Apache Software License, version 1.0
+ *     - GNU Lesser General Public License, version 3
+ *     - Mozilla Public License, versions 1.0, 1.1 and 2.0
+ *     - Common Development and Distribution License (CDDL), version 1.0
+ *
+ * Therefore the distribution of the program linked with libraries licensed
+ * under the aforementioned licenses, is permitted by the copyright holders
+ * if the distribution is compliant with both the GNU General Public
+ * License version 2 and the aforementioned licenses.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ */
+
+package org.n52.sta.mqtt.core.subscription;
+
+import org.n52.series.db.beans.QuantityDataEntity;
+import org.n52.shetland.ogc.sta.StaConstants;
+import org.n52.shetland.ogc.sta.exception.STAInvalidUrlException;
+import org.n52.sta.utils.ResourcePath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of matching a single Observation event against all subscriptions (linear scan) with using the
+ * {@link MqttSubscriptionIndex}. Subscriptions are a mix of /Datastreams(x)/Observations and /Things(x)
+ * subscriptions.
+ * <p>
+ * Run via {@link #main(String[])} from the test classpath.
+ *
+ * @author <a href="mailto:j.speckamp@52north.org">Jan Speckamp</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionMatchingBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int subscriptionCount;
+
+    private List<AbstractMqttSubscription> subscriptions;
+    private MqttSubscriptionIndex index;
+    private QuantityDataEntity observation;
+    private Map<String, Set<String>> relatedCollections;
+
+    @Setup
+    public void setup() throws STAInvalidUrlException {
+        subscriptions = new ArrayList<>(subscriptionCount);
+        index = new MqttSubscriptionIndex();
+        for (int i = 0; i < subscriptionCount; i++) {
+            AbstractMqttSubscription subscription;
+            if (i % 2 == 0) {
+                subscription = new MqttEntityCollectionSubscription(
+                        "Datastreams(" + i + ")/Observations",
+                        ResourcePath.parse("Datastreams(" + i + ")/Observations"));
+            } else {
+                subscription = new MqttEntitySubscription(
+                        "Things(" + i + ")",
+                        ResourcePath.parse("Things(" + i + ")"));
+            }
+            subscriptions.add(subscription);
+            index.add(subscription);
+        }
+        observation = new QuantityDataEntity();
+        observation.setStaIdentifier("obs");
+        relatedCollections = new HashMap<>();
+        relatedCollections.put(StaConstants.DATASTREAMS, Collections.singleton("0"));
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole bh) {
+        for (AbstractMqttSubscription subscription : subscriptions) {
+            bh.consume(subscription.checkSubscription(observation,
+                                                      StaConstants.OBSERVATIONS,
+                                                      relatedCollections,
+                                                      null));
+        }
+    }
+
+    @Benchmark
+    public void indexed(Blackhole bh) {
+        for (AbstractMqttSubscription subscription
+                : index.getCandidates(StaConstants.OBSERVATIONS, observation.getStaIdentifier(), relatedCollections)) {
+            bh.consume(subscription.checkSubscription(observation,
+                                                      StaConstants.OBSERVATIONS,
+                                                      relatedCollections,
+                                                      null));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SubscriptionMatchingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -37,14 +37,12 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 @SpringBootApplication
 @EnableJpaRepositories(repositoryBaseClass = MessageBusRepository.class,
                        basePackages = {"org.n52.series.db", "org.n52.sta.data.repositories"})
 @EnableConfigurationProperties
-@EnableAsync
 @ComponentScan(basePackages = {"org.n52.series.db", "org.n52.sta"})
 @EnableTransactionManagement
 @SuppressWarnings("uncommentedmain")